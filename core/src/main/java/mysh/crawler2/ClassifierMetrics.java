@@ -0,0 +1,239 @@
+package mysh.crawler2;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * runtime metrics of a url classifier, see {@link Crawler#getMetrics()}.
+ * <p>
+ * counters are cumulative since the classifier was created. rates are measured over the recent 5~10 seconds.
+ * recording is lock-free.
+ *
+ * @since 2026-10-18
+ */
+@ThreadSafe
+public final class ClassifierMetrics implements ClassifierMetricsMXBean {
+	private static final long RATE_WINDOW_NANOS = 5_000_000_000L;
+
+	/**
+	 * current state of the classifier.
+	 */
+	interface Gauges {
+		int queueDepth();
+
+		int running();
+
+		int ratePerMinute();
+
+		int threadPoolSize();
+	}
+
+	private final String name;
+	private final Gauges gauges;
+
+	private final LongAdder requests = new LongAdder();
+	private final LongAdder bytes = new LongAdder();
+	private final LongAdder errors = new LongAdder();
+	private final LongAdder blocks = new LongAdder();
+	private final LongAdder retries = new LongAdder();
+	private final LongAdder duplicates = new LongAdder();
+	private final LatencyHistogram fetchLatency = new LatencyHistogram();
+	private final LatencyHistogram onGetLatency = new LatencyHistogram();
+	private final LatencyHistogram distillLatency = new LatencyHistogram();
+
+	/**
+	 * counter samples to measure rates, [previous, current].
+	 */
+	private final AtomicReference<Sample[]> samples;
+
+	private static final class Sample {
+		final long time, requests, bytes;
+
+		Sample(long time, long requests, long bytes) {
+			this.time = time;
+			this.requests = requests;
+			this.bytes = bytes;
+		}
+	}
+
+	ClassifierMetrics(String name, Gauges gauges) {
+		this.name = name;
+		this.gauges = gauges;
+		Sample start = new Sample(System.nanoTime(), 0, 0);
+		this.samples = new AtomicReference<>(new Sample[]{start, start});
+	}
+
+	/**
+	 * an access is done (blocked or not).
+	 */
+	void onFetched(long nanos) {
+		requests.increment();
+		fetchLatency.recordNanos(nanos);
+	}
+
+	void onBytes(long n) {
+		if (n > 0)
+			bytes.add(n);
+	}
+
+	void onError() {
+		errors.increment();
+	}
+
+	void onBlocked() {
+		blocks.increment();
+	}
+
+	void onRetry() {
+		retries.increment();
+	}
+
+	void onDuplicate() {
+		duplicates.increment();
+	}
+
+	void onGet(long nanos) {
+		onGetLatency.recordNanos(nanos);
+	}
+
+	void onDistilled(long nanos) {
+		distillLatency.recordNanos(nanos);
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public long getRequests() {
+		return requests.sum();
+	}
+
+	/**
+	 * response bytes, by content-length or the buffered entity if content-length is not given.
+	 */
+	@Override
+	public long getBytes() {
+		return bytes.sum();
+	}
+
+	/**
+	 * accesses failed by exceptions.
+	 */
+	@Override
+	public long getErrors() {
+		return errors.sum();
+	}
+
+	/**
+	 * accesses blocked, see {@link UrlClassifierConf.BlockChecker}.
+	 */
+	@Override
+	public long getBlocks() {
+		return blocks.sum();
+	}
+
+	/**
+	 * tasks put back to be crawled again.
+	 */
+	@Override
+	public long getRetries() {
+		return retries.sum();
+	}
+
+	/**
+	 * near-duplicate pages skipped, see {@link Crawler#useNearDuplicateDetection(int)}.
+	 */
+	@Override
+	public long getDuplicates() {
+		return duplicates.sum();
+	}
+
+	@Override
+	public double getRequestsPerSecond() {
+		Sample now = new Sample(System.nanoTime(), getRequests(), getBytes());
+		Sample from = rateBase(now);
+		return from.time >= now.time ? 0 : (now.requests - from.requests) * 1e9 / (now.time - from.time);
+	}
+
+	@Override
+	public double getBytesPerSecond() {
+		Sample now = new Sample(System.nanoTime(), getRequests(), getBytes());
+		Sample from = rateBase(now);
+		return from.time >= now.time ? 0 : (now.bytes - from.bytes) * 1e9 / (now.time - from.time);
+	}
+
+	/**
+	 * roll samples every {@link #RATE_WINDOW_NANOS}, and measure rates from the previous one.
+	 */
+	private Sample rateBase(Sample now) {
+		Sample[] s = samples.get();
+		if (now.time - s[1].time >= RATE_WINDOW_NANOS) {
+			Sample[] rolled = {s[1], now};
+			if (samples.compareAndSet(s, rolled))
+				s = rolled;
+			else
+				s = samples.get();
+		}
+		return s[0];
+	}
+
+	/**
+	 * tasks waiting in the frontier.
+	 */
+	@Override
+	public int getQueueDepth() {
+		return gauges.queueDepth();
+	}
+
+	/**
+	 * tasks being crawled.
+	 */
+	@Override
+	public int getRunning() {
+		return gauges.running();
+	}
+
+	@Override
+	public int getRatePerMinute() {
+		return gauges.ratePerMinute();
+	}
+
+	@Override
+	public int getThreadPoolSize() {
+		return gauges.threadPoolSize();
+	}
+
+	/**
+	 * time from sending the request to receiving the response header.
+	 */
+	@Override
+	public LatencyHistogram.Snapshot getFetchLatency() {
+		return fetchLatency.snapshot();
+	}
+
+	/**
+	 * time of {@link CrawlerSeed#onGet}, including downloading the entity if the seed reads it.
+	 */
+	@Override
+	public LatencyHistogram.Snapshot getOnGetLatency() {
+		return onGetLatency.snapshot();
+	}
+
+	/**
+	 * time of distilling links from the page.
+	 */
+	@Override
+	public LatencyHistogram.Snapshot getDistillLatency() {
+		return distillLatency.snapshot();
+	}
+
+	@Override
+	public String toString() {
+		return name + "{requests=" + getRequests() + ", rps=" + String.format("%.1f", getRequestsPerSecond())
+				+ ", errors=" + getErrors() + ", blocks=" + getBlocks() + ", retries=" + getRetries() + ", duplicates=" + getDuplicates()
+				+ ", fetch=" + getFetchLatency() + "}";
+	}
+}
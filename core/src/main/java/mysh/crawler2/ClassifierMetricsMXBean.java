@@ -0,0 +1,40 @@
+package mysh.crawler2;
+
+/**
+ * jmx view of {@link ClassifierMetrics}.
+ *
+ * @since 2026-10-18
+ */
+public interface ClassifierMetricsMXBean {
+	String getName();
+
+	long getRequests();
+
+	long getBytes();
+
+	long getErrors();
+
+	long getBlocks();
+
+	long getRetries();
+
+	long getDuplicates();
+
+	double getRequestsPerSecond();
+
+	double getBytesPerSecond();
+
+	int getQueueDepth();
+
+	int getRunning();
+
+	int getRatePerMinute();
+
+	int getThreadPoolSize();
+
+	LatencyHistogram.Snapshot getFetchLatency();
+
+	LatencyHistogram.Snapshot getOnGetLatency();
+
+	LatencyHistogram.Snapshot getDistillLatency();
+}
@@ -0,0 +1,384 @@
+package mysh.crawler2;
+
+import mysh.util.Encodings;
+import mysh.util.Serializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * crawler checkpoint. task deltas (enqueued / completed) are appended to journal files periodically,
+ * and journals are compacted into a snapshot of pending tasks in background.
+ * after a crash, pending tasks can be {@link #recover recovered} from the snapshot and journals.
+ * recovery is at-least-once: deltas recorded in the last flush interval (<code>flushIntervalMillis</code>)
+ * before the crash are not journaled yet, so tasks completed in that window are crawled again,
+ * and tasks enqueued in that window are not recovered.
+ * <p>
+ * journal record: [type][payloadLen][payload][crc32], a torn tail record is ignored on reading.
+ * enqueued payload: [fingerprint][urlLen][url][ctxLen][ctx], ctxLen is -1 if ctx is null.
+ * completed payload: [fingerprint].
+ * <br/>
+ * snapshot: [magic][last compacted journal seq], followed by enqueued records.
+ *
+ * @since 2026-10-18
+ */
+@ThreadSafe
+final class CrawlCheckpoint<CTX extends UrlContext> implements Closeable {
+	private static final Logger log = LoggerFactory.getLogger(CrawlCheckpoint.class);
+	private static final Serializer SERIALIZER = Serializer.BUILD_IN;
+	private static final int SNAPSHOT_MAGIC = 0x43434b50;
+	private static final byte ENQUEUED = 1, COMPLETED = 2;
+	private static final String JOURNAL_PREFIX = "journal-", JOURNAL_SUFFIX = ".log";
+	private static final int MAX_PAYLOAD = 64 << 20;
+
+	private final File dir;
+	private final long flushIntervalMillis;
+	/**
+	 * compact journals when they grow over this size.
+	 */
+	private final long compactBytes;
+	/**
+	 * UrlCtxHolder for enqueued, Long fingerprint for completed.
+	 */
+	private final Queue<Object> deltas = new ConcurrentLinkedQueue<>();
+	private final ScheduledExecutorService writer;
+
+	// following fields are accessed by writer thread, or after writer stopped
+	private long journalSeq;
+	private FileOutputStream journalFile;
+	private DataOutputStream journal;
+	private long journalBytes;
+
+	CrawlCheckpoint(File dir, String name, long flushIntervalMillis, long compactBytes) {
+		this.dir = Objects.requireNonNull(dir, "checkpoint dir is null");
+		this.flushIntervalMillis = Math.max(1, flushIntervalMillis);
+		this.compactBytes = compactBytes;
+		this.writer = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, name + "-checkpoint");
+			t.setDaemon(true);
+			return t;
+		});
+	}
+
+	private File snapshotFile() {
+		return new File(dir, "snapshot.dat");
+	}
+
+	/**
+	 * compact existing journals, and read pending tasks. should be invoked before {@link #start}.
+	 */
+	synchronized List<UrlCtxHolder<CTX>> recover() throws IOException {
+		dir.mkdirs();
+		File snapshot = snapshotFile();
+		List<File> journals = journals(Long.MAX_VALUE);
+		// continue numbering after compacted journals
+		journalSeq = snapshot.exists() ? readSnapshotSeq(snapshot) : 0;
+		if (!journals.isEmpty())
+			journalSeq = Math.max(journalSeq, journalSeq(journals.get(journals.size() - 1)));
+		compact(journalSeq);
+
+		List<UrlCtxHolder<CTX>> tasks = new ArrayList<>();
+		if (snapshot.exists()) {
+			try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshot)))) {
+				readSnapshotHeader(in);
+				Record r;
+				while ((r = Record.read(in)) != null)
+					tasks.add(r.toTask());
+			}
+		}
+		return tasks;
+	}
+
+	/**
+	 * start periodic flushing.
+	 */
+	synchronized void start() throws IOException {
+		openJournal(journalSeq + 1);
+		writer.scheduleWithFixedDelay(() -> {
+			try {
+				flush();
+				if (journalBytes > compactBytes) {
+					long compactTo = journalSeq;
+					openJournal(journalSeq + 1);
+					compact(compactTo);
+				}
+			} catch (Throwable t) {
+				log.error("checkpoint-flush-fail, dir={}", dir, t);
+			}
+		}, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	void enqueued(UrlCtxHolder<CTX> task) {
+		deltas.add(task);
+	}
+
+	void completed(long fingerprint) {
+		deltas.add(fingerprint);
+	}
+
+	private synchronized void flush() throws IOException {
+		if (journal == null)
+			return;
+		Object d;
+		while ((d = deltas.poll()) != null) {
+			Record r = d instanceof Long ? Record.completed((Long) d) : Record.enqueued((UrlCtxHolder<?>) d);
+			journalBytes += r.write(journal);
+		}
+		journal.flush();
+		journalFile.getChannel().force(false);
+	}
+
+	private synchronized void openJournal(long seq) throws IOException {
+		closeJournal();
+		journalSeq = seq;
+		journalFile = new FileOutputStream(new File(dir, JOURNAL_PREFIX + seq + JOURNAL_SUFFIX), true);
+		journal = new DataOutputStream(new BufferedOutputStream(journalFile, 64 * 1024));
+		journalBytes = 0;
+	}
+
+	private synchronized void closeJournal() throws IOException {
+		if (journal != null) {
+			journal.close();
+			journal = null;
+			journalFile = null;
+		}
+	}
+
+	/**
+	 * flush all deltas, compact journals, and stop.
+	 */
+	@Override
+	public void close() {
+		writer.shutdown();
+		try {
+			writer.awaitTermination(1, TimeUnit.MINUTES);
+		} catch (InterruptedException e) {
+			log.warn("interrupted when waiting for checkpoint writer, dir={}", dir);
+		}
+		synchronized (this) {
+			try {
+				flush();
+				closeJournal();
+				compact(journalSeq);
+			} catch (Exception e) {
+				log.error("checkpoint-close-fail, dir={}", dir, e);
+			}
+		}
+	}
+
+	/**
+	 * merge snapshot and journals (seq <= toSeq) into new snapshot, which keeps pending tasks only.
+	 */
+	private synchronized void compact(long toSeq) throws IOException {
+		File snapshot = snapshotFile();
+		long fromSeq = snapshot.exists() ? readSnapshotSeq(snapshot) : 0;
+		List<File> journals = journals(toSeq);
+		journals.removeIf(f -> journalSeq(f) <= fromSeq);
+		if (journals.isEmpty())
+			return;
+
+		// pass 1: tasks whose last delta is completed
+		UrlFingerprintIndex completed = new UrlFingerprintIndex();
+		for (File f : journals) {
+			try (DataInputStream in = openJournalReader(f)) {
+				Record r;
+				while ((r = Record.read(in)) != null) {
+					if (r.type == COMPLETED)
+						completed.add(r.fingerprint);
+					else
+						completed.remove(r.fingerprint);
+				}
+			}
+		}
+
+		// pass 2: write pending tasks, in the order they were enqueued
+		UrlFingerprintIndex written = new UrlFingerprintIndex();
+		File tmp = new File(dir, "snapshot.tmp");
+		int count = 0;
+		FileOutputStream tmpFile = new FileOutputStream(tmp);
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(tmpFile, 64 * 1024))) {
+			out.writeInt(SNAPSHOT_MAGIC);
+			out.writeLong(toSeq);
+			List<DataInputStream> sources = new ArrayList<>();
+			try {
+				if (snapshot.exists()) {
+					DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshot)));
+					sources.add(in);
+					readSnapshotHeader(in);
+				}
+				for (File f : journals)
+					sources.add(openJournalReader(f));
+
+				for (DataInputStream in : sources) {
+					Record r;
+					while ((r = Record.read(in)) != null) {
+						if (r.type == ENQUEUED && !completed.contains(r.fingerprint) && written.add(r.fingerprint)) {
+							r.write(out);
+							count++;
+						}
+					}
+				}
+			} finally {
+				for (DataInputStream in : sources)
+					in.close();
+			}
+			out.flush();
+			tmpFile.getFD().sync();
+		}
+		Files.move(tmp.toPath(), snapshot.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+		for (File f : journals) {
+			if (!f.delete())
+				log.warn("delete-compacted-journal-fail: {}", f);
+		}
+		log.debug("checkpoint compacted, dir={}, journals={}, pending={}", dir, journals.size(), count);
+	}
+
+	private static DataInputStream openJournalReader(File f) throws IOException {
+		return new DataInputStream(new BufferedInputStream(new FileInputStream(f), 64 * 1024));
+	}
+
+	private static long readSnapshotHeader(DataInputStream in) throws IOException {
+		if (in.readInt() != SNAPSHOT_MAGIC)
+			throw new IOException("not a checkpoint snapshot");
+		return in.readLong();
+	}
+
+	private static long readSnapshotSeq(File snapshot) throws IOException {
+		try (DataInputStream in = new DataInputStream(new FileInputStream(snapshot))) {
+			return readSnapshotHeader(in);
+		}
+	}
+
+	/**
+	 * journals with seq <= maxSeq, sorted by seq.
+	 */
+	private List<File> journals(long maxSeq) {
+		File[] files = dir.listFiles((d, name) -> name.startsWith(JOURNAL_PREFIX) && name.endsWith(JOURNAL_SUFFIX));
+		List<File> journals = new ArrayList<>();
+		if (files != null) {
+			for (File f : files) {
+				if (journalSeq(f) <= maxSeq)
+					journals.add(f);
+			}
+		}
+		journals.sort(Comparator.comparingLong(CrawlCheckpoint::journalSeq));
+		return journals;
+	}
+
+	private static long journalSeq(File f) {
+		String name = f.getName();
+		try {
+			return Long.parseLong(name.substring(JOURNAL_PREFIX.length(), name.length() - JOURNAL_SUFFIX.length()));
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	private static final class Record {
+		final byte type;
+		final long fingerprint;
+		/**
+		 * [fingerprint][urlLen][url][ctxLen][ctx] for enqueued, [fingerprint] for completed.
+		 */
+		final byte[] payload;
+
+		private Record(byte type, long fingerprint, byte[] payload) {
+			this.type = type;
+			this.fingerprint = fingerprint;
+			this.payload = payload;
+		}
+
+		static Record completed(long fingerprint) {
+			return new Record(COMPLETED, fingerprint, new byte[]{
+					(byte) (fingerprint >>> 56), (byte) (fingerprint >>> 48), (byte) (fingerprint >>> 40), (byte) (fingerprint >>> 32),
+					(byte) (fingerprint >>> 24), (byte) (fingerprint >>> 16), (byte) (fingerprint >>> 8), (byte) fingerprint});
+		}
+
+		static Record enqueued(UrlCtxHolder<?> task) throws IOException {
+			long fp = UrlFingerprintIndex.fingerprint(task.url);
+			byte[] url = task.url.getBytes(Encodings.UTF_8);
+			byte[] ctx = task.ctx == null ? null : SERIALIZER.serialize(task.ctx);
+			ByteArrayOutputStream buf = new ByteArrayOutputStream(16 + url.length + (ctx == null ? 0 : ctx.length));
+			DataOutputStream out = new DataOutputStream(buf);
+			out.writeLong(fp);
+			out.writeInt(url.length);
+			out.write(url);
+			if (ctx == null)
+				out.writeInt(-1);
+			else {
+				out.writeInt(ctx.length);
+				out.write(ctx);
+			}
+			return new Record(ENQUEUED, fp, buf.toByteArray());
+		}
+
+		/**
+		 * @return bytes written
+		 */
+		int write(DataOutputStream out) throws IOException {
+			CRC32 crc = new CRC32();
+			crc.update(type);
+			crc.update(payload);
+			out.writeByte(type);
+			out.writeInt(payload.length);
+			out.write(payload);
+			out.writeInt((int) crc.getValue());
+			return 9 + payload.length;
+		}
+
+		/**
+		 * @return <code>null</code> at the end, or a torn record.
+		 */
+		@Nullable
+		static Record read(DataInputStream in) throws IOException {
+			try {
+				byte type = in.readByte();
+				int len = in.readInt();
+				if ((type != ENQUEUED && type != COMPLETED) || len < 8 || len > MAX_PAYLOAD)
+					return null;
+				byte[] payload = new byte[len];
+				in.readFully(payload);
+				int checksum = in.readInt();
+				CRC32 crc = new CRC32();
+				crc.update(type);
+				crc.update(payload);
+				if ((int) crc.getValue() != checksum)
+					return null;
+				long fp = 0;
+				for (int i = 0; i < 8; i++)
+					fp = (fp << 8) | (payload[i] & 0xFF);
+				return new Record(type, fp, payload);
+			} catch (EOFException e) {
+				return null;
+			}
+		}
+
+		@SuppressWarnings("unchecked")
+		<CTX extends UrlContext> UrlCtxHolder<CTX> toTask() throws IOException {
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+			in.readLong();
+			byte[] url = new byte[in.readInt()];
+			in.readFully(url);
+			int ctxLen = in.readInt();
+			CTX ctx = null;
+			if (ctxLen >= 0) {
+				byte[] ctxBytes = new byte[ctxLen];
+				in.readFully(ctxBytes);
+				ctx = SERIALIZER.deserialize(ctxBytes);
+			}
+			return UrlCtxHolder.restore(new String(url, Encodings.UTF_8), ctx);
+		}
+	}
+}
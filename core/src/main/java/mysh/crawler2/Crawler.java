@@ -1,31 +1,25 @@
 package mysh.crawler2;
 
-import com.google.common.collect.Streams;
 import mysh.net.httpclient.HttpClientAssist;
 import mysh.net.httpclient.HttpClientConfig;
-import mysh.util.Htmls;
 import mysh.util.Range;
-import org.apache.commons.lang3.ObjectUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
-import javax.annotation.concurrent.GuardedBy;
 import javax.annotation.concurrent.ThreadSafe;
+import javax.management.ObjectName;
+import java.io.File;
 import java.io.IOException;
 import java.io.InterruptedIOException;
+import java.lang.management.ManagementFactory;
 import java.net.*;
-import java.nio.charset.Charset;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 /**
@@ -54,10 +48,36 @@ public class Crawler<CTX extends UrlContext> {
 	private final UrlClassifierConf.Factory<CTX> ccf;
 	
 	/**
-	 * holder->retryTimes
+	 * delay-queue dispatcher, which feeds classifiers when their rate permits become available.
 	 */
-	private final Map<UrlCtxHolder<CTX>, AtomicInteger> inProcessTasks = new ConcurrentHashMap<>();
-	private final Collection<UrlCtxHolder<CTX>> unhandledTasks = Collections.newSetFromMap(new ConcurrentHashMap<>());
+	private final ScheduledThreadPoolExecutor scheduler;
+	/**
+	 * per-host politeness shared by all classifiers, null if not used.
+	 * see {@link #usePerHostPoliteness}
+	 */
+	private volatile HostScheduler<Worker> hostScheduler;
+	/**
+	 * null if not used. see {@link #useCheckpoint}
+	 */
+	private volatile CrawlCheckpoint<CTX> checkpoint;
+	/**
+	 * null if not used. see {@link #useNearDuplicateDetection}
+	 */
+	private volatile SimHashIndex nearDupIndex;
+	/**
+	 * see {@link #exportMetricsToJmx()}
+	 */
+	private volatile boolean exportJmx;
+	
+	/**
+	 * url fingerprint->retryTimes
+	 */
+	private final UrlFingerprintIndex inProcessTasks = new UrlFingerprintIndex();
+	/**
+	 * fingerprints of {@link #unhandledTasks}, for deduplication
+	 */
+	private final UrlFingerprintIndex unhandledIndex = new UrlFingerprintIndex();
+	private final Queue<UrlCtxHolder<CTX>> unhandledTasks = new ConcurrentLinkedQueue<>();
 	
 	/**
 	 * create a crawler with seed , http-client config and maximum access rate per minute.
@@ -119,6 +139,14 @@ public class Crawler<CTX extends UrlContext> {
 		this.name = "Crawler(" + this.seed.getClass().getSimpleName() + ")";
 		this.log = LoggerFactory.getLogger(this.name);
 		
+		this.scheduler = new ScheduledThreadPoolExecutor(1, r -> {
+			Thread t = new Thread(r, this.name + "-scheduler");
+			t.setDaemon(true);
+			return t;
+		});
+		this.scheduler.setKeepAliveTime(15, TimeUnit.SECONDS);
+		this.scheduler.allowCoreThreadTimeOut(true);
+		
 		this.seed.init();
 	}
 	
@@ -146,24 +174,30 @@ public class Crawler<CTX extends UrlContext> {
 						Thread.sleep(10000);
 						
 						StringBuilder ucStatus = new StringBuilder("crawler current status: " + name);
-						AtomicBoolean crawlerRunning = new AtomicBoolean(false);
 						classifiers.values()
 						           .forEach(uc -> {
 							           ucStatus.append("\n{Classifier:");
 							           ucStatus.append(uc.name);
 							           ucStatus.append(", queueSize=");
-							           ucStatus.append(uc.wq.size());
+							           ucStatus.append(uc.frontier.size());
 							           ucStatus.append(", actCount=");
-							           ucStatus.append(uc.exec.getActiveCount());
+							           ucStatus.append(uc.running.get());
+							           ucStatus.append(", ready=");
+							           ucStatus.append(uc.readyLane.size());
+							           ucStatus.append(", metrics=");
+							           ucStatus.append(uc.metrics);
 							           ucStatus.append("}");
-							           if (uc.wq.size() > 0 || uc.exec.getActiveCount() > 0)
-								           crawlerRunning.set(true);
 						           });
+						HostScheduler<Worker> hs = hostScheduler;
+						if (hs != null) {
+							ucStatus.append("\nparked.size=");
+							ucStatus.append(hs.parkedCount());
+						}
 						ucStatus.append("\nunhandled.size=");
 						ucStatus.append(unhandledTasks.size());
 						log.debug(ucStatus.toString());
 						
-						if (!crawlerRunning.get()) {
+						if (isIdle()) {
 							Crawler.this.stop();
 							return;
 						}
@@ -187,7 +221,20 @@ public class Crawler<CTX extends UrlContext> {
 		
 		log.info(this.name + " started.");
 		
-		seed.getSeeds().forEach(ctxHolder -> classify(ctxHolder.url, ctxHolder.ctx));
+		List<UrlCtxHolder<CTX>> resumed = Collections.emptyList();
+		if (checkpoint != null) {
+			try {
+				resumed = checkpoint.recover();
+				checkpoint.start();
+			} catch (IOException e) {
+				throw new RuntimeException(this.name + " recover from checkpoint fail", e);
+			}
+		}
+		if (!resumed.isEmpty()) {
+			log.info("{} resume {} tasks from checkpoint", this.name, resumed.size());
+			resumed.forEach(ctxHolder -> classify(ctxHolder.url, ctxHolder.ctx));
+		} else
+			seed.getSeeds().forEach(ctxHolder -> classify(ctxHolder.url, ctxHolder.ctx));
 		
 		if (seed.autoStop())
 			startAutoStopChk();
@@ -195,6 +242,105 @@ public class Crawler<CTX extends UrlContext> {
 		return this;
 	}
 	
+	/**
+	 * limit accesses to every host, across all url classifiers. should be invoked before {@link #start()}.<br/>
+	 * tasks of a busy host are parked without occupying classifier threads, and run when the host is ready,
+	 * in the order hosts get ready. when a host has too many parked tasks, its tasks are set aside and put back
+	 * to the frontier after feeding other hosts, so the frontier isn't drained into parked tasks.<br/>
+	 * a host slot is released only after the entity is closed. connection reuse is not enforced, since classifiers
+	 * may use different clients: keep maxConcurrencyPerHost within {@link HttpClientConfig#setMaxIdolConnections}
+	 * (and {@link HttpClientConfig#setMaxAsyncRequestsPerHost} in async mode), so accesses to one host can reuse
+	 * the pooled connections.
+	 *
+	 * @param maxConcurrencyPerHost max accesses to one host at the same time.
+	 * @param hostDelayMillis       min interval between the starts of two accesses to one host.
+	 */
+	public Crawler<CTX> usePerHostPoliteness(int maxConcurrencyPerHost, long hostDelayMillis) {
+		if (status.get() != Status.INIT)
+			throw new IllegalStateException("per-host politeness should be set before starting, current status=" + status.get());
+		this.hostScheduler = new HostScheduler<>(maxConcurrencyPerHost, hostDelayMillis, MAX_PARKED_PER_HOST, scheduler,
+				w -> w.classifier.onHostReady(w));
+		return this;
+	}
+	
+	/**
+	 * checkpoint crawling progress to given directory, so pending tasks can be resumed after a crash.
+	 * should be invoked before {@link #start()}.<br/>
+	 * enqueued and completed tasks are appended to journal files every flushIntervalMillis,
+	 * and compacted in background. on starting, if there are pending tasks in the checkpoint,
+	 * they are crawled instead of {@link CrawlerSeed#getSeeds()}.
+	 */
+	public Crawler<CTX> useCheckpoint(File dir, long flushIntervalMillis) {
+		if (status.get() != Status.INIT)
+			throw new IllegalStateException("checkpoint should be set before starting, current status=" + status.get());
+		this.checkpoint = new CrawlCheckpoint<>(dir, this.name, flushIntervalMillis, 64 << 20);
+		return this;
+	}
+	
+	/**
+	 * skip near-duplicate pages, which have the same content as crawled ones under different urls,
+	 * e.g. session params or sort orders. should be invoked before {@link #start()}.<br/>
+	 * text pages are fingerprinted by {@link SimHash} before {@link CrawlerSeed#onGet},
+	 * a page within maxDistance bits of a crawled one is passed to {@link CrawlerSeed#onNearDuplicate} instead,
+	 * and its urls are not distilled.
+	 *
+	 * @param maxDistance max hamming distance of near-duplicate fingerprints, 0~7, 3 is recommended.
+	 *                    0 means the same text.
+	 */
+	public Crawler<CTX> useNearDuplicateDetection(int maxDistance) {
+		if (status.get() != Status.INIT)
+			throw new IllegalStateException("near-duplicate detection should be set before starting, current status=" + status.get());
+		this.nearDupIndex = new SimHashIndex(maxDistance);
+		return this;
+	}
+	
+	/**
+	 * register metrics of every url classifier as MXBean, named
+	 * <code>mysh.crawler2:type=Crawler,name=crawlerName,classifier=classifierName</code>,
+	 * unregistered when the crawler stopped. should be invoked before {@link #start()}.<br/>
+	 * see {@link #getMetrics()}
+	 */
+	public Crawler<CTX> exportMetricsToJmx() {
+		if (status.get() != Status.INIT)
+			throw new IllegalStateException("jmx export should be set before starting, current status=" + status.get());
+		this.exportJmx = true;
+		return this;
+	}
+	
+	/**
+	 * runtime metrics of url classifiers created so far.
+	 *
+	 * @return classifier name -> metrics, which are live views.
+	 */
+	public Map<String, ClassifierMetrics> getMetrics() {
+		Map<String, ClassifierMetrics> metrics = new TreeMap<>();
+		classifiers.values().forEach(uc -> metrics.put(uc.name, uc.metrics));
+		return metrics;
+	}
+	
+	/**
+	 * whether there's nothing to crawl now: no task is waiting, running or parked.
+	 */
+	public boolean isIdle() {
+		for (ClassifiedUrlCrawler uc : classifiers.values()) {
+			if (uc.frontier.size() > 0 || uc.running.get() > 0 || !uc.readyLane.isEmpty() || uc.setAside.get() > 0)
+				return false;
+		}
+		HostScheduler<Worker> hs = hostScheduler;
+		return hs == null || hs.parkedCount() == 0;
+	}
+	
+	/**
+	 * crawl a task from outside, e.g. forwarded by another crawler node, if it's accepted by the seed.
+	 * if the crawler is not running, the task is kept as unhandled.
+	 *
+	 * @throws RuntimeException if the crawler has been stopped.
+	 */
+	public void submit(String url, CTX ctx) {
+		if (seed.accept(url, ctx))
+			classify(url, ctx);
+	}
+	
 	/**
 	 * pause, until resumed. effect only in Running state.
 	 */
@@ -229,11 +375,16 @@ public class Crawler<CTX extends UrlContext> {
 		}
 		
 		try {
+			scheduler.shutdownNow();
 			classifiers.values().forEach(ClassifiedUrlCrawler::stop);
+			if (hostScheduler != null)
+				hostScheduler.drain().forEach(Worker::abandon);
 			classifiers.values().forEach(c -> c.awaitTermination(2, TimeUnit.MINUTES));
 		} finally {
 			try {
-				List<UrlCtxHolder<CTX>> tasks = unhandledTasks.stream().distinct().collect(Collectors.toList());
+				if (checkpoint != null)
+					checkpoint.close();
+				List<UrlCtxHolder<CTX>> tasks = new ArrayList<>(unhandledTasks);
 				log.info("{} stopped. unhandledTasks={}", this.name, tasks.size());
 				seed.onCrawlerStopped(tasks);
 			} finally {
@@ -285,31 +436,80 @@ public class Crawler<CTX extends UrlContext> {
 	}
 	
 	private void storeUnhandledTask(UrlCtxHolder<CTX> ctxHolder, Throwable t) {
-		if (unhandledTasks.add(ctxHolder))
+		long fp = UrlFingerprintIndex.fingerprint(ctxHolder.url);
+		if (unhandledIndex.add(fp)) {
+			unhandledTasks.add(ctxHolder);
 			log.error("store unhandled task: {}", ctxHolder.url, t);
-		inProcessTasks.remove(ctxHolder);
+			// unhandled tasks are still pending
+			if (checkpoint != null)
+				checkpoint.enqueued(ctxHolder);
+		}
+		inProcessTasks.remove(fp);
 	}
 	
-	private static final Pattern httpExp =
-			Pattern.compile("[Hh][Tt][Tt][Pp][Ss]?:[^\"'<>\\s#]+");
-	private static final Pattern srcHrefExp =
-			Pattern.compile("(([Hh][Rr][Ee][Ff])|([Ss][Rr][Cc]))[\\s]*=[\\s]*[\"']([^\"'#]*)");
+	/**
+	 * task handled, or dropped by seed.
+	 */
+	private void completeTask(long fp) {
+		inProcessTasks.remove(fp);
+		if (checkpoint != null)
+			checkpoint.completed(fp);
+	}
 	
-	private class Worker implements Runnable, Comparable<Worker> {
+	/**
+	 * frontier order, see {@link UrlContext#compareTo}
+	 */
+	private int compareTask(UrlCtxHolder<CTX> a, UrlCtxHolder<CTX> b) {
+		if (a.ctx != null && b.ctx != null) {
+			try {
+				return a.ctx.compareTo(b.ctx);
+			} catch (Throwable t) {
+				log.error("compare-urlContext-fail,this={},that={}", a.ctx, b.ctx, t);
+				return 0;
+			}
+		} else
+			return 0;
+	}
+	
+	private class Worker implements Runnable {
 		final ClassifiedUrlCrawler classifier;
 		final UrlCtxHolder<CTX> ctxHolder;
+		/**
+		 * fingerprint of the url, see {@link #inProcessTasks}
+		 */
+		final long fp;
+		/**
+		 * host slot of {@link #hostScheduler}, non-null if taken.
+		 */
+		private String heldHost;
+		
+		/**
+		 * result of async fetching, handled when the worker is run again.
+		 */
+		private HttpClientAssist.UrlEntity fetched;
+		private Throwable fetchError;
 		
 		Worker(UrlCtxHolder<CTX> ctxHolder, ClassifiedUrlCrawler classifier) {
 			this.ctxHolder = ctxHolder;
+			this.fp = UrlFingerprintIndex.fingerprint(ctxHolder.url);
 			this.classifier = classifier;
 		}
 		
 		@Override
 		public void run() {
+			// in async mode, worker ends in the second run, which handles the fetched result
+			boolean finished = true;
 			try {
+				if (fetched != null || fetchError != null) {
+					onFetched();
+					return;
+				}
+				
 				seed.beforeAccess(ctxHolder);
 				if (!seed.accept(ctxHolder.url, ctxHolder.ctx)) {
-					inProcessTasks.remove(ctxHolder);
+					// not accessed, the rate permit can be used by others
+					classifier.bucket.refund();
+					completeTask(fp);
 					return;
 				}
 				
@@ -317,123 +517,191 @@ public class Crawler<CTX extends UrlContext> {
 					Thread.sleep(50);
 				}
 				
-				try (HttpClientAssist.UrlEntity ue = classifier.access(ctxHolder.url)) {
-					if (ue == null) {
-						// blocked
-						classifier.recrawlWhenFail(this, null);
-						return;
-					}
-					
-					if (!seed.accept(ctxHolder.url, ctxHolder.ctx)) {
-						inProcessTasks.remove(ctxHolder);
-						return;
-					}
-					if (status.get() == Status.STOPPED) {
-						storeUnhandledTask(ctxHolder, null);
-						return;
-					}
-					
-					log.debug("onGet={}, reqUrl={}", ue.getCurrentURL(), ue.getReqUrl());
-					
-					if (seed.onGet(ue, ctxHolder.ctx)) {
-						if (ue.isText() && seed.needToDistillUrls(ue, ctxHolder.ctx)) {
-							seed.afterDistillingUrls(ue, ctxHolder.ctx, distillUrl(ue))
-							    .filter(h -> seed.accept(h.url, h.ctx))
-							    .forEach(h -> classify(h.url, h.ctx));
-						}
-						inProcessTasks.remove(ctxHolder);
-					} else
-						classifier.recrawlWhenFail(this, null);
+				Map<String, ?> headers = seed.requestHeaders(ctxHolder);
+				if (classifier.asyncMaxInFlight > 0) {
+					long fetchStart = System.nanoTime();
+					CompletableFuture<HttpClientAssist.UrlEntity> future = classifier.accessAsync(ctxHolder.url, headers);
+					finished = false;
+					future.whenComplete((ue, t) -> {
+						if (ue != null)
+							classifier.onFetched(System.nanoTime() - fetchStart);
+						fetched = ue;
+						fetchError = t;
+						classifier.exec.execute(this);
+					});
+					return;
+				}
+				
+				try (HttpClientAssist.UrlEntity ue = classifier.access(ctxHolder.url, headers)) {
+					onAccessed(ue);
 				}
 			} catch (InterruptedIOException | SocketException ex) {
+				classifier.metrics.onError();
 				classifier.recrawlWhenFail(this, ex);
 			} catch (UnknownHostException | InterruptedException ex) {
+				if (ex instanceof UnknownHostException)
+					classifier.metrics.onError();
 				storeUnhandledTask(ctxHolder, ex);
 			} catch (Exception ex) {
+				classifier.metrics.onError();
 				if (isMalformedUrl(ex)) {
 					log.error("malformed url will be ignored: " + ctxHolder.url, ex);
-					inProcessTasks.remove(ctxHolder);
+					completeTask(fp);
 				} else {
 					storeUnhandledTask(ctxHolder, ex);
 				}
 			} finally {
-				classifier.afterAccess();
+				if (finished) {
+					releaseHost();
+					classifier.afterAccess();
+					classifier.onWorkerDone();
+				}
 			}
 		}
 		
-		private Stream<String> distillUrl(HttpClientAssist.UrlEntity ue) throws IOException {
-			String pageContent = ue.getEntityStr();
+		/**
+		 * handle async fetching result.
+		 */
+		private void onFetched() throws Exception {
+			Throwable t = fetchError;
+			if (t != null) {
+				if (t instanceof CompletionException && t.getCause() != null)
+					t = t.getCause();
+				if (t instanceof Exception)
+					throw (Exception) t;
+				throw new ExecutionException(t);
+			}
 			
-			Set<String> urls = new HashSet<>();
+			try (HttpClientAssist.UrlEntity ue = classifier.checkAccess(fetched)) {
+				onAccessed(ue);
+			}
+		}
+		
+		/**
+		 * @param ue <code>null</code> if access blocked
+		 */
+		private void onAccessed(@Nullable HttpClientAssist.UrlEntity ue) throws IOException {
+			if (ue == null) {
+				// blocked
+				classifier.recrawlWhenFail(this, null);
+				return;
+			}
+			
+			if (!seed.accept(ctxHolder.url, ctxHolder.ctx)) {
+				completeTask(fp);
+				return;
+			}
+			if (status.get() == Status.STOPPED) {
+				storeUnhandledTask(ctxHolder, null);
+				return;
+			}
 			
+			Long simHash = simHash(ue);
+			// reserved before handling, so near-duplicates handled concurrently won't both pass
+			if (simHash != null && !nearDupIndex.addIfAbsent(simHash)) {
+				log.debug("near-duplicate={}, reqUrl={}", ue.getCurrentURL(), ue.getReqUrl());
+				classifier.metrics.onDuplicate();
+				classifier.metrics.onBytes(ue.getEntityBuf().length);
+				seed.onNearDuplicate(ue, ctxHolder.ctx);
+				completeTask(fp);
+				return;
+			}
+			
+			log.debug("onGet={}, reqUrl={}", ue.getCurrentURL(), ue.getReqUrl());
+			
+			long onGetStart = System.nanoTime();
+			boolean got = false;
 			try {
-				// 1. 查找 http 开头的地址
-				Matcher httpExpMatcher = httpExp.matcher(pageContent);
-				while (httpExpMatcher.find()) {
-					urls.add(HttpClientAssist.getShortURL(httpExpMatcher.group()));
-				}
-				
-				// 取得当前根目录
-				String currentRoot = ue.getCurrentURL();
-				int sepIndex;
-				// 取 ? 前面的串
-				if ((sepIndex = currentRoot.lastIndexOf('?')) != -1) {
-					currentRoot = currentRoot.substring(0, sepIndex);
-				}
-				// 取 # 前面的串
-				if ((sepIndex = currentRoot.lastIndexOf('#')) != -1) {
-					currentRoot = currentRoot.substring(0, sepIndex);
+				got = seed.onGet(ue, ctxHolder.ctx);
+			} finally {
+				// reserved before onGet, released if onGet fails or throws, so a recrawl won't be taken as a duplicate of itself
+				if (!got && simHash != null)
+					nearDupIndex.remove(simHash);
+			}
+			classifier.metrics.onGet(System.nanoTime() - onGetStart);
+			long bytes = ue.getContentLength();
+			if (got) {
+				if (ue.isText() && seed.needToDistillUrls(ue, ctxHolder.ctx)) {
+					// downloading is not counted in distilling
+					byte[] entity = ue.getEntityBuf();
+					if (bytes < 0)
+						bytes = entity.length;
+					long distillStart = System.nanoTime();
+					Stream<String> urls = distillUrl(ue);
+					classifier.metrics.onDistilled(System.nanoTime() - distillStart);
+					seed.afterDistillingUrls(ue, ctxHolder.ctx, urls)
+					    .filter(h -> seed.accept(h.url, h.ctx))
+					    .forEach(h -> classify(h.url, h.ctx));
 				}
-				// 取根目录
-				currentRoot = currentRoot.substring(0, currentRoot.lastIndexOf('/') + 1);
-				
-				// 2. 查找 href 指向的地址
-				Matcher srcHrefMatcher = srcHrefExp.matcher(pageContent);
-				Iterator<String> srcHrefUrls = new Iterator<String>() {
-					@Override
-					public boolean hasNext() {
-						return srcHrefMatcher.find();
-					}
-					
-					@Override
-					public String next() {
-						return srcHrefMatcher.group(4);
-					}
-				};
-				
-				// 3. seed 定义的扩展提取地址
-				Stream<String> extendedUrls = ObjectUtils.firstNonNull(seed.enhancedDistillUrl(ue, ctxHolder.ctx), Stream.empty());
-				
-				String protocolPrefix = ue.getProtocol() + ":", root = currentRoot;
+				completeTask(fp);
+			} else
+				classifier.recrawlWhenFail(this, null);
+			classifier.metrics.onBytes(bytes);
+		}
+		
+		/**
+		 * @return fingerprint of a successful text page if near-duplicate detection is used, or null.
+		 */
+		@Nullable
+		private Long simHash(HttpClientAssist.UrlEntity ue) throws IOException {
+			if (nearDupIndex == null || ue.getStatusCode() != 200 || !ue.isText() || ue.isJs() || ue.isJson())
+				return null;
+			return SimHash.ofPage(ue.getEntityBuf(), ue.getEntityEncoding(), MIN_SIMHASH_FEATURES);
+		}
+		
+		/**
+		 * worker won't be run, release the fetched entity if any.
+		 */
+		void abandon() {
+			if (fetched != null)
+				fetched.close();
+			releaseHost();
+			storeUnhandledTask(ctxHolder, null);
+		}
+		
+		/**
+		 * take a host slot, or park the worker until the host is ready.
+		 *
+		 * @return {@link HostScheduler.Acquire#TAKEN} if the worker can run now.
+		 */
+		HostScheduler.Acquire acquireHost(HostScheduler<Worker> hs) {
+			String host = HostScheduler.hostOf(ctxHolder.url);
+			HostScheduler.Acquire acquire = hs.acquireOrPark(host, this);
+			if (acquire == HostScheduler.Acquire.TAKEN)
+				heldHost = host;
+			return acquire;
+		}
+		
+		/**
+		 * invoked when a parked worker is handed back by {@link HostScheduler}, holding the host slot.
+		 */
+		void onHostAcquired() {
+			heldHost = HostScheduler.hostOf(ctxHolder.url);
+		}
+		
+		private void releaseHost() {
+			String host = heldHost;
+			if (host != null) {
+				heldHost = null;
+				hostScheduler.release(host);
+			}
+		}
+		
+		private Stream<String> distillUrl(HttpClientAssist.UrlEntity ue) throws IOException {
+			Set<String> urls = new LinkedHashSet<>();
+			try {
+				LinkExtractor extractor = new LinkExtractor(ue.getCurrentURL(), ue.getEntityEncoding());
+				// 1. http 开头的地址, 及 href/src 指向的地址
+				extractor.extract(ue.getEntityBuf(), urls::add);
 				
-				Streams.concat(Streams.stream(srcHrefUrls), extendedUrls).forEach(value -> {
-					String tUrl;
-					if (value == null || value.length() == 0 || value.startsWith("#")
-							|| value.startsWith("mailto:") || value.startsWith("javascript:")) {
-						return;
-					} else if (value.startsWith("http:") || value.startsWith("https:")) {
-						tUrl = value;
-					} else if (value.startsWith("//")) {
-						tUrl = protocolPrefix + value;
-					} else if (value.startsWith("/")) {
-						tUrl = root.substring(0, root.indexOf('/', 9)) + value;
-					} else {
-						tUrl = root + value;
-					}
-					urls.add(HttpClientAssist.getShortURL(tUrl));
-				});
+				// 2. seed 定义的扩展提取地址
+				Stream<String> extendedUrls = seed.enhancedDistillUrl(ue, ctxHolder.ctx);
+				if (extendedUrls != null)
+					extendedUrls.map(extractor::resolve).filter(Objects::nonNull).forEach(urls::add);
 			} catch (Exception e) {
 				log.error("分析页面链接时异常: " + ue.getCurrentURL(), e);
 			}
-			
-			Charset enc = ue.getEntityEncoding();
-			return urls.stream()
-			           .filter(url -> url.length() > 0)
-			           .map(url -> Htmls.urlDecode(url
-					           .replace("&amp;", "&")
-					           .replace("&lt;", "<")
-					           .replace("&gt;", ">")
-					           .replace("&quot;", "\""), enc));
+			return urls.stream();
 		}
 		
 		private boolean isMalformedUrl(Exception ex) {
@@ -442,22 +710,25 @@ public class Crawler<CTX extends UrlContext> {
 					|| ex instanceof IllegalArgumentException
 					;
 		}
-		
-		@Override
-		public int compareTo(@Nonnull Worker o) {
-			if (ctxHolder.ctx != null && o.ctxHolder.ctx != null) {
-				try {
-					return ctxHolder.ctx.compareTo(o.ctxHolder.ctx);
-				} catch (Throwable t) {
-					log.error("compare-urlContext-fail,this={},that={}", ctxHolder.ctx, o.ctxHolder.ctx, t);
-					return 0;
-				}
-			} else
-				return 0;
-		}
 	}
 	
 	private final Map<UrlClassifierConf, ClassifiedUrlCrawler> classifiers = new ConcurrentHashMap<>();
+	/**
+	 * pages with less words are not checked for near-duplicates.
+	 */
+	private static final int MIN_SIMHASH_FEATURES = 16;
+	/**
+	 * max tasks parked for a host, see {@link #usePerHostPoliteness}.
+	 */
+	private static final int MAX_PARKED_PER_HOST = 64;
+	/**
+	 * feeding is retried after this when a host has too many parked tasks.
+	 */
+	private static final long HOST_FULL_RETRY_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+	/**
+	 * max tasks of full hosts set aside by one feeding.
+	 */
+	private static final int MAX_SET_ASIDE_PER_FEED = 64;
 	
 	/**
 	 * classify the url and put it into working queue.
@@ -506,49 +777,122 @@ public class Crawler<CTX extends UrlContext> {
 	private class ClassifiedUrlCrawler {
 		private final String name;
 		
-		private volatile int milliSecStep;
+		/**
+		 * access rate control, checked when feeding tasks to {@link #exec},
+		 * so threads never sleep for rate limits.
+		 */
+		private final TokenBucket bucket;
+		/**
+		 * whether a delayed feeding is scheduled, waiting for rate permit.
+		 */
+		private final AtomicBoolean feedScheduled = new AtomicBoolean(false);
 		private final HttpClientAssist hca;
 		
 		private volatile boolean useAdjuster;
-		private final UrlClassifierAdjuster adjuster = new UrlClassifierAdjuster(this);
+		private final UrlClassifierAdjuster adjuster;
 		private final UrlClassifierConf.BlockChecker blockChecker;
 		
-		private final BlockingQueue<Runnable> wq = new PriorityBlockingQueue<>();
+		/**
+		 * tasks waiting to be crawled. they are fed to {@link #exec} only when there are idle threads,
+		 * so the executor queue stays short and the frontier decides the crawling order.
+		 */
+		private final Frontier<CTX> frontier;
+		/**
+		 * workers fed to {@link #exec} and not finished yet.
+		 */
+		private final AtomicInteger running = new AtomicInteger();
+		/**
+		 * workers handed back by {@link #hostScheduler}, holding host slots. they run before new tasks from frontier.
+		 */
+		private final Queue<Worker> readyLane = new ConcurrentLinkedQueue<>();
+		/**
+		 * tasks of full hosts taken out of frontier by feedings, put back when the feedings end.
+		 */
+		private final AtomicInteger setAside = new AtomicInteger();
+		private volatile int poolSize;
+		/**
+		 * see {@link UrlClassifierConf#setAsyncFetch(int)}, may be tuned by {@link UrlClassifierAdjuster}
+		 */
+		private volatile int asyncMaxInFlight;
 		private final ThreadPoolExecutor exec;
+		private final ClassifierMetrics metrics;
+		/**
+		 * registered MXBean name, null if not exported.
+		 */
+		private final ObjectName mbeanName;
 		
 		@SuppressWarnings("unchecked")
 		ClassifiedUrlCrawler(UrlClassifierConf conf) {
 			Objects.requireNonNull(conf, "conf should not be null");
 			this.name = Objects.requireNonNull(conf.name, "name can't be null");
 			
-			setRatePerMinute(conf.ratePerMinute);
+			this.bucket = new TokenBucket(conf.ratePerMinute, conf.rateBurst);
 			this.hca = Objects.requireNonNull(conf.hca, "hca should not be null");
 			
 			this.useAdjuster = conf.useAdjuster;
 			this.blockChecker = conf.blockChecker;
 			
-			exec = new ThreadPoolExecutor(conf.threadPoolSize, conf.threadPoolSize, 15L, TimeUnit.SECONDS, wq,
+			this.frontier = Objects.requireNonNull(
+					conf.frontierFactory.create(this.name, Crawler.this::compareTask), "frontier factory returns null");
+			this.poolSize = conf.threadPoolSize;
+			this.asyncMaxInFlight = conf.asyncMaxInFlight;
+			this.adjuster = new UrlClassifierAdjuster(this, conf.adaptiveMaxConcurrency);
+			exec = new ThreadPoolExecutor(poolSize, poolSize, 15L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
 					r -> {
 						Thread t = new Thread(r, this.name + "-UrlClassifier-T-" + classifierThreadCount.incrementAndGet());
 						t.setDaemon(true);
 						return t;
 					},
 					(work, executor) -> {
-						Worker w = (Worker) work;
-						storeUnhandledTask(w.ctxHolder, null);
+						// the worker was counted as running when it was fed
+						running.decrementAndGet();
+						((Worker) work).abandon();
 					}
 			);
 			exec.allowCoreThreadTimeOut(true);
+			
+			this.metrics = new ClassifierMetrics(this.name, new ClassifierMetrics.Gauges() {
+				@Override
+				public int queueDepth() {
+					return frontier.size();
+				}
+				
+				@Override
+				public int running() {
+					return running.get();
+				}
+				
+				@Override
+				public int ratePerMinute() {
+					return getRatePerMinute();
+				}
+				
+				@Override
+				public int threadPoolSize() {
+					return getThreadPoolSize();
+				}
+			});
+			this.mbeanName = exportJmx ? registerMBean() : null;
+		}
+		
+		@Nullable
+		private ObjectName registerMBean() {
+			try {
+				ObjectName on = new ObjectName("mysh.crawler2:type=Crawler,name=" + ObjectName.quote(Crawler.this.name)
+						+ ",classifier=" + ObjectName.quote(this.name));
+				ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, on);
+				return on;
+			} catch (Exception e) {
+				log.error("register-classifier-mbean-fail, classifier={}", this.name, e);
+				return null;
+			}
 		}
 		
 		/**
-		 * @param rate url max handle rate per minute. (the max accurate value
-		 *             is {@link UrlClassifierConf#maxAccRatePM}. if given value is larger than that,
-		 *             it will be regard as {@link Integer#MAX_VALUE}, because such a rate can't be
-		 *             accurately controlled)
+		 * @param rate url max handle rate per minute. see {@link TokenBucket#setRatePerMinute(int)}
 		 */
 		void setRatePerMinute(int rate) {
-			milliSecStep = 60_000 / Range.within(1, UrlClassifierConf.maxAccRatePM + 1, rate);
+			bucket.setRatePerMinute(rate);
 		}
 		
 		/**
@@ -556,29 +900,63 @@ public class Crawler<CTX extends UrlContext> {
 		 * see {@link #setRatePerMinute(int)}
 		 */
 		int getRatePerMinute() {
-			return milliSecStep == 0 ? Integer.MAX_VALUE :
-					Range.within(1, UrlClassifierConf.maxAccRatePM, 60_000 / milliSecStep);
+			return bucket.getRatePerMinute();
 		}
 		
 		void setThreadPoolSize(int size) {
-			this.exec.setMaximumPoolSize(size);
+			size = Math.max(1, size);
+			// keep core size <= max size all the time
+			if (size > exec.getMaximumPoolSize()) {
+				exec.setMaximumPoolSize(size);
+				exec.setCorePoolSize(size);
+			} else {
+				exec.setCorePoolSize(size);
+				exec.setMaximumPoolSize(size);
+			}
+			this.poolSize = size;
+			feed();
 		}
 		
 		int getThreadPoolSize() {
-			return this.exec.getMaximumPoolSize();
+			return this.poolSize;
+		}
+		
+		/**
+		 * max workers running at the same time, which is max requests in flight in async mode,
+		 * or thread pool size otherwise.
+		 */
+		int getConcurrency() {
+			int inFlight = asyncMaxInFlight;
+			return inFlight > 0 ? inFlight : poolSize;
+		}
+		
+		void setConcurrency(int concurrency) {
+			if (asyncMaxInFlight > 0) {
+				asyncMaxInFlight = Math.max(1, concurrency);
+				feed();
+			} else
+				setThreadPoolSize(concurrency);
 		}
 		
 		/**
 		 * stop classifiedUrlCrawler. release all resources, to wait for termination, call {@link #awaitTermination}
 		 */
-		@SuppressWarnings("unchecked")
 		void stop() {
 			hca.close();
-			exec.shutdownNow()
-			    .forEach(r -> {
-				    Worker work = (Worker) r;
-				    storeUnhandledTask(work.ctxHolder, null);
-			    });
+			exec.shutdownNow().forEach(r -> {
+				if (r instanceof Crawler.Worker)
+					((Crawler<?>.Worker) r).abandon();
+			});
+			abandonReadyLane();
+			frontier.drain().forEach(task -> storeUnhandledTask(task, null));
+			frontier.close();
+			if (mbeanName != null) {
+				try {
+					ManagementFactory.getPlatformMBeanServer().unregisterMBean(mbeanName);
+				} catch (Exception e) {
+					log.error("unregister-classifier-mbean-fail, classifier={}", this.name, e);
+				}
+			}
 		}
 		
 		/**
@@ -596,66 +974,197 @@ public class Crawler<CTX extends UrlContext> {
 		/**
 		 * crawl given url.
 		 */
-		synchronized void crawl(String url, CTX ctx) {
+		void crawl(String url, CTX ctx) {
 			UrlCtxHolder<CTX> ctxHolder = new UrlCtxHolder<>(url, ctx);
-			if (!inProcessTasks.containsKey(ctxHolder) && !unhandledTasks.contains(ctxHolder)) {
-				inProcessTasks.put(ctxHolder, new AtomicInteger());
-				exec.execute(new Worker(ctxHolder, this));
+			long fp = UrlFingerprintIndex.fingerprint(ctxHolder.url);
+			if (!unhandledIndex.contains(fp) && inProcessTasks.add(fp)) {
+				// recorded before it can be completed
+				if (checkpoint != null)
+					checkpoint.enqueued(ctxHolder);
+				try {
+					frontier.add(ctxHolder);
+				} catch (Exception e) {
+					storeUnhandledTask(ctxHolder, e);
+					return;
+				}
+				feed();
 			}
 		}
 		
+		/**
+		 * feed tasks from frontier to executor, as long as there are idle threads and rate permits.
+		 * if rate permit is not available, a feeding will be scheduled when it's available.
+		 */
+		void feed() {
+			List<UrlCtxHolder<CTX>> skipped = null;
+			try {
+				while (!exec.isShutdown()) {
+					int r = running.get();
+					// in async mode, running workers are mostly waiting for responses without holding threads
+					if (r >= getConcurrency()
+							|| (readyLane.isEmpty() && frontier.isEmpty()))
+						return;
+					if (!running.compareAndSet(r, r + 1))
+						continue;
+					
+					long waitNanos = bucket.tryAcquire();
+					if (waitNanos > 0) {
+						running.decrementAndGet();
+						scheduleFeed(waitNanos);
+						return;
+					}
+					
+					Worker worker = readyLane.poll();
+					if (worker == null) {
+						UrlCtxHolder<CTX> task = frontier.poll();
+						if (task == null) {
+							// taken by another feeder, check again in case a task came in meanwhile
+							running.decrementAndGet();
+							bucket.refund();
+							continue;
+						}
+						worker = new Worker(task, this);
+						HostScheduler<Worker> hs = hostScheduler;
+						HostScheduler.Acquire acquire = hs == null ? HostScheduler.Acquire.TAKEN : worker.acquireHost(hs);
+						if (acquire != HostScheduler.Acquire.TAKEN) {
+							running.decrementAndGet();
+							bucket.refund();
+							// parked until its host is ready, go on with other tasks
+							if (acquire == HostScheduler.Acquire.PARKED)
+								continue;
+							// too many parked for its host, set it aside and go on with other hosts
+							if (skipped == null)
+								skipped = new ArrayList<>();
+							skipped.add(task);
+							setAside.incrementAndGet();
+							if (skipped.size() >= MAX_SET_ASIDE_PER_FEED)
+								return;
+							continue;
+						}
+					}
+					exec.execute(worker);
+				}
+			} finally {
+				if (skipped != null) {
+					// put back in order, and retry when their hosts may have room
+					for (UrlCtxHolder<CTX> task : skipped) {
+						try {
+							frontier.add(task);
+						} catch (Exception e) {
+							storeUnhandledTask(task, e);
+						}
+					}
+					setAside.addAndGet(-skipped.size());
+					scheduleFeed(HOST_FULL_RETRY_NANOS);
+				}
+			}
+		}
+		
+		/**
+		 * a parked worker's host gets ready.
+		 */
+		void onHostReady(Worker worker) {
+			worker.onHostAcquired();
+			readyLane.add(worker);
+			if (exec.isShutdown())
+				abandonReadyLane();
+			else
+				feed();
+		}
+		
+		private void abandonReadyLane() {
+			Worker worker;
+			while ((worker = readyLane.poll()) != null)
+				worker.abandon();
+		}
+		
+		private void scheduleFeed(long delayNanos) {
+			if (feedScheduled.compareAndSet(false, true)) {
+				try {
+					scheduler.schedule(() -> {
+						feedScheduled.set(false);
+						feed();
+					}, delayNanos, TimeUnit.NANOSECONDS);
+				} catch (RejectedExecutionException e) {
+					// crawler stopping
+					feedScheduled.set(false);
+				}
+			}
+		}
+		
+		void onWorkerDone() {
+			running.decrementAndGet();
+			feed();
+		}
+		
 		/**
 		 * schedule a recrawl.
 		 */
 		void recrawlWhenFail(Worker worker, IOException ex) {
-			AtomicInteger count = inProcessTasks.get(worker.ctxHolder);
-			if (getStatus() == Status.RUNNING && count.getAndIncrement() < 3) {
+			int count = inProcessTasks.getAndIncrement(worker.fp);
+			if (getStatus() == Status.RUNNING && count >= 0 && count < 3) {
+				metrics.onRetry();
+				if (ex != null && isNetworkIssue(ex))
+					adjuster.onDrop();
 				if (useAdjuster && ex != null)
 					adjuster.onException(ex);
 				try {
-					exec.execute(worker);
+					frontier.add(worker.ctxHolder);
 				} catch (Exception e) {
 					log.error("submit-recrawl-task-failed, url={}", worker.ctxHolder.url, e);
 					storeUnhandledTask(worker.ctxHolder, ex);
 				}
-				log.debug("recrawl: {}/3, ex={}, url={}", count.get(), ex, worker.ctxHolder.url);
+				log.debug("recrawl: {}/3, ex={}, url={}", count + 1, ex, worker.ctxHolder.url);
 			} else {
 				storeUnhandledTask(worker.ctxHolder, ex);
 			}
 		}
 		
 		/**
-		 * last access time, guarded by "this" monitor.
+		 * access url. flow rate is controlled when the worker is fed, see {@link #feed()}.<br/>
+		 * see {@link HttpClientAssist#access(String, Map)}
+		 *
+		 * @return <code>null</code> if this access blocked
 		 */
-		@GuardedBy("this")
-		private long lastAccess;
+		HttpClientAssist.UrlEntity access(String url, @Nullable Map<String, ?> headers) throws IOException {
+			if (useAdjuster)
+				adjuster.beforeAccess();
+			long start = System.nanoTime();
+			HttpClientAssist.UrlEntity ue = this.hca.access(url, headers);
+			onFetched(System.nanoTime() - start);
+			return checkAccess(ue);
+		}
 		
 		/**
-		 * access url, with flow rate control.<br/>
-		 * see {@link HttpClientAssist#access(String)}
-		 *
-		 * @return <code>null</code> if this access blocked
+		 * access url asynchronously. the fetched entity should be checked by {@link #checkAccess}.<br/>
+		 * see {@link HttpClientAssist#accessAsync(String, Map)}
 		 */
-		HttpClientAssist.UrlEntity access(String url) throws IOException, InterruptedException {
-			long timeStep = this.milliSecStep;
-			if (timeStep > 0) {
-				long waitTime;
-				synchronized (this) {
-					lastAccess += timeStep;
-					long now = System.currentTimeMillis();
-					lastAccess = Math.max(now, lastAccess);
-					waitTime = lastAccess - now;
-				}
-				if (waitTime > 0) Thread.sleep(waitTime);
-			}
-			
+		CompletableFuture<HttpClientAssist.UrlEntity> accessAsync(String url, @Nullable Map<String, ?> headers) {
 			if (useAdjuster)
 				adjuster.beforeAccess();
-			HttpClientAssist.UrlEntity ue = this.hca.access(url);
+			return this.hca.accessAsync(url, headers);
+		}
+		
+		/**
+		 * a response is received.
+		 */
+		void onFetched(long rttNanos) {
+			metrics.onFetched(rttNanos);
+			adjuster.onRtt(rttNanos);
+		}
+		
+		/**
+		 * check whether the access is blocked.
+		 *
+		 * @return <code>null</code> if this access blocked
+		 */
+		HttpClientAssist.UrlEntity checkAccess(HttpClientAssist.UrlEntity ue) {
 			if (!Objects.equals(ue.getReqUrl(), ue.getCurrentURL()))
 				log.warn("url-jumped: {} -> {}", ue.getReqUrl(), ue.getCurrentURL());
 			
 			if (blockChecker != null && blockChecker.isBlocked(ue)) {
+				metrics.onBlocked();
+				adjuster.onDrop();
 				if (useAdjuster)
 					adjuster.onBlocked(ue);
 				log.warn("access-blocked: status={}, req={}, current={}", ue.getStatusCode(), ue.getReqUrl(), ue.getCurrentURL());
@@ -678,9 +1187,54 @@ public class Crawler<CTX extends UrlContext> {
 	
 	private class UrlClassifierAdjuster {
 		private final ClassifiedUrlCrawler cuCrawler;
+		/**
+		 * latency-driven concurrency control, works whether {@link ClassifiedUrlCrawler#useAdjuster} or not.
+		 * null if not used, see {@link UrlClassifierConf#setAdaptiveConcurrency(int)}
+		 */
+		@Nullable
+		private final GradientLimiter limiter;
 		
-		UrlClassifierAdjuster(ClassifiedUrlCrawler cuCrawler) {
+		/**
+		 * @param maxConcurrency see {@link UrlClassifierConf#setAdaptiveConcurrency(int)}
+		 */
+		UrlClassifierAdjuster(ClassifiedUrlCrawler cuCrawler, int maxConcurrency) {
 			this.cuCrawler = cuCrawler;
+			this.limiter = maxConcurrency > 0 ?
+					new GradientLimiter(cuCrawler.getConcurrency(), 1, maxConcurrency) : null;
+		}
+		
+		void onRtt(long rttNanos) {
+			if (limiter != null) {
+				// saturated if most of the limit is in use, or feeding is waiting for rate permits
+				boolean saturated = cuCrawler.running.get() * 2 >= cuCrawler.getConcurrency() || cuCrawler.feedScheduled.get();
+				applyLimit(limiter.onSample(rttNanos, saturated));
+			}
+		}
+		
+		/**
+		 * access blocked or failed by network issue.
+		 */
+		void onDrop() {
+			if (limiter != null)
+				applyLimit(limiter.onDrop());
+		}
+		
+		/**
+		 * apply the new concurrency limit, and scale limited rate along with it,
+		 * so the rate won't cap the throughput before the concurrency does.
+		 */
+		private void applyLimit(int limit) {
+			if (limit < 0)
+				return;
+			int old = cuCrawler.getConcurrency();
+			if (old == limit)
+				return;
+			cuCrawler.setConcurrency(limit);
+			int rate = cuCrawler.getRatePerMinute();
+			if (rate < UrlClassifierConf.maxAccRatePM)
+				cuCrawler.setRatePerMinute(Range.within(5, UrlClassifierConf.maxAccRatePM, (int) ((long) rate * limit / old)));
+			log.debug("{} concurrency {} -> {}, APM:{}, rtt={}us, minRtt={}us", cuCrawler.name, old, limit,
+					cuCrawler.getRatePerMinute(), limiter.getLastRttNanos() / 1000, limiter.getMinRttNanos() / 1000);
 		}
 		
 		private final Queue<Long> accessRec = new ConcurrentLinkedQueue<>();
@@ -690,6 +1244,10 @@ public class Crawler<CTX extends UrlContext> {
 		}
 		
 		private volatile long periodStart = System.currentTimeMillis();
+		/**
+		 * when statistics were cleared last time.
+		 */
+		private volatile long statStart = periodStart;
 		private volatile long periodIdx = 1;
 		private final Semaphore analyzeRes = new Semaphore(1);
 		private final AtomicLong totalMilliSec = new AtomicLong(0);
@@ -717,9 +1275,11 @@ public class Crawler<CTX extends UrlContext> {
 						long accAveMilli = totalMilliSec.get() / total;
 						int networkIssues = networkIssueCount.get();
 						int blocks = blockCount.get();
+						int observedPerMinute = (int) Math.min(Integer.MAX_VALUE, total * 60_000L / Math.max(1, now - statStart));
 						
 						if (isFinalPeriod) {
 							periodStart = now;
+							statStart = now;
 							periodIdx = 0;
 							totalMilliSec.set(0);
 							totalCount.set(0);
@@ -727,9 +1287,10 @@ public class Crawler<CTX extends UrlContext> {
 							blockCount.set(0);
 						}
 						
-						boolean isSpeedDown = analyze(now, isFinalPeriod, total, accAveMilli, networkIssues, blocks);
+						boolean isSpeedDown = analyze(now, isFinalPeriod, total, accAveMilli, networkIssues, blocks, observedPerMinute);
 						// clear statistics when speed down
 						if (isSpeedDown) {
+							statStart = now;
 							totalMilliSec.set(0);
 							totalCount.set(0);
 							networkIssueCount.set(0);
@@ -765,13 +1326,17 @@ public class Crawler<CTX extends UrlContext> {
 		 * @param accAveMilli   access average time (milli-second).
 		 * @param networkIssues network fails count.
 		 * @param blocks        blocked by remote server count.
+		 * @param observedPerMinute actual access rate since statistics cleared.
 		 * @return speed down or not
 		 */
 		private boolean analyze(long now, boolean isFinalPeriod,
-		                        int total, long accAveMilli, int networkIssues, int blocks) {
+		                        int total, long accAveMilli, int networkIssues, int blocks, int observedPerMinute) {
 			double networkIssueRate = 1.0 * networkIssues / total;
 			double blockRate = 1.0 * blocks / (total - networkIssues);
 			int accPerMinute = cuCrawler.getRatePerMinute();
+			// unlimited rate can't be tuned by ratio, start from the actual one
+			if (accPerMinute >= UrlClassifierConf.maxAccRatePM)
+				accPerMinute = observedPerMinute;
 			
 			accPerMinute = Range.within(5, UrlClassifierConf.maxAccRatePM, accPerMinute);
 			if (networkIssueRate > 0.15 || blockRate > 0.05) { // speed down
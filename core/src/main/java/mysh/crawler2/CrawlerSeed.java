@@ -6,6 +6,7 @@ import javax.annotation.Nullable;
 import java.io.IOException;
 import java.io.Serializable;
 import java.util.Collection;
+import java.util.Map;
 import java.util.stream.Stream;
 
 /**
@@ -33,6 +34,17 @@ public interface CrawlerSeed<CTX extends UrlContext> extends Serializable {
 	default void beforeAccess(UrlCtxHolder<CTX> urlCtxHolder) {
 	}
 	
+	/**
+	 * extra request headers of the access, e.g. <code>If-None-Match/If-Modified-Since</code>
+	 * to revalidate a crawled page. invoked after {@link #beforeAccess}.
+	 *
+	 * @return header name -> value, or null if no extra header.
+	 */
+	@Nullable
+	default Map<String, ?> requestHeaders(UrlCtxHolder<CTX> urlCtxHolder) {
+		return null;
+	}
+	
 	/**
 	 * whether the url & ctx should be crawled NOW.<br/>
 	 * need a EFFICIENT implementation.
@@ -57,6 +69,13 @@ public interface CrawlerSeed<CTX extends UrlContext> extends Serializable {
 	 */
 	boolean onGet(HttpClientAssist.UrlEntity ue, CTX ctx);
 	
+	/**
+	 * invoked instead of {@link #onGet} if the page is a near-duplicate of a crawled one,
+	 * its urls won't be distilled either. see {@link Crawler#useNearDuplicateDetection(int)}
+	 */
+	default void onNearDuplicate(HttpClientAssist.UrlEntity ue, CTX ctx) {
+	}
+	
 	/**
 	 * invoked by crawler after crawler being completely stopped.
 	 */
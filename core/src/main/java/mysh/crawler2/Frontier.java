@@ -0,0 +1,60 @@
+package mysh.crawler2;
+
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * crawl frontier of a url classifier, which keeps the tasks waiting to be crawled,
+ * and hands them out in the given order (which comes from {@link UrlContext#compareTo}).
+ * <p>
+ * implementations should be thread-safe.
+ *
+ * @since 2026-10-18
+ */
+public interface Frontier<CTX extends UrlContext> extends Closeable {
+
+	/**
+	 * create a frontier for a url classifier. every classifier owns its frontier.
+	 */
+	interface Factory {
+		<CTX extends UrlContext> Frontier<CTX> create(String classifierName, Comparator<UrlCtxHolder<CTX>> order);
+	}
+
+	/**
+	 * keep all tasks on heap. the default one.
+	 */
+	Factory HEAP = HeapFrontier::new;
+
+	/**
+	 * put a task into frontier.
+	 */
+	void add(UrlCtxHolder<CTX> task);
+
+	/**
+	 * take the head task out of frontier.
+	 *
+	 * @return <code>null</code> if frontier is empty
+	 */
+	@Nullable
+	UrlCtxHolder<CTX> poll();
+
+	int size();
+
+	default boolean isEmpty() {
+		return size() == 0;
+	}
+
+	/**
+	 * take all remaining tasks out of frontier, in frontier order.
+	 */
+	List<UrlCtxHolder<CTX>> drain();
+
+	/**
+	 * release resources the frontier holds. remaining tasks are discarded.
+	 */
+	@Override
+	default void close() {
+	}
+}
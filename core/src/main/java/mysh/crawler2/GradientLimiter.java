@@ -0,0 +1,132 @@
+package mysh.crawler2;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * latency-driven concurrency limit, which grows while response time stays near its minimum,
+ * and shrinks as soon as requests start queueing at the target (response time rises), or fail.
+ * <p>
+ * every window of samples, the average rtt is compared with the min rtt ever seen,
+ * <pre>
+ * gradient = clamp(tolerance * minRtt / rtt, 0.5, 1)
+ * newLimit = limit * gradient + sqrt(limit)
+ * </pre>
+ * the new limit is smoothed into current one. sqrt(limit) is the headroom for probing,
+ * so the limit grows while rtt is flat, and converges near the capacity of the target, where rtt
+ * starts rising. blocks and network failures decrease the limit multiplicatively (AIMD).
+ * the min rtt is re-probed periodically, in case the target (or the route to it) changed:
+ * the limit is halved to drain the queue at the target, and rtt of the next window is taken as the min.
+ *
+ * @since 2026-10-18
+ */
+@ThreadSafe
+final class GradientLimiter {
+	private static final double TOLERANCE = 1.5;
+	private static final double SMOOTHING = 0.2;
+	private static final double BACKOFF = 0.75;
+	private static final int MIN_WINDOW_SAMPLES = 10;
+	/**
+	 * saturated windows between two min rtt probes.
+	 */
+	private static final int PROBE_WINDOWS = 500;
+
+	private final int minLimit;
+	private final int maxLimit;
+
+	@GuardedBy("this")
+	private double limit;
+	@GuardedBy("this")
+	private long minRtt = Long.MAX_VALUE;
+	@GuardedBy("this")
+	private long windowRttSum;
+	@GuardedBy("this")
+	private int windowSamples;
+	@GuardedBy("this")
+	private boolean windowSaturated;
+	@GuardedBy("this")
+	private int windows;
+	@GuardedBy("this")
+	private boolean probing;
+	private volatile long lastRtt;
+
+	GradientLimiter(int initLimit, int minLimit, int maxLimit) {
+		this.minLimit = Math.max(1, minLimit);
+		this.maxLimit = Math.max(this.minLimit, maxLimit);
+		this.limit = Math.min(this.maxLimit, Math.max(this.minLimit, initLimit));
+	}
+
+	/**
+	 * @param rttNanos  response time of an access.
+	 * @param saturated whether the client is pushing as hard as allowed, e.g. most of the limit is in use.
+	 *                  the limit won't grow on samples taken while the client is idle,
+	 *                  since the target capacity can't be told then.
+	 * @return new limit if it changes, or -1.
+	 */
+	synchronized int onSample(long rttNanos, boolean saturated) {
+		windowRttSum += rttNanos;
+		windowSaturated |= saturated;
+		if (++windowSamples < Math.max(MIN_WINDOW_SAMPLES, (int) limit))
+			return -1;
+
+		long rtt = windowRttSum / windowSamples;
+		boolean saturatedWindow = windowSaturated;
+		resetWindow();
+		lastRtt = rtt;
+
+		int old = (int) limit;
+		if (probing) {
+			probing = false;
+			minRtt = rtt;
+		} else if (rtt < minRtt)
+			minRtt = rtt;
+		// rtt is near the min when idle, no need to probe
+		if (saturatedWindow && ++windows % PROBE_WINDOWS == 0) {
+			probing = true;
+			limit = Math.max(minLimit, limit / 2);
+			return (int) limit != old ? (int) limit : -1;
+		}
+
+		double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * minRtt / rtt));
+		double newLimit = limit * gradient + Math.sqrt(limit);
+		if (newLimit > limit && !saturatedWindow)
+			return -1;
+		newLimit = limit * (1 - SMOOTHING) + newLimit * SMOOTHING;
+		limit = Math.min(maxLimit, Math.max(minLimit, newLimit));
+		return (int) limit != old ? (int) limit : -1;
+	}
+
+	/**
+	 * an access is blocked or failed by network issue.
+	 *
+	 * @return new limit if it changes, or -1.
+	 */
+	synchronized int onDrop() {
+		int old = (int) limit;
+		limit = Math.max(minLimit, limit * BACKOFF);
+		resetWindow();
+		return (int) limit != old ? (int) limit : -1;
+	}
+
+	@GuardedBy("this")
+	private void resetWindow() {
+		windowRttSum = 0;
+		windowSamples = 0;
+		windowSaturated = false;
+	}
+
+	synchronized int getLimit() {
+		return (int) limit;
+	}
+
+	synchronized long getMinRttNanos() {
+		return minRtt;
+	}
+
+	/**
+	 * average rtt of last sample window.
+	 */
+	long getLastRttNanos() {
+		return lastRtt;
+	}
+}
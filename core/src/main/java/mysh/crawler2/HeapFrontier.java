@@ -0,0 +1,45 @@
+package mysh.crawler2;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * on-heap frontier, see {@link Frontier#HEAP}
+ *
+ * @since 2026-10-18
+ */
+@ThreadSafe
+class HeapFrontier<CTX extends UrlContext> implements Frontier<CTX> {
+	private final PriorityQueue<UrlCtxHolder<CTX>> tasks;
+
+	HeapFrontier(String classifierName, Comparator<UrlCtxHolder<CTX>> order) {
+		tasks = new PriorityQueue<>(order);
+	}
+
+	@Override
+	public synchronized void add(UrlCtxHolder<CTX> task) {
+		tasks.add(task);
+	}
+
+	@Override
+	public synchronized UrlCtxHolder<CTX> poll() {
+		return tasks.poll();
+	}
+
+	@Override
+	public synchronized int size() {
+		return tasks.size();
+	}
+
+	@Override
+	public synchronized List<UrlCtxHolder<CTX>> drain() {
+		List<UrlCtxHolder<CTX>> lst = new ArrayList<>(tasks.size());
+		UrlCtxHolder<CTX> task;
+		while ((task = tasks.poll()) != null)
+			lst.add(task);
+		return lst;
+	}
+}
@@ -0,0 +1,240 @@
+package mysh.crawler2;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * per-host politeness, shared by all url classifiers of a crawler.
+ * <p>
+ * a host is accessed by at most <code>maxConcurrency</code> tasks at the same time, and two accesses
+ * start at least <code>delay</code> apart. tasks of a busy host are parked here instead of occupying
+ * classifier threads, and handed back (holding the host slot) when the host is ready again,
+ * so slow hosts don't block fast ones. at most <code>maxParkedPerHost</code> tasks are parked for a host,
+ * the rest should be left where they come from. idle hosts are evicted from time to time.
+ *
+ * @since 2026-10-18
+ */
+@ThreadSafe
+final class HostScheduler<T> {
+	/**
+	 * idle hosts are evicted every this many acquirings, power of two.
+	 */
+	private static final int EVICT_INTERVAL = 1024;
+
+	private final int maxConcurrency;
+	private final int maxParkedPerHost;
+	private final long delayNanos;
+	private final ScheduledExecutorService scheduler;
+	private final Consumer<T> onReady;
+	private final Map<String, Host> hosts = new ConcurrentHashMap<>();
+	private final AtomicInteger parkedCount = new AtomicInteger();
+	private final AtomicInteger acquirings = new AtomicInteger();
+
+	/**
+	 * @param maxParkedPerHost max tasks parked for one host, see {@link Acquire#FULL}.
+	 * @param scheduler        wakes hosts when their delay elapses.
+	 * @param onReady          receives parked tasks when their hosts get ready. the task holds a host slot,
+	 *                         which should be {@link #release released} after access.
+	 */
+	HostScheduler(int maxConcurrency, long delayMillis, int maxParkedPerHost,
+	              ScheduledExecutorService scheduler, Consumer<T> onReady) {
+		this.maxConcurrency = Math.max(1, maxConcurrency);
+		this.maxParkedPerHost = Math.max(1, maxParkedPerHost);
+		this.delayNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, delayMillis));
+		this.scheduler = scheduler;
+		this.onReady = onReady;
+	}
+
+	private final class Host {
+		@GuardedBy("this")
+		final ArrayDeque<T> parked = new ArrayDeque<>();
+		@GuardedBy("this")
+		int active;
+		/**
+		 * earliest start time of next access, in {@link System#nanoTime()}
+		 */
+		@GuardedBy("this")
+		long nextAccess = System.nanoTime();
+		@GuardedBy("this")
+		boolean wakeScheduled;
+		/**
+		 * removed from {@link #hosts}, a new one should be used.
+		 */
+		@GuardedBy("this")
+		boolean evicted;
+	}
+
+	enum Acquire {
+		/**
+		 * the host slot is taken.
+		 */
+		TAKEN,
+		/**
+		 * the task is parked and will be handed to onReady later.
+		 */
+		PARKED,
+		/**
+		 * the host has too many parked tasks, the task is neither taken nor parked.
+		 */
+		FULL
+	}
+
+	/**
+	 * take a slot of the host, or park the task until the host is ready.
+	 */
+	Acquire acquireOrPark(String host, T task) {
+		if ((acquirings.incrementAndGet() & (EVICT_INTERVAL - 1)) == 0)
+			evictIdle();
+		while (true) {
+			Host h = hosts.computeIfAbsent(host, k -> new Host());
+			synchronized (h) {
+				if (h.evicted)
+					continue;
+				// parked tasks go first
+				if (h.parked.isEmpty() && tryTake(h))
+					return Acquire.TAKEN;
+				if (h.parked.size() >= maxParkedPerHost)
+					return Acquire.FULL;
+				h.parked.add(task);
+				parkedCount.incrementAndGet();
+				scheduleWake(h);
+				return Acquire.PARKED;
+			}
+		}
+	}
+
+	/**
+	 * remove hosts without active or parked tasks whose delay has elapsed,
+	 * so crawling many hosts doesn't keep all of them.
+	 */
+	private void evictIdle() {
+		long now = System.nanoTime();
+		hosts.forEach((host, h) -> {
+			synchronized (h) {
+				if (!h.evicted && h.active == 0 && h.parked.isEmpty() && now - h.nextAccess >= 0
+						&& hosts.remove(host, h))
+					h.evicted = true;
+			}
+		});
+	}
+
+	int hostCount() {
+		return hosts.size();
+	}
+
+	/**
+	 * release a host slot taken by {@link #acquireOrPark} or handed to onReady.
+	 */
+	void release(String host) {
+		Host h = hosts.get(host);
+		if (h == null)
+			return;
+		List<T> ready;
+		synchronized (h) {
+			h.active--;
+			ready = pollReady(h);
+		}
+		ready.forEach(onReady);
+	}
+
+	int parkedCount() {
+		return parkedCount.get();
+	}
+
+	/**
+	 * take all parked tasks out.
+	 */
+	List<T> drain() {
+		List<T> tasks = new ArrayList<>();
+		for (Host h : hosts.values()) {
+			synchronized (h) {
+				parkedCount.addAndGet(-h.parked.size());
+				tasks.addAll(h.parked);
+				h.parked.clear();
+			}
+		}
+		return tasks;
+	}
+
+	@GuardedBy("h")
+	private boolean tryTake(Host h) {
+		long now = System.nanoTime();
+		if (h.active < maxConcurrency && now - h.nextAccess >= 0) {
+			h.active++;
+			h.nextAccess = now + delayNanos;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * take parked tasks which can access host now, and schedule a wake for the rest.
+	 */
+	@GuardedBy("h")
+	private List<T> pollReady(Host h) {
+		List<T> ready = new ArrayList<>(1);
+		while (!h.parked.isEmpty() && tryTake(h)) {
+			ready.add(h.parked.poll());
+			parkedCount.decrementAndGet();
+		}
+		scheduleWake(h);
+		return ready;
+	}
+
+	/**
+	 * wake the host when its delay elapses, if it has parked tasks and free slots.
+	 * busy host will be checked again on {@link #release}.
+	 */
+	@GuardedBy("h")
+	private void scheduleWake(Host h) {
+		if (h.wakeScheduled || h.parked.isEmpty() || h.active >= maxConcurrency)
+			return;
+		try {
+			scheduler.schedule(() -> {
+				List<T> ready;
+				synchronized (h) {
+					h.wakeScheduled = false;
+					ready = pollReady(h);
+				}
+				ready.forEach(onReady);
+			}, Math.max(0, h.nextAccess - System.nanoTime()), TimeUnit.NANOSECONDS);
+			h.wakeScheduled = true;
+		} catch (RejectedExecutionException e) {
+			// crawler stopping, parked tasks will be drained
+		}
+	}
+
+	/**
+	 * host of the url, which is normalized by {@link UrlCtxHolder}.
+	 */
+	static String hostOf(String url) {
+		int start = url.indexOf("://");
+		start = start < 0 ? 0 : start + 3;
+		int end = start;
+		while (end < url.length()) {
+			char c = url.charAt(end);
+			if (c == '/' || c == '?' || c == '#')
+				break;
+			end++;
+		}
+		String authority = url.substring(start, end);
+		int at = authority.lastIndexOf('@');
+		if (at >= 0)
+			authority = authority.substring(at + 1);
+		int colon = authority.lastIndexOf(':');
+		if (colon >= 0 && authority.indexOf(']') < colon)
+			authority = authority.substring(0, colon);
+		return authority.toLowerCase(Locale.ROOT);
+	}
+}
@@ -0,0 +1,147 @@
+package mysh.crawler2;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * lock-free latency histogram in micro-seconds, with HDR-style log-linear buckets:
+ * values below 64 are exact, larger ones are split into 32 sub-buckets per power of two,
+ * so a recorded value is off by no more than 1/32 (~3%). values above ~19 hours are clamped.
+ * <p>
+ * recording is a few atomic adds without allocation, a snapshot may be slightly inconsistent
+ * with concurrent recordings, which is fine for metrics.
+ *
+ * @since 2026-10-18
+ */
+@ThreadSafe
+public final class LatencyHistogram {
+	private static final int SUB_BITS = 5;
+	private static final int SUB_COUNT = 1 << SUB_BITS;
+	private static final long MAX_VALUE = (1L << 36) - 1;
+	private static final int BUCKETS = index(MAX_VALUE) + 1;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder sum = new LongAdder();
+	private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+	private final AtomicLong max = new AtomicLong();
+
+	static int index(long v) {
+		int shift = Math.max(0, 63 - Long.numberOfLeadingZeros(v) - SUB_BITS);
+		return (shift << SUB_BITS) + (int) (v >>> shift);
+	}
+
+	/**
+	 * highest value of the bucket.
+	 */
+	static long highestOf(int index) {
+		if (index < SUB_COUNT << 1)
+			return index;
+		int shift = (index >>> SUB_BITS) - 1;
+		long sub = index - ((long) shift << SUB_BITS);
+		return ((sub + 1) << shift) - 1;
+	}
+
+	/**
+	 * record a latency in nano-seconds.
+	 */
+	public void recordNanos(long nanos) {
+		recordMicros(TimeUnit.NANOSECONDS.toMicros(nanos));
+	}
+
+	public void recordMicros(long micros) {
+		long v = Math.min(MAX_VALUE, Math.max(0, micros));
+		counts.incrementAndGet(index(v));
+		count.increment();
+		sum.add(v);
+		long m;
+		while (v < (m = min.get()) && !min.compareAndSet(m, v)) ;
+		while (v > (m = max.get()) && !max.compareAndSet(m, v)) ;
+	}
+
+	public Snapshot snapshot() {
+		long[] c = new long[BUCKETS];
+		long total = 0;
+		for (int i = 0; i < BUCKETS; i++)
+			total += c[i] = counts.get(i);
+		return new Snapshot(c, total, sum.sum(), total == 0 ? 0 : min.get(), max.get());
+	}
+
+	/**
+	 * immutable histogram data, values are in micro-seconds.
+	 */
+	public static final class Snapshot {
+		private final long[] counts;
+		private final long count;
+		private final long sum;
+		private final long min;
+		private final long max;
+
+		private Snapshot(long[] counts, long count, long sum, long min, long max) {
+			this.counts = counts;
+			this.count = count;
+			this.sum = sum;
+			this.min = min;
+			this.max = max;
+		}
+
+		public long getCount() {
+			return count;
+		}
+
+		public long getMinMicros() {
+			return min;
+		}
+
+		public long getMaxMicros() {
+			return max;
+		}
+
+		public double getMeanMicros() {
+			return count == 0 ? 0 : (double) sum / count;
+		}
+
+		/**
+		 * @param percentile 0~100
+		 * @return the value which the given percentage of recorded values are not greater than,
+		 * or 0 if nothing recorded.
+		 */
+		public long percentileMicros(double percentile) {
+			if (count == 0)
+				return 0;
+			long rank = Math.max(1, (long) Math.ceil(count * Math.min(100, Math.max(0, percentile)) / 100));
+			long acc = 0;
+			for (int i = 0; i < counts.length; i++) {
+				acc += counts[i];
+				if (acc >= rank)
+					return Math.min(max, Math.max(min, highestOf(i)));
+			}
+			return max;
+		}
+
+		public long getP50Micros() {
+			return percentileMicros(50);
+		}
+
+		public long getP90Micros() {
+			return percentileMicros(90);
+		}
+
+		public long getP99Micros() {
+			return percentileMicros(99);
+		}
+
+		public long getP999Micros() {
+			return percentileMicros(99.9);
+		}
+
+		@Override
+		public String toString() {
+			return "{count=" + count + ", mean=" + (long) getMeanMicros() + "us, p50=" + getP50Micros()
+					+ "us, p99=" + getP99Micros() + "us, max=" + max + "us}";
+		}
+	}
+}
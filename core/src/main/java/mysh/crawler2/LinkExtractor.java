@@ -0,0 +1,307 @@
+package mysh.crawler2;
+
+import mysh.net.httpclient.HttpClientAssist;
+
+import javax.annotation.Nullable;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * single-pass link extractor working on page bytes, no page string is created.
+ * <p>
+ * it finds <code>http(s):xxx</code> urls and quoted <code>href/src</code> values, just like the regex
+ * <code>[Hh][Tt][Tt][Pp][Ss]?:[^"'&lt;&gt;\s#]+</code> and
+ * <code>(href|src)\s*=\s*["']([^"'#]*)</code> (case-insensitive) do,
+ * then resolves relative links against current url, decodes html entities and url escapes.
+ * <p>
+ * ascii-compatible charsets (utf-8, gbk, iso-8859-x, ...) are scanned directly,
+ * trail bytes of double-byte charsets like gbk are skipped. others are converted to utf-8 first.
+ *
+ * @since 2026-10-18
+ */
+public final class LinkExtractor {
+	private static final byte[] PROBE = "hrefsrcHTTPS:=\"'<>#/ \t\r\n".getBytes(StandardCharsets.US_ASCII);
+	private static final Map<Charset, Boolean> asciiCompatible = new ConcurrentHashMap<>();
+
+	private final Charset enc;
+	private final String protocolPrefix;
+	/**
+	 * current url without query and fragment, ends with '/'
+	 */
+	private final String root;
+
+	/**
+	 * @param currentUrl url of the page, relative links are resolved against it.
+	 * @param enc        page encoding.
+	 */
+	public LinkExtractor(String currentUrl, Charset enc) {
+		this.enc = enc;
+		int colon = currentUrl.indexOf(':');
+		this.protocolPrefix = colon > 0 ? currentUrl.substring(0, colon + 1) : "http:";
+
+		String currentRoot = currentUrl;
+		int sepIndex;
+		if ((sepIndex = currentRoot.lastIndexOf('?')) != -1) {
+			currentRoot = currentRoot.substring(0, sepIndex);
+		}
+		if ((sepIndex = currentRoot.lastIndexOf('#')) != -1) {
+			currentRoot = currentRoot.substring(0, sepIndex);
+		}
+		this.root = currentRoot.substring(0, currentRoot.lastIndexOf('/') + 1);
+	}
+
+	/**
+	 * extract links in the page. links may repeat.
+	 */
+	public void extract(byte[] page, Consumer<String> out) {
+		byte[] b = page;
+		Charset cs = enc;
+		if (!isAsciiCompatible(cs)) {
+			b = new String(page, cs).getBytes(StandardCharsets.UTF_8);
+			cs = StandardCharsets.UTF_8;
+		}
+		boolean skipTrail = cs != StandardCharsets.UTF_8 && cs.newEncoder().maxBytesPerChar() > 1;
+
+		int n = b.length;
+		// end of last match, matches of the same kind don't overlap
+		int httpEnd = 0, attrEnd = 0;
+		for (int i = 0; i < n; i++) {
+			int c = b[i];
+			if (c < 0) {
+				if (skipTrail)
+					i++;
+				continue;
+			}
+
+			c |= 0x20;
+			if (c == 'h') {
+				if (i >= httpEnd) {
+					int end = matchHttp(b, i);
+					if (end > 0) {
+						httpEnd = end;
+						String url = finish(new String(b, i, end - i, cs));
+						if (url != null)
+							out.accept(url);
+					}
+				}
+				if (i >= attrEnd && matchIgnoreCase(b, i + 1, "ref"))
+					attrEnd = matchAttrValue(b, i + 4, cs, attrEnd, out);
+			} else if (c == 's' && i >= attrEnd && matchIgnoreCase(b, i + 1, "rc")) {
+				attrEnd = matchAttrValue(b, i + 3, cs, attrEnd, out);
+			}
+		}
+	}
+
+	/**
+	 * @return end of the http url starts from i, or -1 if not matched.
+	 */
+	private static int matchHttp(byte[] b, int i) {
+		if (!matchIgnoreCase(b, i + 1, "ttp"))
+			return -1;
+		int j = i + 4;
+		if (j < b.length && (b[j] | 0x20) == 's')
+			j++;
+		if (j >= b.length || b[j] != ':')
+			return -1;
+		int start = ++j;
+		while (j < b.length && !isHttpEnd(b[j]))
+			j++;
+		return j > start ? j : -1;
+	}
+
+	private static boolean isHttpEnd(byte c) {
+		return c == '"' || c == '\'' || c == '<' || c == '>' || c == '#' || isSpace(c);
+	}
+
+	/**
+	 * match <code>\s*=\s*["']([^"'#]*)</code> from i.
+	 *
+	 * @return end of the match, or lastEnd if not matched.
+	 */
+	private int matchAttrValue(byte[] b, int i, Charset cs, int lastEnd, Consumer<String> out) {
+		int n = b.length;
+		while (i < n && isSpace(b[i]))
+			i++;
+		if (i >= n || b[i] != '=')
+			return lastEnd;
+		i++;
+		while (i < n && isSpace(b[i]))
+			i++;
+		if (i >= n || (b[i] != '"' && b[i] != '\''))
+			return lastEnd;
+		int start = ++i;
+		while (i < n && b[i] != '"' && b[i] != '\'' && b[i] != '#')
+			i++;
+		if (i > start) {
+			String url = resolve(new String(b, start, i - start, cs));
+			if (url != null)
+				out.accept(url);
+		}
+		return i;
+	}
+
+	private static boolean isSpace(byte c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f' || c == 0x0B;
+	}
+
+	/**
+	 * @param lower lower case ascii letters
+	 */
+	private static boolean matchIgnoreCase(byte[] b, int i, String lower) {
+		if (i + lower.length() > b.length)
+			return false;
+		for (int k = 0; k < lower.length(); k++) {
+			if ((b[i + k] | 0x20) != lower.charAt(k))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * resolve a link value (href, src or user defined) against current url.
+	 *
+	 * @return <code>null</code> if the value is not a link, e.g. <code>mailto:xx</code>
+	 */
+	@Nullable
+	public String resolve(@Nullable String value) {
+		String tUrl;
+		if (value == null || value.length() == 0 || value.startsWith("#")
+				|| value.startsWith("mailto:") || value.startsWith("javascript:")) {
+			return null;
+		} else if (value.startsWith("http:") || value.startsWith("https:")) {
+			tUrl = value;
+		} else if (value.startsWith("//")) {
+			tUrl = protocolPrefix + value;
+		} else if (value.startsWith("/")) {
+			int hostEnd = root.indexOf('/', 9);
+			tUrl = (hostEnd < 0 ? root : root.substring(0, hostEnd)) + value;
+		} else {
+			tUrl = root + value;
+		}
+		return finish(tUrl);
+	}
+
+	@Nullable
+	private String finish(String url) {
+		url = HttpClientAssist.getShortURL(url);
+		if (url.length() == 0)
+			return null;
+		return urlDecode(decodeEntities(url), enc);
+	}
+
+	/**
+	 * decode html entities which may appear in links:
+	 * <code>&amp;amp; &amp;lt; &amp;gt; &amp;quot; &amp;apos; &amp;#nn; &amp;#xhh;</code>
+	 */
+	static String decodeEntities(String s) {
+		int amp = s.indexOf('&');
+		if (amp < 0)
+			return s;
+
+		StringBuilder sb = new StringBuilder(s.length());
+		sb.append(s, 0, amp);
+		int i = amp;
+		while (i < s.length()) {
+			char c = s.charAt(i);
+			int semi;
+			if (c != '&' || (semi = s.indexOf(';', i + 2)) < 0 || semi - i > 10) {
+				sb.append(c);
+				i++;
+				continue;
+			}
+
+			String name = s.substring(i + 1, semi);
+			int cp = -1;
+			switch (name) {
+				case "amp":
+					cp = '&';
+					break;
+				case "lt":
+					cp = '<';
+					break;
+				case "gt":
+					cp = '>';
+					break;
+				case "quot":
+					cp = '"';
+					break;
+				case "apos":
+					cp = '\'';
+					break;
+				default:
+					if (name.startsWith("#")) {
+						try {
+							cp = name.length() > 1 && (name.charAt(1) | 0x20) == 'x' ?
+									Integer.parseInt(name.substring(2), 16) : Integer.parseInt(name.substring(1));
+						} catch (NumberFormatException e) {
+							cp = -1;
+						}
+						if (!Character.isValidCodePoint(cp))
+							cp = -1;
+					}
+			}
+			if (cp < 0) {
+				sb.append(c);
+				i++;
+			} else {
+				sb.appendCodePoint(cp);
+				i = semi + 1;
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * same as {@link java.net.URLDecoder#decode(String, String)}, but malformed escapes are kept as they are.
+	 */
+	static String urlDecode(String s, Charset enc) {
+		int i = 0, n = s.length();
+		while (i < n && s.charAt(i) != '%' && s.charAt(i) != '+')
+			i++;
+		if (i == n)
+			return s;
+
+		StringBuilder sb = new StringBuilder(n);
+		sb.append(s, 0, i);
+		byte[] bytes = null;
+		while (i < n) {
+			char c = s.charAt(i);
+			if (c == '+') {
+				sb.append(' ');
+				i++;
+			} else if (c == '%' && isEscape(s, i)) {
+				if (bytes == null)
+					bytes = new byte[(n - i) / 3];
+				int len = 0;
+				while (i < n && s.charAt(i) == '%' && isEscape(s, i)) {
+					bytes[len++] = (byte) Integer.parseInt(s.substring(i + 1, i + 3), 16);
+					i += 3;
+				}
+				sb.append(new String(bytes, 0, len, enc));
+			} else {
+				sb.append(c);
+				i++;
+			}
+		}
+		return sb.toString();
+	}
+
+	private static boolean isEscape(String s, int i) {
+		return i + 2 < s.length() && Character.digit(s.charAt(i + 1), 16) >= 0 && Character.digit(s.charAt(i + 2), 16) >= 0;
+	}
+
+	private static boolean isAsciiCompatible(Charset cs) {
+		return asciiCompatible.computeIfAbsent(cs, c -> {
+			try {
+				return Arrays.equals(PROBE, new String(PROBE, StandardCharsets.US_ASCII).getBytes(c));
+			} catch (UnsupportedOperationException e) {
+				// decode only charset
+				return false;
+			}
+		});
+	}
+}
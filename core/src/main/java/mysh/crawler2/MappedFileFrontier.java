@@ -0,0 +1,337 @@
+package mysh.crawler2;
+
+import mysh.util.Encodings;
+import mysh.util.FilesUtil;
+import mysh.util.Serializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.PriorityQueue;
+
+/**
+ * frontier keeps a small hot window on heap, and spills the rest to sorted segment files,
+ * which are read back through memory-mapped windows.
+ * <p>
+ * every segment is a sorted run, so the frontier head is always the smaller one of
+ * hot window head and segment heads, which keeps the {@link UrlContext#compareTo} order.
+ * segments are merged in tiers: spilled segments are tier 0, and every {@link #MERGE_FAN_IN} segments
+ * of a tier are merged into one segment of the next tier, so segments merged together are similarly sized,
+ * a merge reads a bounded number of segments, and a task is rewritten only once per tier.
+ *
+ * @since 2026-10-18
+ */
+@ThreadSafe
+public class MappedFileFrontier<CTX extends UrlContext> implements Frontier<CTX> {
+	private static final Logger log = LoggerFactory.getLogger(MappedFileFrontier.class);
+	private static final Serializer SERIALIZER = Serializer.BUILD_IN;
+
+	/**
+	 * mapped window size of segment reading.
+	 */
+	private static final int MAP_WINDOW = 8 << 20;
+	/**
+	 * segments of a tier are merged into one segment of the next tier when there are this many of them.
+	 */
+	private static final int MERGE_FAN_IN = 8;
+
+	/**
+	 * @param dir           where segment files are written into. every frontier uses its own sub dir.
+	 * @param hotWindowSize max tasks kept on heap of every frontier.
+	 */
+	public static Frontier.Factory factory(File dir, int hotWindowSize) {
+		Objects.requireNonNull(dir, "frontier dir can't be null");
+		return new Frontier.Factory() {
+			@Override
+			public <CTX extends UrlContext> Frontier<CTX> create(String classifierName, Comparator<UrlCtxHolder<CTX>> order) {
+				return new MappedFileFrontier<>(dir, classifierName, order, hotWindowSize);
+			}
+		};
+	}
+
+	private final File dir;
+	private final Comparator<UrlCtxHolder<CTX>> order;
+	private final int hotWindowSize;
+	private final PriorityQueue<UrlCtxHolder<CTX>> hot;
+	private final PriorityQueue<Segment> segments;
+	private int size;
+	private int segmentSeq;
+	private boolean closed;
+
+	public MappedFileFrontier(File dir, String name, Comparator<UrlCtxHolder<CTX>> order, int hotWindowSize) {
+		this.order = Objects.requireNonNull(order, "order can't be null");
+		this.hotWindowSize = Math.max(2, hotWindowSize);
+		this.hot = new PriorityQueue<>(order);
+		this.segments = new PriorityQueue<>((a, b) -> order.compare(a.head, b.head));
+
+		this.dir = new File(dir, FilesUtil.escapeFileName(name, "_") + "-" + System.currentTimeMillis());
+		if (!this.dir.exists() && !this.dir.mkdirs())
+			throw new RuntimeException("create frontier dir fail: " + this.dir);
+	}
+
+	@Override
+	public synchronized void add(UrlCtxHolder<CTX> task) {
+		if (closed)
+			throw new IllegalStateException("frontier closed: " + dir);
+
+		hot.add(task);
+		size++;
+		if (hot.size() > hotWindowSize) {
+			try {
+				spill();
+			} catch (IOException e) {
+				throw new RuntimeException("spill frontier fail: " + dir, e);
+			}
+		}
+	}
+
+	@Override
+	public synchronized UrlCtxHolder<CTX> poll() {
+		UrlCtxHolder<CTX> task;
+		Segment seg = segments.peek();
+		if (seg != null && (hot.isEmpty() || order.compare(seg.head, hot.peek()) < 0)) {
+			segments.poll();
+			task = seg.head;
+			try {
+				if (seg.next())
+					segments.add(seg);
+				else
+					seg.delete();
+			} catch (IOException e) {
+				throw new RuntimeException("read frontier segment fail: " + seg.file, e);
+			}
+		} else
+			task = hot.poll();
+
+		if (task != null)
+			size--;
+		return task;
+	}
+
+	@Override
+	public synchronized int size() {
+		return size;
+	}
+
+	@Override
+	public synchronized List<UrlCtxHolder<CTX>> drain() {
+		List<UrlCtxHolder<CTX>> lst = new ArrayList<>(size);
+		UrlCtxHolder<CTX> task;
+		while ((task = poll()) != null)
+			lst.add(task);
+		return lst;
+	}
+
+	@Override
+	public synchronized void close() {
+		if (closed)
+			return;
+		closed = true;
+		hot.clear();
+		for (Segment seg : segments)
+			seg.delete();
+		segments.clear();
+		size = 0;
+		if (!dir.delete())
+			log.warn("delete-frontier-dir-fail: {}", dir);
+	}
+
+	/**
+	 * keep the first half of hot window on heap, write the rest to a new segment.
+	 */
+	private void spill() throws IOException {
+		int keep = hotWindowSize / 2;
+		List<UrlCtxHolder<CTX>> kept = new ArrayList<>(keep);
+		while (kept.size() < keep)
+			kept.add(hot.poll());
+
+		File file = new File(dir, (segmentSeq++) + ".seg");
+		int count = 0;
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16))) {
+			UrlCtxHolder<CTX> task;
+			while ((task = hot.poll()) != null) {
+				writeTask(out, task);
+				count++;
+			}
+		}
+		hot.addAll(kept);
+
+		Segment seg = new Segment(file, count, 0);
+		if (seg.next())
+			segments.add(seg);
+		mergeTiers();
+		log.debug("frontier-spilled, dir={}, count={}, segments={}", dir, count, segments.size());
+	}
+
+	/**
+	 * merge segments of the tiers which are full, from the lowest tier.
+	 */
+	private void mergeTiers() throws IOException {
+		for (int tier = 0; ; tier++) {
+			List<Segment> runs = new ArrayList<>(MERGE_FAN_IN);
+			boolean higher = false;
+			for (Segment seg : segments) {
+				if (seg.tier == tier)
+					runs.add(seg);
+				else if (seg.tier > tier)
+					higher = true;
+			}
+			if (runs.size() >= MERGE_FAN_IN) {
+				segments.removeAll(runs);
+				mergeSegments(runs, tier + 1);
+			} else if (!higher)
+				return;
+		}
+	}
+
+	/**
+	 * k-way merge the segments into one sorted segment of the tier.
+	 */
+	private void mergeSegments(List<Segment> runs, int tier) throws IOException {
+		PriorityQueue<Segment> heads = new PriorityQueue<>(runs.size(), segments.comparator());
+		heads.addAll(runs);
+		File file = new File(dir, (segmentSeq++) + ".seg");
+		int count = 0;
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16))) {
+			Segment seg;
+			while ((seg = heads.poll()) != null) {
+				writeTask(out, seg.head);
+				count++;
+				if (seg.next())
+					heads.add(seg);
+				else
+					seg.delete();
+			}
+		}
+
+		Segment merged = new Segment(file, count, tier);
+		if (merged.next())
+			segments.add(merged);
+		log.debug("frontier-segments-merged, dir={}, tier={}, runs={}, count={}", dir, tier, runs.size(), count);
+	}
+
+	/**
+	 * record: [len][urlLen][url][ctxLen][ctx], ctxLen is -1 if ctx is null.
+	 */
+	private static void writeTask(DataOutputStream out, UrlCtxHolder<?> task) throws IOException {
+		byte[] url = task.url.getBytes(Encodings.UTF_8);
+		byte[] ctx = task.ctx == null ? null : SERIALIZER.serialize(task.ctx);
+		out.writeInt(8 + url.length + (ctx == null ? 0 : ctx.length));
+		out.writeInt(url.length);
+		out.write(url);
+		if (ctx == null)
+			out.writeInt(-1);
+		else {
+			out.writeInt(ctx.length);
+			out.write(ctx);
+		}
+	}
+
+	/**
+	 * sorted run on disk, read through a mapped window.
+	 */
+	private final class Segment {
+		final File file;
+		final RandomAccessFile raf;
+		final FileChannel ch;
+		final long length;
+		/**
+		 * merge tier, 0 for spilled segments.
+		 */
+		final int tier;
+		int remaining;
+		long pos;
+		long windowStart;
+		MappedByteBuffer window;
+		UrlCtxHolder<CTX> head;
+
+		Segment(File file, int count, int tier) throws IOException {
+			this.file = file;
+			this.tier = tier;
+			this.raf = new RandomAccessFile(file, "r");
+			this.ch = raf.getChannel();
+			this.length = ch.size();
+			this.remaining = count;
+		}
+
+		/**
+		 * read next task to head.
+		 *
+		 * @return <code>false</code> if segment is exhausted
+		 */
+		@SuppressWarnings("unchecked")
+		boolean next() throws IOException {
+			if (remaining == 0) {
+				head = null;
+				return false;
+			}
+
+			int len = readInt(pos);
+			long p = pos + 4;
+			int urlLen = readInt(p);
+			p += 4;
+			String url = new String(readBytes(p, urlLen), Encodings.UTF_8);
+			p += urlLen;
+			int ctxLen = readInt(p);
+			p += 4;
+			CTX ctx = ctxLen < 0 ? null : SERIALIZER.deserialize(readBytes(p, ctxLen));
+
+			head = UrlCtxHolder.restore(url, ctx);
+			pos += 4 + len;
+			remaining--;
+			return true;
+		}
+
+		private int readInt(long at) throws IOException {
+			mapWindow(at, 4);
+			return window.getInt((int) (at - windowStart));
+		}
+
+		private byte[] readBytes(long at, int len) throws IOException {
+			mapWindow(at, len);
+			byte[] buf = new byte[len];
+			ByteBuffer src = window.duplicate();
+			src.position((int) (at - windowStart));
+			src.get(buf);
+			return buf;
+		}
+
+		/**
+		 * make sure [at, at+len) is within mapped window.
+		 */
+		private void mapWindow(long at, int len) throws IOException {
+			if (window != null && at >= windowStart && at + len <= windowStart + window.capacity())
+				return;
+			FilesUtil.unmap(window);
+			window = null;
+			windowStart = at;
+			window = ch.map(FileChannel.MapMode.READ_ONLY, at, Math.min(length - at, Math.max(MAP_WINDOW, len)));
+		}
+
+		void delete() {
+			// mapped window holds the file until unmapped
+			FilesUtil.unmap(window);
+			window = null;
+			try {
+				raf.close();
+			} catch (IOException e) {
+				log.warn("close-frontier-segment-fail: {}", file, e);
+			}
+			if (!file.delete())
+				file.deleteOnExit();
+		}
+	}
+}
@@ -0,0 +1,305 @@
+package mysh.crawler2;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import mysh.net.httpclient.HttpClientAssist;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * seed of a crawler node in a distributed crawl, where urls are partitioned across nodes by host hash.
+ * <p>
+ * each node runs a local {@link Crawler} with this seed over its own partition.
+ * distilled urls of other partitions are forwarded to their nodes in batches by {@link Forwarder},
+ * and urls received from other nodes are passed to {@link #receive}.
+ * dedupe state of the wrapped seed ({@link CrawlerSeed#accept}) only sees urls of its own partition,
+ * and all urls of a host are crawled by one node, so per-host politeness holds.
+ * <p>
+ * a node can't tell the crawl is over by itself, so the crawler won't stop automatically.
+ * the crawl is over when all nodes are idle ({@link #isIdle()}) and
+ * the total of {@link #getForwarded()} equals the total of {@link #getReceived()},
+ * checking twice without changes to be sure.
+ *
+ * @since 2026-10-18
+ */
+@ThreadSafe
+public class PartitionedSeed<CTX extends UrlContext> implements CrawlerSeed<CTX> {
+	private static final long serialVersionUID = 5106457837920543013L;
+	private static final Logger log = LoggerFactory.getLogger(PartitionedSeed.class);
+	private static final HashFunction HOST_HASH = Hashing.farmHashFingerprint64();
+
+	/**
+	 * transport of forwarded urls, which passes the batch to {@link #receive} of the target node.
+	 */
+	public interface Forwarder<CTX extends UrlContext> {
+		/**
+		 * @throws Exception the batch will be forwarded again later.
+		 */
+		void forward(int partition, List<UrlCtxHolder<CTX>> batch) throws Exception;
+	}
+
+	private final CrawlerSeed<CTX> seed;
+	private final int partition;
+	private final int partitions;
+	private final transient Forwarder<CTX> forwarder;
+	private final int batchSize;
+	private final long flushIntervalMillis;
+
+	private transient Queue<UrlCtxHolder<CTX>>[] outbox;
+	private transient AtomicInteger[] outboxSizes;
+	private transient ScheduledExecutorService flusher;
+	private transient volatile Crawler<CTX> crawler;
+	/**
+	 * urls received before the crawler started, crawled as seeds.
+	 */
+	@GuardedBy("inbox")
+	private transient List<UrlCtxHolder<CTX>> inbox;
+	@GuardedBy("inbox")
+	private transient boolean started;
+	/**
+	 * urls polled from outbox, but not forwarded yet.
+	 */
+	private transient AtomicInteger inFlight;
+	private transient AtomicLong forwarded;
+	private transient AtomicLong received;
+
+	/**
+	 * @param seed                seed of the crawl, the same on all nodes.
+	 * @param partition           partition of this node, 0 ~ partitions-1.
+	 * @param partitions          node count.
+	 * @param batchSize           max urls forwarded in one batch.
+	 * @param flushIntervalMillis max delay of a forwarded url.
+	 */
+	public PartitionedSeed(CrawlerSeed<CTX> seed, int partition, int partitions, Forwarder<CTX> forwarder,
+	                       int batchSize, long flushIntervalMillis) {
+		if (partitions < 1 || partition < 0 || partition >= partitions)
+			throw new IllegalArgumentException("illegal partition " + partition + "/" + partitions);
+		this.seed = Objects.requireNonNull(seed, "seed can't be null");
+		this.partition = partition;
+		this.partitions = partitions;
+		this.forwarder = Objects.requireNonNull(forwarder, "forwarder can't be null");
+		this.batchSize = Math.max(1, batchSize);
+		this.flushIntervalMillis = Math.max(1, flushIntervalMillis);
+	}
+
+	/**
+	 * partition of the url by its host.
+	 */
+	public static int partitionOf(String url, int partitions) {
+		String host = HostScheduler.hostOf(url);
+		return Math.floorMod(HOST_HASH.hashString(host, StandardCharsets.UTF_8).asInt(), partitions);
+	}
+
+	public boolean isOwn(String url) {
+		return partitionOf(url, partitions) == partition;
+	}
+
+	/**
+	 * bind the crawler running this seed. should be invoked before the crawler starting.
+	 */
+	public void attach(Crawler<CTX> crawler) {
+		this.crawler = Objects.requireNonNull(crawler, "crawler can't be null");
+	}
+
+	@Override
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public void init() throws Exception {
+		outbox = new Queue[partitions];
+		outboxSizes = new AtomicInteger[partitions];
+		for (int i = 0; i < partitions; i++) {
+			outbox[i] = new ConcurrentLinkedQueue<>();
+			outboxSizes[i] = new AtomicInteger();
+		}
+		inbox = new ArrayList<>();
+		inFlight = new AtomicInteger();
+		forwarded = new AtomicLong();
+		received = new AtomicLong();
+		flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "PartitionedSeed-" + partition + "-flusher");
+			t.setDaemon(true);
+			return t;
+		});
+		flusher.scheduleWithFixedDelay(this::flush, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+		seed.init();
+	}
+
+	/**
+	 * seeds of own partition, and urls received before starting.
+	 */
+	@Override
+	public Stream<UrlCtxHolder<CTX>> getSeeds() {
+		List<UrlCtxHolder<CTX>> received;
+		synchronized (inbox) {
+			started = true;
+			received = new ArrayList<>(inbox);
+			inbox.clear();
+		}
+		return Stream.concat(seed.getSeeds().filter(h -> isOwn(h.url)), received.stream());
+	}
+
+	/**
+	 * urls forwarded from other nodes.
+	 */
+	public void receive(List<UrlCtxHolder<CTX>> batch) {
+		synchronized (inbox) {
+			if (!started) {
+				inbox.addAll(batch);
+				received.addAndGet(batch.size());
+				return;
+			}
+		}
+		Crawler<CTX> c = Objects.requireNonNull(crawler, "crawler not attached");
+		for (UrlCtxHolder<CTX> h : batch) {
+			if (isOwn(h.url))
+				c.submit(h.url, h.ctx);
+			else
+				log.warn("forwarded-url-not-in-partition, partition={}, url={}", partition, h.url);
+		}
+		received.addAndGet(batch.size());
+	}
+
+	@Override
+	public Stream<UrlCtxHolder<CTX>> afterDistillingUrls(
+			HttpClientAssist.UrlEntity parentUe, CTX parentCtx, Stream<String> distilledUrls) throws IOException {
+		return seed.afterDistillingUrls(parentUe, parentCtx, distilledUrls)
+		           .filter(h -> {
+			           int p = partitionOf(h.url, partitions);
+			           if (p == partition)
+				           return true;
+			           outbox[p].add(h);
+			           if (outboxSizes[p].incrementAndGet() >= batchSize)
+				           flush(p);
+			           return false;
+		           });
+	}
+
+	/**
+	 * forward all pending urls.
+	 */
+	public void flush() {
+		for (int p = 0; p < partitions; p++) {
+			if (p != partition)
+				flush(p);
+		}
+	}
+
+	private void flush(int p) {
+		List<UrlCtxHolder<CTX>> batch = new ArrayList<>();
+		UrlCtxHolder<CTX> h;
+		while ((h = outbox[p].poll()) != null) {
+			// counted in flight before leaving outbox, so the node is not idle until it's forwarded
+			inFlight.incrementAndGet();
+			outboxSizes[p].decrementAndGet();
+			batch.add(h);
+			if (batch.size() >= batchSize || outbox[p].isEmpty()) {
+				try {
+					forwarder.forward(p, batch);
+					forwarded.addAndGet(batch.size());
+				} catch (Exception e) {
+					log.error("forward-urls-fail, partition={}, urls={}", p, batch.size(), e);
+					// try again in next flushing
+					outbox[p].addAll(batch);
+					outboxSizes[p].addAndGet(batch.size());
+					return;
+				} finally {
+					inFlight.addAndGet(-batch.size());
+				}
+				batch = new ArrayList<>();
+			}
+		}
+	}
+
+	/**
+	 * whether the crawler is idle, and no url is waiting to be forwarded or being forwarded.
+	 */
+	public boolean isIdle() {
+		Crawler<CTX> c = crawler;
+		if (c == null || !c.isIdle() || inFlight.get() > 0)
+			return false;
+		for (AtomicInteger size : outboxSizes) {
+			if (size.get() > 0)
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * urls forwarded to other nodes.
+	 */
+	public long getForwarded() {
+		return forwarded.get();
+	}
+
+	/**
+	 * urls received from other nodes.
+	 */
+	public long getReceived() {
+		return received.get();
+	}
+
+	@Override
+	public void beforeAccess(UrlCtxHolder<CTX> urlCtxHolder) {
+		seed.beforeAccess(urlCtxHolder);
+	}
+
+	@Nullable
+	@Override
+	public Map<String, ?> requestHeaders(UrlCtxHolder<CTX> urlCtxHolder) {
+		return seed.requestHeaders(urlCtxHolder);
+	}
+
+	@Override
+	public boolean accept(String url, CTX ctx) {
+		return isOwn(url) && seed.accept(url, ctx);
+	}
+
+	@Override
+	public boolean onGet(HttpClientAssist.UrlEntity ue, CTX ctx) {
+		return seed.onGet(ue, ctx);
+	}
+
+	@Override
+	public void onNearDuplicate(HttpClientAssist.UrlEntity ue, CTX ctx) {
+		seed.onNearDuplicate(ue, ctx);
+	}
+
+	/**
+	 * pending urls are forwarded before the crawler stopped.
+	 */
+	@Override
+	public void onCrawlerStopped(Collection<UrlCtxHolder<CTX>> unhandledTasks) {
+		flusher.shutdown();
+		flush();
+		seed.onCrawlerStopped(unhandledTasks);
+	}
+
+	/**
+	 * see class doc.
+	 */
+	@Override
+	public boolean autoStop() {
+		return false;
+	}
+
+	@Override
+	public boolean needToDistillUrls(HttpClientAssist.UrlEntity ue, CTX ctx) {
+		return seed.needToDistillUrls(ue, ctx);
+	}
+
+	@Nullable
+	@Override
+	public Stream<String> enhancedDistillUrl(HttpClientAssist.UrlEntity ue, CTX ctx) {
+		return seed.enhancedDistillUrl(ue, ctx);
+	}
+}
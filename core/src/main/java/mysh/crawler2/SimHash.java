@@ -0,0 +1,163 @@
+package mysh.crawler2;
+
+import javax.annotation.Nullable;
+import java.nio.charset.Charset;
+
+/**
+ * 64-bit simhash of page text, similar pages have fingerprints in small hamming distance.
+ * <p>
+ * features are words of the visible text (tags, scripts and styles are skipped),
+ * latin words/numbers are lower-cased, and CJK text is split into character bigrams.
+ *
+ * @since 2026-10-18
+ */
+public final class SimHash {
+	private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001B3L;
+
+	private SimHash() {
+	}
+
+	/**
+	 * fingerprint of a page.
+	 *
+	 * @param minFeatures min features needed, pages with too little text are not comparable.
+	 * @return fingerprint, or <code>null</code> if there're less than minFeatures.
+	 */
+	@Nullable
+	public static Long ofPage(byte[] page, Charset enc, int minFeatures) {
+		return ofText(new String(page, enc), true, minFeatures);
+	}
+
+	/**
+	 * @param html whether to skip html tags, scripts and styles.
+	 * @return fingerprint, or <code>null</code> if there're less than minFeatures.
+	 */
+	@Nullable
+	public static Long ofText(CharSequence text, boolean html, int minFeatures) {
+		int[] v = new int[64];
+		int features = 0;
+		int n = text.length();
+		long word = FNV_OFFSET;
+		int wordLen = 0;
+		char lastCjk = 0;
+		for (int i = 0; i < n; i++) {
+			char c = text.charAt(i);
+			if (html && c == '<') {
+				i = skipTag(text, i);
+				c = ' ';
+			}
+
+			if (c < 128 ? isAsciiWordChar(c) : Character.isLetterOrDigit(c) && !isCjk(c)) {
+				word = (word ^ Character.toLowerCase(c)) * FNV_PRIME;
+				wordLen++;
+				lastCjk = 0;
+				continue;
+			}
+			if (wordLen > 0) {
+				add(v, word);
+				features++;
+				word = FNV_OFFSET;
+				wordLen = 0;
+			}
+			if (isCjk(c)) {
+				if (lastCjk != 0) {
+					add(v, ((long) lastCjk << 16 | c) * 0x9E3779B97F4A7C15L);
+					features++;
+				}
+				lastCjk = c;
+			} else
+				lastCjk = 0;
+		}
+		if (wordLen > 0) {
+			add(v, word);
+			features++;
+		}
+		if (features < minFeatures)
+			return null;
+
+		long fp = 0;
+		for (int b = 0; b < 64; b++) {
+			if (v[b] > 0)
+				fp |= 1L << b;
+		}
+		return fp;
+	}
+
+	public static int distance(long a, long b) {
+		return Long.bitCount(a ^ b);
+	}
+
+	private static void add(int[] v, long feature) {
+		long h = mix(feature);
+		for (int b = 0; b < 64; b++)
+			v[b] += (int) ((h >>> b) & 1) * 2 - 1;
+	}
+
+	/**
+	 * murmur3 finalizer, spreads feature hashes over all bits.
+	 */
+	static long mix(long h) {
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	private static boolean isAsciiWordChar(char c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9');
+	}
+
+	private static boolean isCjk(char c) {
+		return (c >= 0x4E00 && c <= 0x9FFF) || (c >= 0x3400 && c <= 0x4DBF)
+				|| (c >= 0x3040 && c <= 0x30FF) || (c >= 0xAC00 && c <= 0xD7AF);
+	}
+
+	/**
+	 * @return index of the tag end '>', or the end of script/style element.
+	 */
+	private static int skipTag(CharSequence s, int i) {
+		int n = s.length();
+		String endTag = null;
+		if (regionMatches(s, i + 1, "script"))
+			endTag = "</script";
+		else if (regionMatches(s, i + 1, "style"))
+			endTag = "</style";
+		else if (regionMatches(s, i + 1, "!--")) {
+			for (int j = i + 4; j + 2 < n; j++) {
+				if (s.charAt(j) == '-' && s.charAt(j + 1) == '-' && s.charAt(j + 2) == '>')
+					return j + 2;
+			}
+			return n;
+		}
+
+		int j = i + 1;
+		while (j < n && s.charAt(j) != '>')
+			j++;
+		if (endTag == null || j >= n)
+			return j;
+		for (; j < n; j++) {
+			if (s.charAt(j) == '<' && regionMatches(s, j, endTag)) {
+				while (j < n && s.charAt(j) != '>')
+					j++;
+				return j;
+			}
+		}
+		return n;
+	}
+
+	/**
+	 * @param lower lower case ascii
+	 */
+	private static boolean regionMatches(CharSequence s, int i, String lower) {
+		if (i + lower.length() > s.length())
+			return false;
+		for (int k = 0; k < lower.length(); k++) {
+			if (Character.toLowerCase(s.charAt(i + k)) != lower.charAt(k))
+				return false;
+		}
+		return true;
+	}
+}
@@ -0,0 +1,126 @@
+package mysh.crawler2;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.Arrays;
+
+/**
+ * banded index of simhash fingerprints, to find near-duplicates within a max hamming distance d.
+ * <p>
+ * fingerprints are split into d+1 bands, two fingerprints within distance d must have
+ * a same band (pigeonhole), so only fingerprints sharing a band value are compared.
+ * each band is a table of 2^16 buckets keyed by the band value, buckets are plain long arrays.
+ * memory is about 8*(d+1) bytes per fingerprint.
+ *
+ * @since 2026-10-18
+ */
+@ThreadSafe
+final class SimHashIndex {
+	private static final int BUCKET_BITS = 16;
+	private static final long[] EMPTY = new long[0];
+
+	private final int maxDistance;
+	private final int[] bandShifts;
+	private final long[] bandMasks;
+	@GuardedBy("this")
+	private final long[][][] bands;
+	@GuardedBy("this")
+	private final int[][] bucketSizes;
+	@GuardedBy("this")
+	private int size;
+
+	/**
+	 * @param maxDistance max hamming distance of near-duplicates, 0~7.
+	 */
+	SimHashIndex(int maxDistance) {
+		if (maxDistance < 0 || maxDistance > 7)
+			throw new IllegalArgumentException("max distance should be 0~7: " + maxDistance);
+		this.maxDistance = maxDistance;
+		int bandCount = maxDistance + 1;
+		bandShifts = new int[bandCount];
+		bandMasks = new long[bandCount];
+		for (int i = 0, shift = 0; i < bandCount; i++) {
+			int bits = 64 / bandCount + (i < 64 % bandCount ? 1 : 0);
+			bandShifts[i] = shift;
+			bandMasks[i] = bits == 64 ? -1L : (1L << bits) - 1;
+			shift += bits;
+		}
+		bands = new long[bandCount][1 << BUCKET_BITS][];
+		bucketSizes = new int[bandCount][1 << BUCKET_BITS];
+		for (long[][] band : bands)
+			Arrays.fill(band, EMPTY);
+	}
+
+	private int bucket(int band, long fp) {
+		long v = (fp >>> bandShifts[band]) & bandMasks[band];
+		return (int) SimHash.mix(v + band) & ((1 << BUCKET_BITS) - 1);
+	}
+
+	/**
+	 * add the fingerprint if there's no near-duplicate of it.
+	 *
+	 * @return <code>true</code> if added, <code>false</code> if a near-duplicate exists.
+	 */
+	synchronized boolean addIfAbsent(long fp) {
+		for (int b = 0; b < bands.length; b++) {
+			int bucket = bucket(b, fp);
+			long[] fps = bands[b][bucket];
+			for (int i = bucketSizes[b][bucket] - 1; i >= 0; i--) {
+				if (SimHash.distance(fps[i], fp) <= maxDistance)
+					return false;
+			}
+		}
+		for (int b = 0; b < bands.length; b++) {
+			int bucket = bucket(b, fp);
+			long[] fps = bands[b][bucket];
+			int n = bucketSizes[b][bucket];
+			if (n == fps.length)
+				bands[b][bucket] = fps = Arrays.copyOf(fps, Math.max(4, n + (n >> 1)));
+			fps[n] = fp;
+			bucketSizes[b][bucket] = n + 1;
+		}
+		size++;
+		return true;
+	}
+
+	/**
+	 * remove the fingerprint added before, e.g. a reserved page failed to be handled.
+	 *
+	 * @return whether the fingerprint is found.
+	 */
+	synchronized boolean remove(long fp) {
+		boolean found = false;
+		for (int b = 0; b < bands.length; b++) {
+			int bucket = bucket(b, fp);
+			long[] fps = bands[b][bucket];
+			int n = bucketSizes[b][bucket];
+			for (int i = n - 1; i >= 0; i--) {
+				if (fps[i] == fp) {
+					fps[i] = fps[n - 1];
+					bucketSizes[b][bucket] = n - 1;
+					found = true;
+					break;
+				}
+			}
+		}
+		if (found)
+			size--;
+		return found;
+	}
+
+	synchronized boolean containsNear(long fp) {
+		for (int b = 0; b < bands.length; b++) {
+			int bucket = bucket(b, fp);
+			long[] fps = bands[b][bucket];
+			for (int i = bucketSizes[b][bucket] - 1; i >= 0; i--) {
+				if (SimHash.distance(fps[i], fp) <= maxDistance)
+					return true;
+			}
+		}
+		return false;
+	}
+
+	synchronized int size() {
+		return size;
+	}
+}
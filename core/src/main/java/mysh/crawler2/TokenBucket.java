@@ -0,0 +1,101 @@
+package mysh.crawler2;
+
+import mysh.util.Range;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * lock-free token bucket, in the form of GCRA (generic cell rate algorithm).
+ * time is measured in nano-seconds, so rates far beyond one permit per milli-second can be controlled.
+ * <p>
+ * the bucket never blocks, {@link #tryAcquire()} tells how long to wait instead.
+ *
+ * @since 2026-10-18
+ */
+@ThreadSafe
+final class TokenBucket {
+	private static final long NANOS_PER_MINUTE = 60_000_000_000L;
+
+	private final LongSupplier nanoClock;
+	/**
+	 * theoretical arrival time of next permit, in {@link #nanoClock}.
+	 */
+	private final AtomicLong tat;
+	/**
+	 * nanos between two permits, 0 means unlimited.
+	 */
+	private volatile long intervalNanos;
+	private volatile int burst;
+
+	TokenBucket(int ratePerMinute, int burst) {
+		this(ratePerMinute, burst, System::nanoTime);
+	}
+
+	/**
+	 * @param nanoClock time source in nano-seconds, like {@link System#nanoTime()}.
+	 */
+	TokenBucket(int ratePerMinute, int burst, LongSupplier nanoClock) {
+		this.nanoClock = nanoClock;
+		this.tat = new AtomicLong(nanoClock.getAsLong());
+		setRatePerMinute(ratePerMinute);
+		setBurst(burst);
+	}
+
+	/**
+	 * @param rate permits per minute. (the max accurate value is {@link UrlClassifierConf#maxAccRatePM}.
+	 *             if given value is larger than that, it will be regard as unlimited)
+	 */
+	void setRatePerMinute(int rate) {
+		intervalNanos = rate > UrlClassifierConf.maxAccRatePM ? 0 : NANOS_PER_MINUTE / Math.max(1, rate);
+	}
+
+	/**
+	 * get accurate rate per minute, or {@link Integer#MAX_VALUE} if unlimited.
+	 */
+	int getRatePerMinute() {
+		long interval = intervalNanos;
+		return interval == 0 ? Integer.MAX_VALUE :
+				(int) Range.within(1, UrlClassifierConf.maxAccRatePM, NANOS_PER_MINUTE / interval);
+	}
+
+	/**
+	 * @param burst permits can be acquired at once after the bucket being idle.
+	 */
+	void setBurst(int burst) {
+		this.burst = Math.max(1, burst);
+	}
+
+	/**
+	 * try to acquire a permit.
+	 *
+	 * @return 0 if a permit is acquired, otherwise nanos to wait before next permit is available.
+	 */
+	long tryAcquire() {
+		long interval = intervalNanos;
+		if (interval == 0)
+			return 0;
+
+		long tolerance = interval * (burst - 1);
+		while (true) {
+			long now = nanoClock.getAsLong();
+			long t = tat.get();
+			long start = t - now > 0 ? t : now;
+			long wait = start - tolerance - now;
+			if (wait > 0)
+				return wait;
+			if (tat.compareAndSet(t, start + interval))
+				return 0;
+		}
+	}
+
+	/**
+	 * give back a permit which was acquired but not used.
+	 */
+	void refund() {
+		long interval = intervalNanos;
+		if (interval > 0)
+			tat.addAndGet(-interval);
+	}
+}
@@ -27,9 +27,9 @@ public final class UrlClassifierConf {
 	}
 	
 	/**
-	 * max accurate flow control per minute.
+	 * max accurate flow control per minute, which is one access per micro-second.
 	 */
-	static final int maxAccRatePM = 60_000;
+	static final int maxAccRatePM = 60_000_000;
 	
 	final String name;
 	final int threadPoolSize;
@@ -37,13 +37,17 @@ public final class UrlClassifierConf {
 	final HttpClientAssist hca;
 	volatile boolean useAdjuster;
 	volatile BlockChecker blockChecker;
+	volatile Frontier.Factory frontierFactory = Frontier.HEAP;
+	volatile int asyncMaxInFlight;
+	volatile int rateBurst = 1;
+	volatile int adaptiveMaxConcurrency;
 	
 	
 	/**
 	 * @param name           the name of url classifier.
 	 * @param threadPoolSize thread pool size of the classifier.
 	 * @param ratePerMinute  flow control. the max accurate controllable value is {@link #maxAccRatePM}.
-	 *                       see {@link mysh.crawler2.Crawler.ClassifiedUrlCrawler#setRatePerMinute(int)}
+	 *                       see {@link TokenBucket#setRatePerMinute(int)}
 	 * @param hca            hca used by crawler. Be VERY CAREFUL of reusing it, because it will be closed when crawler stopped.
 	 */
 	public UrlClassifierConf(String name, int threadPoolSize, int ratePerMinute, HttpClientAssist hca) {
@@ -71,6 +75,49 @@ public final class UrlClassifierConf {
 		return this;
 	}
 	
+	/**
+	 * frontier keeps the tasks waiting to be crawled, {@link Frontier#HEAP} by default.
+	 * use {@link MappedFileFrontier#factory} for crawls larger than heap.
+	 */
+	public UrlClassifierConf setFrontierFactory(Frontier.Factory frontierFactory) {
+		this.frontierFactory = Objects.requireNonNull(frontierFactory, "frontier factory can't be null");
+		return this;
+	}
+	
+	/**
+	 * max accesses can be dispatched at once after the classifier being idle, 1 by default,
+	 * which means accesses are evenly spaced by {@link #ratePerMinute}.
+	 */
+	public UrlClassifierConf setRateBurst(int rateBurst) {
+		this.rateBurst = Math.max(1, rateBurst);
+		return this;
+	}
+	
+	/**
+	 * fetch urls through okhttp async calls, so requests in flight don't hold classifier threads,
+	 * which then only handle responses ({@link CrawlerSeed#onGet} and url distilling).
+	 *
+	 * @param maxInFlight max requests in flight of the classifier, 0 to fetch synchronously (default).
+	 *                    requests beyond okhttp dispatcher limits wait in its queue without holding threads.
+	 */
+	public UrlClassifierConf setAsyncFetch(int maxInFlight) {
+		this.asyncMaxInFlight = Math.max(0, maxInFlight);
+		return this;
+	}
+	
+	/**
+	 * tune concurrency (thread pool size, or max requests in flight in async mode) by response latency,
+	 * starting from the configured one. it grows while the latency stays flat, and shrinks when the latency
+	 * rises or accesses get blocked. the rate, if limited, is scaled along with it.
+	 * see {@link GradientLimiter}
+	 *
+	 * @param maxConcurrency upper bound of the concurrency, 0 to disable (default).
+	 */
+	public UrlClassifierConf setAdaptiveConcurrency(int maxConcurrency) {
+		this.adaptiveMaxConcurrency = Math.max(0, maxConcurrency);
+		return this;
+	}
+	
 	@Override
 	public boolean equals(Object o) {
 		if (this == o) return true;
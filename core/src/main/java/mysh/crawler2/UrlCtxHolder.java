@@ -14,6 +14,9 @@ public class UrlCtxHolder<CTX extends UrlContext> implements Serializable {
 	String url;
 	CTX ctx;
 	
+	private UrlCtxHolder() {
+	}
+	
 	public UrlCtxHolder(String url) {
 		this(url, null);
 	}
@@ -37,6 +40,16 @@ public class UrlCtxHolder<CTX extends UrlContext> implements Serializable {
 		return new UrlCtxHolder<>(url, ctx);
 	}
 	
+	/**
+	 * restore a holder whose url was normalized already, e.g. read back from a persisted frontier.
+	 */
+	static <CTX extends UrlContext> UrlCtxHolder<CTX> restore(String url, CTX ctx) {
+		UrlCtxHolder<CTX> holder = new UrlCtxHolder<>();
+		holder.url = Objects.requireNonNull(url, "url should not be null");
+		holder.ctx = ctx;
+		return holder;
+	}
+	
 	@Override
 	public boolean equals(Object o) {
 		if (this == o) return true;
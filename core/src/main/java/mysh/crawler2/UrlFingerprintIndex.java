@@ -0,0 +1,190 @@
+package mysh.crawler2;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * url set keyed by 64-bit fingerprints of normalized urls, with an int counter for each url.
+ * <p>
+ * keys and values are kept in primitive open-addressing (linear probing) tables, about 16 bytes per url,
+ * instead of url strings and boxed entries. the tables are striped by fingerprint,
+ * each stripe has its own lock, so there's no global monitor.
+ * two urls with the same fingerprint are regarded as the same one, which is unlikely in practice (~n²/2⁶⁵).
+ *
+ * @since 2026-10-18
+ */
+@ThreadSafe
+final class UrlFingerprintIndex {
+	private static final HashFunction FP_HASH = Hashing.farmHashFingerprint64();
+	/**
+	 * 0 marks empty slots, fingerprint 0 is mapped to this one.
+	 */
+	private static final long ZERO_FP = 0x9E3779B97F4A7C15L;
+	private static final int STRIPE_BITS = 6;
+	private static final int INIT_STRIPE_CAPACITY = 64;
+
+	private final Stripe[] stripes = new Stripe[1 << STRIPE_BITS];
+
+	UrlFingerprintIndex() {
+		for (int i = 0; i < stripes.length; i++)
+			stripes[i] = new Stripe();
+	}
+
+	/**
+	 * fingerprint of a url normalized by {@link UrlCtxHolder}.
+	 */
+	static long fingerprint(String url) {
+		long fp = FP_HASH.hashString(url, StandardCharsets.UTF_8).asLong();
+		return fp == 0 ? ZERO_FP : fp;
+	}
+
+	private Stripe stripe(long fp) {
+		return stripes[(int) (fp >>> (64 - STRIPE_BITS))];
+	}
+
+	/**
+	 * add the fingerprint with counter 0.
+	 *
+	 * @return <code>false</code> if it exists already.
+	 */
+	boolean add(long fp) {
+		return stripe(fp).add(fp);
+	}
+
+	boolean contains(long fp) {
+		return stripe(fp).indexOf(fp) >= 0;
+	}
+
+	/**
+	 * @return <code>false</code> if it doesn't exist.
+	 */
+	boolean remove(long fp) {
+		return stripe(fp).remove(fp);
+	}
+
+	/**
+	 * increase the counter of the fingerprint.
+	 *
+	 * @return counter value before increasing, or -1 if the fingerprint doesn't exist.
+	 */
+	int getAndIncrement(long fp) {
+		return stripe(fp).getAndIncrement(fp);
+	}
+
+	/**
+	 * @return counter value, or -1 if the fingerprint doesn't exist.
+	 */
+	int get(long fp) {
+		return stripe(fp).get(fp);
+	}
+
+	int size() {
+		int size = 0;
+		for (Stripe s : stripes)
+			size += s.size();
+		return size;
+	}
+
+	private static final class Stripe {
+		@GuardedBy("this")
+		private long[] keys = new long[INIT_STRIPE_CAPACITY];
+		@GuardedBy("this")
+		private int[] values = new int[INIT_STRIPE_CAPACITY];
+		@GuardedBy("this")
+		private int size;
+
+		private static int slot(long fp, int mask) {
+			// high bits choose the stripe, mix them away
+			long h = fp * 0x9E3779B97F4A7C15L;
+			return (int) (h ^ (h >>> 32)) & mask;
+		}
+
+		/**
+		 * @return slot index, or -1 if not found.
+		 */
+		synchronized int indexOf(long fp) {
+			int mask = keys.length - 1;
+			for (int i = slot(fp, mask); ; i = (i + 1) & mask) {
+				long k = keys[i];
+				if (k == fp)
+					return i;
+				if (k == 0)
+					return -1;
+			}
+		}
+
+		synchronized boolean add(long fp) {
+			if (indexOf(fp) >= 0)
+				return false;
+			// max load factor 0.75
+			if ((size + 1) * 4L > keys.length * 3L)
+				resize(keys.length << 1);
+			insert(keys, values, fp, 0);
+			size++;
+			return true;
+		}
+
+		synchronized boolean remove(long fp) {
+			int i = indexOf(fp);
+			if (i < 0)
+				return false;
+			// backward shift deletion, keeps probe chains intact without tombstones
+			int mask = keys.length - 1;
+			int hole = i;
+			for (int j = (i + 1) & mask; keys[j] != 0; j = (j + 1) & mask) {
+				int home = slot(keys[j], mask);
+				// move entry j to the hole if its home isn't within (hole, j]
+				if (((j - home) & mask) >= ((j - hole) & mask)) {
+					keys[hole] = keys[j];
+					values[hole] = values[j];
+					hole = j;
+				}
+			}
+			keys[hole] = 0;
+			values[hole] = 0;
+			size--;
+			if (keys.length > INIT_STRIPE_CAPACITY && size * 8L < keys.length)
+				resize(keys.length >> 1);
+			return true;
+		}
+
+		synchronized int getAndIncrement(long fp) {
+			int i = indexOf(fp);
+			return i < 0 ? -1 : values[i]++;
+		}
+
+		synchronized int get(long fp) {
+			int i = indexOf(fp);
+			return i < 0 ? -1 : values[i];
+		}
+
+		synchronized int size() {
+			return size;
+		}
+
+		@GuardedBy("this")
+		private void resize(int capacity) {
+			long[] nKeys = new long[capacity];
+			int[] nValues = new int[capacity];
+			for (int i = 0; i < keys.length; i++) {
+				if (keys[i] != 0)
+					insert(nKeys, nValues, keys[i], values[i]);
+			}
+			keys = nKeys;
+			values = nValues;
+		}
+
+		private static void insert(long[] keys, int[] values, long fp, int value) {
+			int mask = keys.length - 1;
+			int i = slot(fp, mask);
+			while (keys[i] != 0)
+				i = (i + 1) & mask;
+			keys[i] = fp;
+			values[i] = value;
+		}
+	}
+}
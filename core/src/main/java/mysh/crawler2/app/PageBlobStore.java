@@ -0,0 +1,377 @@
+package mysh.crawler2.app;
+
+import com.google.common.hash.Hashing;
+import mysh.sql.sqlite.SqliteDB;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 内容寻址的页面内容存储, 相同内容只存一份.
+ * <p>
+ * 内容以 SHA-256 为 key, 追加写入分段文件 (seg-000001.blob ...), 位置索引存于 sqlite 表
+ * (hash -> 分段:偏移:长度:编码:原长). 可压缩的内容以 gzip 最快级别压缩, 已存在的内容不再压缩和写入.
+ * 写入时只在锁内预留偏移, 在锁外按位置写入; 写完的内容成组提交, 一次刷盘后再批量写这一组的索引,
+ * 写入中断只在分段中留下无索引的数据, 不影响已有内容.
+ * 只追加不回收, 页面更新后旧内容仍占用空间.
+ *
+ * @since 2026-10-18
+ */
+@ThreadSafe
+public class PageBlobStore implements Closeable {
+	private static final Logger log = LoggerFactory.getLogger(PageBlobStore.class);
+	private static final int CODEC_RAW = 0, CODEC_GZIP = 1;
+	/**
+	 * 小于此大小的内容不压缩
+	 */
+	private static final int COMPRESS_MIN_SIZE = 256;
+
+	private final File dir;
+	private final SqliteDB.KvDAO<String> indexDAO;
+	private final long segmentSize;
+	private final Map<Integer, FileChannel> readers = new ConcurrentHashMap<>();
+	/**
+	 * 正在写入的内容, 相同内容并发写入时只写一份
+	 */
+	private final Map<String, Write> writing = new ConcurrentHashMap<>();
+	/**
+	 * 已写入, 等待刷盘和写索引
+	 */
+	private final Queue<Write> committing = new ConcurrentLinkedQueue<>();
+	private final Object commitLock = new Object();
+
+	@GuardedBy("this")
+	private Segment current;
+
+	/**
+	 * 追加写入的分段
+	 */
+	private static final class Segment {
+		final int no;
+		final FileChannel ch;
+		/**
+		 * 下一次写入的偏移
+		 */
+		@GuardedBy("PageBlobStore.this")
+		long next;
+		/**
+		 * 已预留偏移但索引未提交的写入数
+		 */
+		@GuardedBy("PageBlobStore.this")
+		int pending;
+		/**
+		 * 已换到新分段, 写入全部提交后关闭
+		 */
+		@GuardedBy("PageBlobStore.this")
+		boolean retired;
+
+		Segment(int no, FileChannel ch) throws IOException {
+			this.no = no;
+			this.ch = ch;
+			this.next = ch.size();
+		}
+	}
+
+	/**
+	 * 一次内容写入
+	 */
+	private static final class Write {
+		final String hash;
+		final CountDownLatch done = new CountDownLatch(1);
+		Segment seg;
+		String loc;
+		/**
+		 * 写入或提交失败的原因, 在 {@link #done} 前设置
+		 */
+		volatile Exception error;
+
+		Write(String hash) {
+			this.hash = hash;
+		}
+	}
+
+	/**
+	 * @param indexDAO    hash -> 内容位置
+	 * @param segmentSize 分段文件写满此大小后写新分段
+	 */
+	public PageBlobStore(File dir, SqliteDB.KvDAO<String> indexDAO, long segmentSize) {
+		this.dir = dir;
+		this.indexDAO = indexDAO;
+		this.segmentSize = segmentSize;
+	}
+
+	private static File segmentFile(File dir, int segment) {
+		return new File(dir, String.format("seg-%06d.blob", segment));
+	}
+
+	/**
+	 * 存储内容, 已存在则直接返回 hash. 返回时内容已刷盘且索引已提交.
+	 *
+	 * @param compressible 内容是否可压缩, 如图片等已压缩的内容不必再压缩
+	 * @return 内容 hash
+	 */
+	public String put(byte[] content, boolean compressible) throws IOException {
+		String hash = Hashing.sha256().hashBytes(content).toString();
+		if (indexDAO.containsKey(hash))
+			return hash;
+
+		Write w = new Write(hash);
+		Write prev = writing.putIfAbsent(hash, w);
+		if (prev != null) {
+			// 相同内容正在写入, 等它提交
+			try {
+				prev.done.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("wait blob write interrupted: " + hash);
+			}
+			if (prev.error != null)
+				throw new IOException("blob write fail: " + hash, prev.error);
+			return hash;
+		}
+
+		try {
+			// 检查与登记之间可能已有相同内容提交
+			if (indexDAO.containsKey(hash))
+				return hash;
+
+			int codec = CODEC_RAW;
+			byte[] data = content;
+			if (compressible && content.length >= COMPRESS_MIN_SIZE) {
+				byte[] gz = gzip(content);
+				// 压缩效果不明显的不压缩, 读取时省去解压
+				if (gz.length < content.length * 9 / 10) {
+					codec = CODEC_GZIP;
+					data = gz;
+				}
+			}
+
+			long offset;
+			synchronized (this) {
+				w.seg = segment();
+				offset = w.seg.next;
+				w.seg.next += data.length;
+				w.seg.pending++;
+			}
+			w.loc = w.seg.no + ":" + offset + ":" + data.length + ":" + codec + ":" + content.length;
+
+			try {
+				ByteBuffer buf = ByteBuffer.wrap(data);
+				while (buf.hasRemaining())
+					w.seg.ch.write(buf, offset + buf.position());
+			} catch (IOException e) {
+				release(w.seg);
+				throw e;
+			}
+
+			committing.add(w);
+			synchronized (commitLock) {
+				// 之前的提交可能已带上这次写入
+				if (w.done.getCount() > 0)
+					commit();
+			}
+			if (w.error != null)
+				throw new IOException("blob commit fail: " + hash, w.error);
+			return hash;
+		} catch (IOException | RuntimeException e) {
+			if (w.error == null)
+				w.error = e;
+			throw e;
+		} finally {
+			writing.remove(hash, w);
+			w.done.countDown();
+		}
+	}
+
+	/**
+	 * 提交所有已写入的内容: 涉及的分段各刷盘一次, 再批量写索引.
+	 * 内容先于索引落盘, 断电后索引不会指向丢失的内容.
+	 */
+	@GuardedBy("commitLock")
+	private void commit() {
+		List<Write> batch = new ArrayList<>();
+		for (Write w; (w = committing.poll()) != null; )
+			batch.add(w);
+
+		Exception error = null;
+		try {
+			Set<Segment> segs = Collections.newSetFromMap(new IdentityHashMap<>());
+			Map<String, String> rows = new HashMap<>(batch.size() * 2);
+			for (Write w : batch) {
+				if (segs.add(w.seg))
+					w.seg.ch.force(false);
+				rows.put(w.hash, w.loc);
+			}
+			indexDAO.saveAll(rows, null);
+		} catch (IOException | RuntimeException e) {
+			error = e;
+		}
+
+		for (Write w : batch) {
+			w.error = error;
+			release(w.seg);
+			w.done.countDown();
+		}
+	}
+
+	/**
+	 * 写入结束, 已换下的分段在最后一个写入结束后关闭
+	 */
+	private synchronized void release(Segment seg) {
+		if (--seg.pending == 0 && seg.retired) {
+			try {
+				seg.ch.close();
+			} catch (IOException e) {
+				log.error("close-blob-segment-fail, seg={}", seg.no, e);
+			}
+		}
+	}
+
+	@GuardedBy("this")
+	private Segment segment() throws IOException {
+		if (current == null) {
+			if (!dir.exists() && !dir.mkdirs())
+				throw new IOException("create blob dir fail: " + dir);
+			// 从最后一个分段继续写
+			String[] segs = dir.list((d, name) -> name.startsWith("seg-") && name.endsWith(".blob"));
+			int no = 1;
+			if (segs != null)
+				for (String s : segs)
+					no = Math.max(no, Integer.parseInt(s.substring(4, s.length() - 5)));
+			current = openSegment(no);
+		}
+		if (current.next >= segmentSize) {
+			Segment old = current;
+			current = openSegment(old.no + 1);
+			old.retired = true;
+			if (old.pending == 0)
+				old.ch.close();
+		}
+		return current;
+	}
+
+	private Segment openSegment(int no) throws IOException {
+		return new Segment(no, FileChannel.open(segmentFile(dir, no).toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE));
+	}
+
+	public boolean contains(String hash) {
+		return indexDAO.containsKey(hash);
+	}
+
+	/**
+	 * @return null 如果不存在
+	 */
+	@Nullable
+	public byte[] get(String hash) throws IOException {
+		Blob blob = getBlob(hash);
+		return blob == null ? null : blob.content();
+	}
+	
+	/**
+	 * 存储的原始数据, 压缩存储的可直接用作 gzip 响应体, 省去解压再压缩
+	 */
+	public static final class Blob {
+		/**
+		 * 存储的数据, {@link #gzipped} 时为 gzip 格式
+		 */
+		public final byte[] data;
+		public final boolean gzipped;
+		private final int rawLen;
+		
+		private Blob(byte[] data, boolean gzipped, int rawLen) {
+			this.data = data;
+			this.gzipped = gzipped;
+			this.rawLen = rawLen;
+		}
+		
+		/**
+		 * 解压后的内容
+		 */
+		public byte[] content() throws IOException {
+			return gzipped ? gunzip(data, rawLen) : data;
+		}
+	}
+	
+	/**
+	 * 读取存储的原始数据, 不解压
+	 *
+	 * @return null 如果不存在
+	 */
+	@Nullable
+	public Blob getBlob(String hash) throws IOException {
+		String loc = indexDAO.byKey(hash);
+		if (loc == null)
+			return null;
+		String[] parts = loc.split(":");
+		int seg = Integer.parseInt(parts[0]);
+		long offset = Long.parseLong(parts[1]);
+		int len = Integer.parseInt(parts[2]);
+		int codec = Integer.parseInt(parts[3]);
+		int rawLen = Integer.parseInt(parts[4]);
+
+		FileChannel r = readers.get(seg);
+		if (r == null) {
+			File f = segmentFile(dir, seg);
+			if (!f.exists())
+				return null;
+			synchronized (readers) {
+				r = readers.get(seg);
+				if (r == null)
+					readers.put(seg, r = FileChannel.open(f.toPath(), StandardOpenOption.READ));
+			}
+		}
+		ByteBuffer buf = ByteBuffer.allocate(len);
+		while (buf.hasRemaining()) {
+			if (r.read(buf, offset + buf.position()) < 0)
+				throw new EOFException("blob truncated: " + hash + ", loc=" + loc);
+		}
+		return new Blob(buf.array(), codec == CODEC_GZIP, rawLen);
+	}
+
+	private static byte[] gzip(byte[] content) throws IOException {
+		ByteArrayOutputStream bo = new ByteArrayOutputStream(content.length / 3 + 32);
+		try (GZIPOutputStream out = new GZIPOutputStream(bo, 8192) {
+			{
+				def.setLevel(Deflater.BEST_SPEED);
+			}
+		}) {
+			out.write(content);
+		}
+		return bo.toByteArray();
+	}
+
+	private static byte[] gunzip(byte[] data, int rawLen) throws IOException {
+		byte[] content = new byte[rawLen];
+		try (DataInputStream in = new DataInputStream(new GZIPInputStream(new ByteArrayInputStream(data), 8192))) {
+			in.readFully(content);
+		}
+		return content;
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		if (current != null) {
+			current.ch.close();
+			current = null;
+		}
+		synchronized (readers) {
+			for (FileChannel r : readers.values())
+				r.close();
+			readers.clear();
+		}
+	}
+}
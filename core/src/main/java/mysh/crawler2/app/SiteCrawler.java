@@ -1,10 +1,6 @@
 package mysh.crawler2.app;
 
-import com.google.common.io.ByteStreams;
 import com.google.common.net.HttpHeaders;
-import com.sun.net.httpserver.Headers;
-import com.sun.net.httpserver.HttpHandler;
-import com.sun.net.httpserver.HttpServer;
 import lombok.Data;
 import lombok.experimental.Accessors;
 import lombok.extern.slf4j.Slf4j;
@@ -18,21 +14,16 @@ import mysh.sql.sqlite.SqliteDB;
 import mysh.tulskiy.keymaster.common.HotKeyListener;
 import mysh.util.Encodings;
 import mysh.util.Strings;
-import mysh.util.Try;
 import org.apache.commons.lang3.ObjectUtils;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.io.*;
-import java.net.InetSocketAddress;
 import java.net.ProxySelector;
-import java.net.URI;
 import java.nio.charset.Charset;
 import java.nio.file.Paths;
+import java.time.LocalDateTime;
 import java.util.*;
-import java.util.concurrent.SynchronousQueue;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
 import java.util.stream.Stream;
 
 /**
@@ -51,6 +42,19 @@ public abstract class SiteCrawler<CTX extends UrlContext> implements CrawlerSeed
 		private String name, siteRoot, dbFile;
 		private boolean dbUseLock = false;
 		private int dbMmapSize = 134217728, crawlRatePerMin = 60, crawlerThreadPoolSize = 5;
+		/**
+		 * 内容近似重复的页面不存储, 也不提取链接, 见 {@link Crawler#useNearDuplicateDetection(int)}. -1 表示不检测
+		 */
+		private int nearDuplicateDistance = -1;
+		/**
+		 * 本地web服务的页面内存缓存大小(字节), 见 {@link #startWebServer(int)}
+		 */
+		private long mirrorCacheBytes = 64 * 1024 * 1024;
+		/**
+		 * 页面内容存于 {@link PageBlobStore} (dbFile 同目录下的 .blobs 目录), 相同内容只存一份. 否则内容随页面存于 db
+		 */
+		private boolean useBlobStore = true;
+		private long blobSegmentSize = 256 * 1024 * 1024;
 		
 		@Nullable
 		private HttpClientConfig hcc;
@@ -72,8 +76,21 @@ public abstract class SiteCrawler<CTX extends UrlContext> implements CrawlerSeed
 		private static final long serialVersionUID = 8100792219369925962L;
 		
 		private Map<String, String> header;
+		/**
+		 * 内容存于 {@link PageBlobStore} 时为 null, 由 {@link #getPage} 读出
+		 */
 		private byte[] content;
 		private String contentEncoding;
+		/**
+		 * 内容在 {@link PageBlobStore} 中的 hash
+		 */
+		@Nullable
+		private String contentHash;
+		/**
+		 * 内容在 {@link PageBlobStore} 中压缩存储时, 由 {@link #getPage} 读出的 gzip 数据, 不入库
+		 */
+		@Nullable
+		private transient byte[] gzippedContent;
 		
 		boolean isText() {
 			if (contentEncoding != null)
@@ -84,25 +101,127 @@ public abstract class SiteCrawler<CTX extends UrlContext> implements CrawlerSeed
 			String contentType = header.getOrDefault(HttpHeaders.CONTENT_TYPE, "");
 			return contentType.contains("text") || contentType.contains("javascript") || contentType.contains("json");
 		}
+		
+		/**
+		 * 文本或未压缩的内容
+		 */
+		boolean isCompressible() {
+			return isText() || compressible(header == null ? null : header.get(HttpHeaders.CONTENT_TYPE));
+		}
+	}
+	
+	/**
+	 * 页面缓存校验信息, 用于重爬时条件请求 (If-None-Match/If-Modified-Since), 页面未修改时不必重新下载和存储
+	 */
+	@Data
+	@Accessors(chain = true)
+	protected static class Validators {
+		@Nullable
+		private String eTag, lastModified;
+		/**
+		 * Cache-Control max-age in seconds, -1 if not given
+		 */
+		private long maxAge = -1;
+		
+		/**
+		 * @param old validators stored before, used if the response doesn't give new ones (e.g. 304)
+		 * @return null if there's no validator
+		 */
+		@Nullable
+		static Validators of(HttpClientAssist.UrlEntity ue, @Nullable Validators old) {
+			Validators v = new Validators()
+					.setETag(ue.getRspHeader(HttpHeaders.ETAG))
+					.setLastModified(ue.getRspHeader(HttpHeaders.LAST_MODIFIED))
+					.setMaxAge(parseMaxAge(ue.getRspHeader(HttpHeaders.CACHE_CONTROL)));
+			if (old != null) {
+				if (v.eTag == null)
+					v.eTag = old.eTag;
+				if (v.lastModified == null)
+					v.lastModified = old.lastModified;
+				if (v.maxAge < 0)
+					v.maxAge = old.maxAge;
+			}
+			return v.eTag == null && v.lastModified == null && v.maxAge < 0 ? null : v;
+		}
+		
+		static long parseMaxAge(@Nullable String cacheControl) {
+			if (cacheControl == null)
+				return -1;
+			long maxAge = -1;
+			for (String directive : cacheControl.split(",")) {
+				directive = directive.trim().toLowerCase();
+				if (directive.equals("no-cache") || directive.equals("no-store"))
+					return 0;
+				if (directive.startsWith("max-age=")) {
+					try {
+						maxAge = Long.parseLong(directive.substring(8).replace("\"", ""));
+					} catch (NumberFormatException e) {
+						maxAge = -1;
+					}
+				}
+			}
+			return maxAge;
+		}
+		
+		Map<String, String> conditionalHeaders() {
+			Map<String, String> headers = new HashMap<>();
+			if (eTag != null)
+				headers.put(HttpHeaders.IF_NONE_MATCH, eTag);
+			if (lastModified != null)
+				headers.put(HttpHeaders.IF_MODIFIED_SINCE, lastModified);
+			return headers;
+		}
+		
+		/**
+		 * 紧凑存储: eTag \n lastModified \n maxAge
+		 */
+		String encode() {
+			return ObjectUtils.firstNonNull(eTag, "") + '\n' + ObjectUtils.firstNonNull(lastModified, "") + '\n' + maxAge;
+		}
+		
+		static Validators decode(String s) {
+			String[] parts = s.split("\n", -1);
+			return new Validators()
+					.setETag(Strings.isBlank(parts[0]) ? null : parts[0])
+					.setLastModified(parts.length < 2 || Strings.isBlank(parts[1]) ? null : parts[1])
+					.setMaxAge(parts.length < 3 ? -1 : Long.parseLong(parts[2]));
+		}
 	}
 	
 	protected final SiteConfig config;
 	private final SqliteDB db;
 	protected final SqliteDB.KvDAO<PageInfo> pageDAO;
 	protected final SqliteDB.KvDAO<Collection<UrlCtxHolder<CTX>>> configDAO;
+	/**
+	 * uri -> {@link Validators#encode()}, 独立于页面存储, 重爬时无需读取解压页面
+	 */
+	protected final SqliteDB.KvDAO<String> validatorDAO;
+	/**
+	 * 运行中的本地web服务, 页面更新时清除其缓存
+	 */
+	private transient volatile SiteMirrorServer<CTX> mirrorServer;
+	protected final PageBlobStore blobStore;
 	
 	protected SiteCrawler() {
 		config = getConfig();
 		db = new SqliteDB(Paths.get(config.dbFile), config.dbUseLock, config.dbMmapSize);
 		String table = CodeUtil.camel2underline(config.name).toLowerCase();
-		pageDAO = db.genKvDAO(table + "_pages", true, false);
+		// 内容存于 blobStore 时, 页面记录很小, 不必压缩
+		pageDAO = db.genKvDAO(table + "_pages", !config.useBlobStore, false);
 		configDAO = db.genKvDAO(table + "_config", true, false);
+		validatorDAO = db.genKvDAO(table + "_validators", false, false);
+		blobStore = new PageBlobStore(new File(config.dbFile + ".blobs"),
+				db.genKvDAO(table + "_blobs", false, false), config.blobSegmentSize);
 	}
 	
 	@Override
 	public void close() throws IOException {
-		if (db != null)
-			db.close();
+		try {
+			blobStore.close();
+		} finally {
+			if (db != null)
+				db.close();
+		}
 	}
 	
 	protected abstract SiteConfig getConfig();
@@ -128,6 +247,39 @@ public abstract class SiteCrawler<CTX extends UrlContext> implements CrawlerSeed
 		return sharpIdx > 0 ? uri.substring(0, sharpIdx) : uri;
 	}
 	
+	/**
+	 * 读取存储的页面, 包括存于 {@link PageBlobStore} 的内容
+	 */
+	@Nullable
+	protected SqliteDB.Item<PageInfo> getPage(String reqUri) throws IOException {
+		SqliteDB.Item<PageInfo> item = pageDAO.itemByKey(reqUri);
+		if (item != null) {
+			PageInfo pageInfo = item.getValue();
+			if (pageInfo.content == null && pageInfo.contentHash != null) {
+				PageBlobStore.Blob blob = blobStore.getBlob(pageInfo.contentHash);
+				if (blob != null) {
+					pageInfo.content = blob.content();
+					if (blob.gzipped)
+						pageInfo.gzippedContent = blob.data;
+				}
+			}
+		}
+		return item;
+	}
+	
+	/**
+	 * 已压缩的内容 (图片/音视频/压缩包/字体等) 不必再压缩
+	 */
+	static boolean compressible(@Nullable String contentType) {
+		if (contentType == null)
+			return true;
+		String ct = contentType.toLowerCase();
+		if (ct.startsWith("image/"))
+			return ct.contains("svg") || ct.contains("bmp") || ct.contains("icon");
+		return !(ct.startsWith("video/") || ct.startsWith("audio/") || ct.contains("zip")
+				|| ct.contains("compressed") || ct.contains("woff") || ct.contains("rar") || ct.contains("7z"));
+	}
+	
 	/**
 	 * 检查存储的 item 是否已失效, 需要重爬
 	 */
@@ -135,28 +287,108 @@ public abstract class SiteCrawler<CTX extends UrlContext> implements CrawlerSeed
 		return false;
 	}
 	
+	@Nullable
+	Validators getValidators(String reqUri) {
+		String v = validatorDAO.byKey(reqUri);
+		return v == null ? null : Validators.decode(v);
+	}
+	
+	/**
+	 * 存储的页面是否仍在 Cache-Control max-age 有效期内, 可不必重新校验. 可用于 {@link #accept} 或 {@link #dbItemInvalid}
+	 */
+	protected boolean isFresh(String reqUri) {
+		SqliteDB.Item<String> item = validatorDAO.itemByKey(reqUri);
+		if (item == null)
+			return false;
+		long maxAge = Validators.decode(item.getValue()).maxAge;
+		return maxAge > 0 && item.getWriteTime().plusSeconds(maxAge).isAfter(LocalDateTime.now());
+	}
+	
+	/**
+	 * 已存储的页面, 以条件请求重新校验
+	 */
+	@Nullable
+	@Override
+	public Map<String, ?> requestHeaders(UrlCtxHolder<CTX> urlCtxHolder) {
+		Validators v = getValidators(getReqUri(urlCtxHolder.getUrl()));
+		return v == null ? null : v.conditionalHeaders();
+	}
+	
 	@Override
 	public boolean onGet(HttpClientAssist.UrlEntity ue, CTX urlContext) {
 		if (ue.getStatusCode() == 200) {
 			try {
 				String uri = getReqUri(ue.getReqUrl());
+				String contentType = ue.getRspHeader(HttpHeaders.CONTENT_TYPE);
 				PageInfo pageInfo = new PageInfo()
-						.setHeader(Colls.ofHashMap(
-								HttpHeaders.CONTENT_TYPE, ue.getRspHeader(HttpHeaders.CONTENT_TYPE)
-						))
-						.setContent(ue.getEntityBuf());
+						.setHeader(Colls.ofHashMap(HttpHeaders.CONTENT_TYPE, contentType));
+				if (config.useBlobStore)
+					pageInfo.setContentHash(blobStore.put(ue.getEntityBuf(), ue.isText() || compressible(contentType)));
+				else
+					pageInfo.setContent(ue.getEntityBuf());
 				if (ue.isText())
 					pageInfo.setContentEncoding(ObjectUtils.firstNonNull(ue.getEntityEncoding(), Encodings.UTF_8).name());
 				pageDAO.save(uri, pageInfo);
+				saveValidators(uri, Validators.of(ue, null));
+				SiteMirrorServer<CTX> ms = mirrorServer;
+				if (ms != null)
+					ms.invalidate(uri);
 				return true;
 			} catch (Throwable t) {
 				log.error("get page fail: {}", ue.getReqUrl(), t);
 				return false;
 			}
+		} else if (ue.getStatusCode() == 304) {
+			try {
+				// 页面未修改, 仅刷新存储时间, 不重写页面
+				String uri = getReqUri(ue.getReqUrl());
+				if (pageDAO.updateWriteTime(uri, null) > 0) {
+					saveValidators(uri, Validators.of(ue, getValidators(uri)));
+					return true;
+				} else {
+					// 页面已不在库中, 下次无条件重爬
+					validatorDAO.remove(uri);
+					return false;
+				}
+			} catch (Throwable t) {
+				log.error("revalidate page fail: {}", ue.getReqUrl(), t);
+				return false;
+			}
 		} else
 			return isSuccessOnGetStatus(ue.getStatusCode());
 	}
 	
+	private void saveValidators(String uri, @Nullable Validators v) {
+		if (v != null)
+			validatorDAO.save(uri, v.encode());
+		else
+			validatorDAO.remove(uri);
+	}
+	
+	/**
+	 * 304 页面的链接从已存储的页面中提取, 以继续校验其子页面. 重写时需调用此方法
+	 */
+	@Nullable
+	@Override
+	public Stream<String> enhancedDistillUrl(HttpClientAssist.UrlEntity ue, CTX ctx) {
+		if (ue.getStatusCode() != 304)
+			return null;
+		SqliteDB.Item<PageInfo> item;
+		try {
+			item = getPage(getReqUri(ue.getReqUrl()));
+		} catch (IOException e) {
+			log.error("read stored page fail: {}", ue.getReqUrl(), e);
+			return null;
+		}
+		PageInfo pageInfo = item == null ? null : item.getValue();
+		if (pageInfo == null || !pageInfo.isText() || pageInfo.content == null)
+			return null;
+		List<String> urls = new ArrayList<>();
+		Charset enc = Charset.forName(ObjectUtils.firstNonNull(pageInfo.contentEncoding, "UTF-8"));
+		new LinkExtractor(ue.getCurrentURL(), enc).extract(pageInfo.content, urls::add);
+		return urls.stream();
+	}
+	
 	protected boolean isSuccessOnGetStatus(int httpRespStatus) {
 		return true;
 	}
@@ -188,7 +420,12 @@ public abstract class SiteCrawler<CTX extends UrlContext> implements CrawlerSeed
 		if (Colls.isNotEmpty(unhandledTasks))
 			return true;
 		
-		SqliteDB.Item<PageInfo> rootItem = pageDAO.itemByKey("/");
+		SqliteDB.Item<PageInfo> rootItem;
+		try {
+			rootItem = getPage("/");
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
 		return rootItem != null && dbItemInvalid(rootItem);
 	}
 	
@@ -200,8 +437,10 @@ public abstract class SiteCrawler<CTX extends UrlContext> implements CrawlerSeed
 				this,
 				config.hcc, config.proxySelector,
 				config.crawlRatePerMin, config.crawlerThreadPoolSize,
-				config.blockChecker)
-				.start();
+				config.blockChecker);
+		if (config.nearDuplicateDistance >= 0)
+			crawler.useNearDuplicateDetection(config.nearDuplicateDistance);
+		crawler.start();
 		log.warn("crawler started, {}, config={}", getClass(), config);
 		this.onCrawlerStop = onCrawlerStop;
 		return crawler;
@@ -229,127 +468,19 @@ public abstract class SiteCrawler<CTX extends UrlContext> implements CrawlerSeed
 	}
 	
 	/**
-	 * 启动站点本地web服务, 本地未存储的页面将被重爬存储
+	 * 启动站点本地web服务, 本地未存储的页面将被重爬存储. 见 {@link SiteMirrorServer}
+	 *
+	 * @param port 0 表示随机端口, 见 {@link SiteMirrorServer#getPort()}
 	 */
-	public Closeable startWebServer(int port) throws Exception {
-		HttpServer server = HttpServer.create(new InetSocketAddress(port), 0);
-		
-		ThreadPoolExecutor httpExec = new ThreadPoolExecutor(
-				Runtime.getRuntime().availableProcessors(),
-				64, 1, TimeUnit.MINUTES,
-				new SynchronousQueue<>(), r -> {
-			Thread t = new Thread(r, getClass().getSimpleName() + "-http-server");
-			t.setDaemon(true);
-			return t;
-		});
-		httpExec.allowCoreThreadTimeOut(true);
-		
-		HttpClientAssist hca = new HttpClientAssist(config.hcc, config.proxySelector);
-		HttpHandler httpHandler = exchange -> {
-			Headers rspHeaders = exchange.getResponseHeaders();
-			// https://www.ruanyifeng.com/blog/2016/04/cors.html
-			Headers reqHeaders = exchange.getRequestHeaders();
-			reqHeaders
-					.getOrDefault("Access-Control-Request-Headers", Collections.emptyList())
-					.forEach(h -> rspHeaders.add("Access-Control-Allow-Headers", h));
-			rspHeaders.add("Access-Control-Allow-Methods", "GET, OPTIONS, POST");
-			rspHeaders.add("Access-Control-Allow-Credentials", "true");
-			rspHeaders.add("Access-Control-Max-Age", "86400");
-			rspHeaders.add("Access-Control-Allow-Origin",
-					reqHeaders.getOrDefault("Origin", Colls.ofList("*")).get(0));
-			
-			URI uri = exchange.getRequestURI();
-			String uriStr = uri.toString();
-			String reqUri = getReqUri(uriStr);
-			SqliteDB.Item<PageInfo> item = pageDAO.itemByKey(reqUri);
-			
-			// 将 item 返回请求端
-			Try.ExpRunnable<IOException> sendPageInfo = () -> {
-				PageInfo pageInfo = item.getValue();
-				
-				for (Map.Entry<String, String> header : pageInfo.header.entrySet()) {
-					if (header.getKey() != null && header.getValue() != null)
-						rspHeaders.set(header.getKey(), header.getValue());
-				}
-				exchange.sendResponseHeaders(200, 0);
-				try (InputStream in = exchange.getRequestBody();
-				     OutputStream out = exchange.getResponseBody()) {
-					if (pageInfo.isText()) {
-						Charset enc = Charset.forName(ObjectUtils.firstNonNull(pageInfo.contentEncoding, "UTF-8"));
-						out.write(new String(pageInfo.content, enc).replace(config.siteRoot, "").getBytes(enc));
-					} else
-						out.write(pageInfo.content);
-				}
-			};
-			
-			// 从远程源加载页面
-			Headers requestHeaders = exchange.getRequestHeaders();
-			Try.ExpCallable<HttpClientAssist.UrlEntity, Throwable> fetchPage = () -> {
-				Map<String, String> headers = new HashMap<>();
-				for (Map.Entry<String, List<String>> reqHeader : requestHeaders.entrySet()) {
-					headers.put(reqHeader.getKey(), reqHeader.getValue().get(0));
-				}
-				headers.remove(HttpHeaders.HOST);
-				
-				String url = config.siteRoot + uriStr;
-				if ("POST".equals(exchange.getRequestMethod()))
-					return hca.accessPostBytes(url, headers, ByteStreams.toByteArray(exchange.getRequestBody()));
-				else
-					return hca.access(url, headers);
-			};
-			
-			if (item != null) {
-				// 有数据直接返回
-				sendPageInfo.run();
-				if (dbItemInvalid(item)) {
-					// 发现失效的数据触发一次异步加载
-					httpExec.execute(() -> {
-						try (HttpClientAssist.UrlEntity ue = fetchPage.call()) {
-							onGet(ue, null);
-						} catch (Throwable t) {
-							log.error("load page async fail: {}", uriStr, t);
-						}
-					});
-				}
-			} else {
-				// 无数据开启同步加载
-				try (HttpClientAssist.UrlEntity ue = fetchPage.call()) {
-					if ("GET".equals(exchange.getRequestMethod()))
-						if (accept(ue.getReqUrl(), null))
-							onGet(ue, null);
-					
-					String contentType = ue.getRspHeader(HttpHeaders.CONTENT_TYPE);
-					if (contentType != null)
-						exchange.getResponseHeaders().set(HttpHeaders.CONTENT_TYPE, contentType);
-					exchange.sendResponseHeaders(ue.getStatusCode(), 0);
-					try (InputStream in = exchange.getRequestBody();
-					     OutputStream out = exchange.getResponseBody()) {
-						if (ue.isText()) {
-							Charset entityEncoding = ue.getEntityEncoding();
-							out.write(ue.getEntityStr().replace(config.siteRoot, "")
-							            .getBytes(ObjectUtils.firstNonNull(entityEncoding, Encodings.UTF_8)));
-						} else
-							out.write(ue.getEntityBuf());
-					}
-				} catch (Throwable t) {
-					log.error("load page failed, {}", uriStr, t);
-					exchange.sendResponseHeaders(500, 0);
-					try (InputStream in = exchange.getRequestBody();
-					     OutputStream out = exchange.getResponseBody()) {
-						t.printStackTrace(new PrintWriter(out));
-					}
-				}
-			}
-		};
-		
-		server.createContext("/", httpHandler);
-		server.setExecutor(httpExec);
-		server.start();
-		
-		log.warn("SiteCrawler-WebServer started in http://localhost:{}/, {}, config={}", port, getClass(), config);
-		return () -> {
-			hca.close();
-			server.stop(0);
-		};
+	public SiteMirrorServer<CTX> startWebServer(int port) throws Exception {
+		SiteMirrorServer<CTX> server = new SiteMirrorServer<>(this, port);
+		mirrorServer = server;
+		log.warn("SiteCrawler-WebServer started in http://localhost:{}/, {}, config={}", server.getPort(), getClass(), config);
+		return server;
+	}
+	
+	void onMirrorServerClosed(SiteMirrorServer<CTX> server) {
+		if (mirrorServer == server)
+			mirrorServer = null;
 	}
 }
@@ -0,0 +1,448 @@
+package mysh.crawler2.app;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.common.hash.Hashing;
+import com.google.common.net.HttpHeaders;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.*;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.http.*;
+import lombok.extern.slf4j.Slf4j;
+import mysh.crawler2.UrlContext;
+import mysh.net.httpclient.HttpClientAssist;
+import mysh.sql.sqlite.SqliteDB;
+import mysh.util.Encodings;
+import org.apache.commons.lang3.ObjectUtils;
+
+import javax.annotation.Nullable;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.*;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * {@link SiteCrawler} 本地镜像 web 服务, 基于 netty NIO, 支持 keep-alive.
+ * <p>
+ * 热点页面解码(解压反序列化, 去除站点根地址)后缓存在内存中, 按字节数计权重淘汰.
+ * 命中缓存时直接在 IO 线程返回, 不读库; 文本页面缓存时预先 gzip 压缩, 请求端支持时直接返回压缩内容.
+ * 未命中时在工作线程中读库或从远程加载, 同一连接上的请求按序响应.
+ *
+ * @since 2026-10-18
+ */
+@Slf4j
+public class SiteMirrorServer<CTX extends UrlContext> implements Closeable {
+	private static final int MAX_REQUEST_BODY = 16 * 1024 * 1024;
+	/**
+	 * 小于此大小的页面不压缩
+	 */
+	private static final int GZIP_MIN_SIZE = 1024;
+	/**
+	 * 缓存页面每隔此时间在后台以 {@link SiteCrawler#dbItemInvalid} 检查一次是否需要重新加载
+	 */
+	private static final long CHECK_INTERVAL_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+	/**
+	 * 解码后的页面
+	 */
+	static final class MirrorPage {
+		final Map<String, String> headers;
+		final byte[] body;
+		@Nullable
+		final byte[] gzipped;
+		final String eTag;
+		volatile long checkTime = System.nanoTime();
+
+		/**
+		 * @param compressible 文本或未压缩的内容, 图片/压缩包等已压缩的内容不再压缩
+		 * @param gzipped      已压缩好的内容, 如 {@link PageBlobStore} 中压缩存储的数据, 为 null 时按需压缩
+		 */
+		MirrorPage(Map<String, String> headers, byte[] body, boolean compressible, @Nullable byte[] gzipped) {
+			this.headers = headers;
+			this.body = body;
+			this.gzipped = gzipped != null ? gzipped : compressible ? gzip(body) : null;
+			this.eTag = "\"" + Long.toHexString(Hashing.farmHashFingerprint64().hashBytes(body).asLong()) + "\"";
+		}
+
+		static MirrorPage of(SiteCrawler.PageInfo pageInfo, String siteRoot) {
+			Map<String, String> headers = new HashMap<>();
+			if (pageInfo.getHeader() != null)
+				pageInfo.getHeader().forEach((k, v) -> {
+					if (k != null && v != null)
+						headers.put(k, v);
+				});
+			byte[] body = ObjectUtils.firstNonNull(pageInfo.getContent(), new byte[0]);
+			byte[] gzipped = pageInfo.getGzippedContent();
+			if (pageInfo.isText()) {
+				Charset enc = Charset.forName(ObjectUtils.firstNonNull(pageInfo.getContentEncoding(), "UTF-8"));
+				String text = new String(body, enc);
+				if (text.contains(siteRoot)) {
+					body = text.replace(siteRoot, "").getBytes(enc);
+					// 内容已改写, 存储的压缩数据不可用
+					gzipped = null;
+				}
+			}
+			return new MirrorPage(headers, body, pageInfo.isCompressible(), gzipped);
+		}
+
+		/**
+		 * 压缩后未明显变小则不保留
+		 */
+		@Nullable
+		private static byte[] gzip(byte[] body) {
+			if (body.length < GZIP_MIN_SIZE)
+				return null;
+			try {
+				ByteArrayOutputStream bo = new ByteArrayOutputStream(body.length / 4);
+				try (GZIPOutputStream out = new GZIPOutputStream(bo)) {
+					out.write(body);
+				}
+				return bo.size() < body.length * 9 / 10 ? bo.toByteArray() : null;
+			} catch (IOException e) {
+				return null;
+			}
+		}
+
+		int weight() {
+			return body.length + (gzipped == null ? 0 : gzipped.length) + 256;
+		}
+	}
+
+	private final SiteCrawler<CTX> sc;
+	private final String siteRoot;
+	private final Cache<String, MirrorPage> cache;
+	private final HttpClientAssist hca;
+	private final ThreadPoolExecutor loadExec;
+	private final EventLoopGroup dispatcherGroup;
+	private final EventLoopGroup workerGroup;
+	private final Channel serverChannel;
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+
+	SiteMirrorServer(SiteCrawler<CTX> sc, int port) throws Exception {
+		this.sc = sc;
+		this.siteRoot = sc.config.getSiteRoot();
+		this.cache = Caffeine.newBuilder()
+		                     .maximumWeight(sc.config.getMirrorCacheBytes())
+		                     .weigher((String k, MirrorPage v) -> v.weight())
+		                     .build();
+
+		String name = sc.getClass().getSimpleName() + "-mirror-" + port;
+		loadExec = new ThreadPoolExecutor(64, 64, 1, TimeUnit.MINUTES, new LinkedBlockingQueue<>(), newFactory(name + "-load-"));
+		loadExec.allowCoreThreadTimeOut(true);
+		dispatcherGroup = new NioEventLoopGroup(1, newFactory(name + "-dispatcher-"));
+		workerGroup = new NioEventLoopGroup(Runtime.getRuntime().availableProcessors(), newFactory(name + "-worker-"));
+		hca = new HttpClientAssist(sc.config.getHcc(), sc.config.getProxySelector());
+		try {
+			ServerBootstrap bootstrap = new ServerBootstrap();
+			bootstrap.group(dispatcherGroup, workerGroup)
+			         .channel(NioServerSocketChannel.class)
+			         .option(ChannelOption.SO_BACKLOG, 1024)
+			         .childOption(ChannelOption.TCP_NODELAY, true)
+			         .childHandler(new ChannelInitializer<SocketChannel>() {
+				         @Override
+				         protected void initChannel(SocketChannel ch) {
+					         ch.pipeline()
+					           .addLast(new HttpServerCodec())
+					           .addLast(new HttpObjectAggregator(MAX_REQUEST_BODY))
+					           .addLast(new HttpServerKeepAliveHandler())
+					           .addLast(new MirrorHandler());
+				         }
+			         });
+			serverChannel = bootstrap.bind(new InetSocketAddress(port)).sync().channel();
+		} catch (Exception e) {
+			closeResources();
+			throw e;
+		}
+	}
+
+	private static ThreadFactory newFactory(String name) {
+		AtomicInteger c = new AtomicInteger(1);
+		return r -> {
+			Thread t = new Thread(r, name + c.getAndIncrement());
+			t.setDaemon(true);
+			return t;
+		};
+	}
+
+	public int getPort() {
+		return ((InetSocketAddress) serverChannel.localAddress()).getPort();
+	}
+
+	public long getCacheHits() {
+		return hits.sum();
+	}
+
+	public long getCacheMisses() {
+		return misses.sum();
+	}
+
+	/**
+	 * 页面已更新, 清除缓存
+	 */
+	void invalidate(String reqUri) {
+		cache.invalidate(reqUri);
+	}
+
+	@Override
+	public void close() {
+		sc.onMirrorServerClosed(this);
+		try {
+			serverChannel.close().syncUninterruptibly();
+		} finally {
+			closeResources();
+		}
+	}
+
+	private void closeResources() {
+		dispatcherGroup.shutdownGracefully(0, 1, TimeUnit.SECONDS);
+		workerGroup.shutdownGracefully(0, 1, TimeUnit.SECONDS);
+		loadExec.shutdownNow();
+		hca.close();
+	}
+
+	/**
+	 * 每个连接一个实例, 只在连接的 IO 线程中访问.
+	 * 请求处理完(响应写出)前, 后续 pipelining 请求排队, 以保证响应顺序
+	 */
+	private class MirrorHandler extends SimpleChannelInboundHandler<FullHttpRequest> {
+		private final Deque<FullHttpRequest> pending = new ArrayDeque<>();
+		private boolean busy;
+
+		MirrorHandler() {
+			super(false);
+		}
+
+		@Override
+		protected void channelRead0(ChannelHandlerContext ctx, FullHttpRequest req) {
+			pending.add(req);
+			next(ctx);
+		}
+
+		private void next(ChannelHandlerContext ctx) {
+			FullHttpRequest req;
+			while (!busy && (req = pending.poll()) != null) {
+				busy = true;
+				handle(ctx, req);
+			}
+		}
+
+		private void handle(ChannelHandlerContext ctx, FullHttpRequest req) {
+			if (!req.decoderResult().isSuccess()) {
+				respond(ctx, req, text(HttpResponseStatus.BAD_REQUEST, "bad request"));
+				return;
+			}
+
+			String uriStr = req.uri();
+			String reqUri = sc.getReqUri(uriStr);
+			MirrorPage page = cache.getIfPresent(reqUri);
+			if (page != null) {
+				// 有缓存直接返回
+				hits.increment();
+				respond(ctx, req, response(req, page));
+				long now = System.nanoTime();
+				if (now - page.checkTime > CHECK_INTERVAL_NANOS) {
+					page.checkTime = now;
+					Map<String, String> headers = forwardHeaders(req);
+					loadExec.execute(() -> {
+						try {
+							SqliteDB.Item<SiteCrawler.PageInfo> item = sc.getPage(reqUri);
+							if (item != null && needReload(item, reqUri))
+								reload(uriStr, headers);
+						} catch (Throwable t) {
+							log.error("check page fail: {}", uriStr, t);
+						}
+					});
+				}
+				return;
+			}
+
+			// 读库及远程加载会阻塞, 不在 IO 线程中执行
+			misses.increment();
+			loadExec.execute(() -> {
+				FullHttpResponse rsp;
+				try {
+					rsp = load(req, uriStr, reqUri);
+				} catch (Throwable t) {
+					log.error("load page failed, {}", uriStr, t);
+					StringWriter sw = new StringWriter();
+					t.printStackTrace(new PrintWriter(sw));
+					rsp = text(HttpResponseStatus.INTERNAL_SERVER_ERROR, sw.toString());
+				}
+				FullHttpResponse r = rsp;
+				ctx.executor().execute(() -> respond(ctx, req, r));
+			});
+		}
+
+		private void respond(ChannelHandlerContext ctx, FullHttpRequest req, FullHttpResponse rsp) {
+			// https://www.ruanyifeng.com/blog/2016/04/cors.html
+			io.netty.handler.codec.http.HttpHeaders reqHeaders = req.headers();
+			io.netty.handler.codec.http.HttpHeaders rspHeaders = rsp.headers();
+			reqHeaders.getAll(HttpHeaders.ACCESS_CONTROL_REQUEST_HEADERS)
+			          .forEach(h -> rspHeaders.add(HttpHeaders.ACCESS_CONTROL_ALLOW_HEADERS, h));
+			rspHeaders.add(HttpHeaders.ACCESS_CONTROL_ALLOW_METHODS, "GET, OPTIONS, POST");
+			rspHeaders.add(HttpHeaders.ACCESS_CONTROL_ALLOW_CREDENTIALS, "true");
+			rspHeaders.add(HttpHeaders.ACCESS_CONTROL_MAX_AGE, "86400");
+			rspHeaders.add(HttpHeaders.ACCESS_CONTROL_ALLOW_ORIGIN,
+					ObjectUtils.firstNonNull(reqHeaders.get(HttpHeaders.ORIGIN), "*"));
+			HttpUtil.setContentLength(rsp, rsp.content().readableBytes());
+
+			ctx.writeAndFlush(rsp).addListener(f -> {
+				req.release();
+				busy = false;
+				if (ctx.channel().isActive())
+					next(ctx);
+			});
+		}
+
+		@Override
+		public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+			FullHttpRequest req;
+			while ((req = pending.poll()) != null)
+				req.release();
+			super.channelInactive(ctx);
+		}
+
+		@Override
+		public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+			log.debug("mirror-connection-error, remote={}", ctx.channel().remoteAddress(), cause);
+			ctx.close();
+		}
+	}
+
+	private FullHttpResponse load(FullHttpRequest req, String uriStr, String reqUri) throws Throwable {
+		SqliteDB.Item<SiteCrawler.PageInfo> item = sc.getPage(reqUri);
+		Map<String, String> headers = forwardHeaders(req);
+		if (item != null) {
+			// 有数据直接返回
+			MirrorPage page = MirrorPage.of(item.getValue(), siteRoot);
+			cache.put(reqUri, page);
+			if (needReload(item, reqUri)) {
+				// 发现失效的数据触发一次异步加载
+				loadExec.execute(() -> {
+					try {
+						reload(uriStr, headers);
+					} catch (Throwable t) {
+						log.error("load page async fail: {}", uriStr, t);
+					}
+				});
+			}
+			return response(req, page);
+		}
+
+		// 无数据开启同步加载
+		boolean post = HttpMethod.POST.equals(req.method());
+		byte[] reqBody = post ? ByteBufUtil.getBytes(req.content()) : null;
+		try (HttpClientAssist.UrlEntity ue = fetch(uriStr, headers, reqBody)) {
+			if (HttpMethod.GET.equals(req.method()))
+				if (sc.accept(ue.getReqUrl(), null))
+					sc.onGet(ue, null);
+
+			byte[] body;
+			if (ue.isText()) {
+				Charset entityEncoding = ue.getEntityEncoding();
+				body = ue.getEntityStr().replace(siteRoot, "")
+				         .getBytes(ObjectUtils.firstNonNull(entityEncoding, Encodings.UTF_8));
+			} else
+				body = ue.getEntityBuf();
+			FullHttpResponse rsp = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1,
+					HttpResponseStatus.valueOf(ue.getStatusCode()), Unpooled.wrappedBuffer(body));
+			String contentType = ue.getRspHeader(HttpHeaders.CONTENT_TYPE);
+			if (contentType != null)
+				rsp.headers().set(HttpHeaders.CONTENT_TYPE, contentType);
+			return rsp;
+		}
+	}
+
+	private boolean needReload(SqliteDB.Item<SiteCrawler.PageInfo> item, String reqUri) {
+		return sc.dbItemInvalid(item) && !sc.isFresh(reqUri);
+	}
+
+	/**
+	 * 重新加载已存储的页面, 以条件请求校验, 页面更新时 {@link SiteCrawler#onGet} 清除缓存
+	 */
+	private void reload(String uriStr, Map<String, String> headers) throws Throwable {
+		headers.keySet().removeIf(h -> h.equalsIgnoreCase(HttpHeaders.IF_NONE_MATCH)
+				|| h.equalsIgnoreCase(HttpHeaders.IF_MODIFIED_SINCE));
+		SiteCrawler.Validators v = sc.getValidators(sc.getReqUri(uriStr));
+		if (v != null)
+			headers.putAll(v.conditionalHeaders());
+		try (HttpClientAssist.UrlEntity ue = fetch(uriStr, headers, null)) {
+			sc.onGet(ue, null);
+		}
+	}
+
+	private HttpClientAssist.UrlEntity fetch(String uriStr, Map<String, String> headers, @Nullable byte[] postBody) throws Throwable {
+		String url = siteRoot + uriStr;
+		if (postBody != null)
+			return hca.accessPostBytes(url, headers, postBody);
+		else
+			return hca.access(url, headers);
+	}
+
+	/**
+	 * 转发到远程的请求头
+	 */
+	private static Map<String, String> forwardHeaders(FullHttpRequest req) {
+		Map<String, String> headers = new HashMap<>();
+		for (String name : req.headers().names()) {
+			if (!name.equalsIgnoreCase(HttpHeaders.HOST) && !name.equalsIgnoreCase(HttpHeaders.CONNECTION)
+					&& !name.equalsIgnoreCase(HttpHeaders.CONTENT_LENGTH))
+				headers.put(name, req.headers().get(name));
+		}
+		return headers;
+	}
+
+	private static FullHttpResponse response(FullHttpRequest req, MirrorPage page) {
+		io.netty.handler.codec.http.HttpHeaders reqHeaders = req.headers();
+		if (page.eTag.equals(reqHeaders.get(HttpHeaders.IF_NONE_MATCH))) {
+			FullHttpResponse rsp = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.NOT_MODIFIED);
+			rsp.headers().set(HttpHeaders.ETAG, page.eTag);
+			return rsp;
+		}
+
+		boolean gzip = page.gzipped != null && acceptGzip(reqHeaders.get(HttpHeaders.ACCEPT_ENCODING));
+		FullHttpResponse rsp = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK,
+				Unpooled.wrappedBuffer(gzip ? page.gzipped : page.body));
+		page.headers.forEach(rsp.headers()::set);
+		rsp.headers().set(HttpHeaders.ETAG, page.eTag);
+		if (page.gzipped != null)
+			rsp.headers().set(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+		if (gzip)
+			rsp.headers().set(HttpHeaders.CONTENT_ENCODING, "gzip");
+		return rsp;
+	}
+
+	static boolean acceptGzip(@Nullable String acceptEncoding) {
+		if (acceptEncoding == null)
+			return false;
+		for (String coding : acceptEncoding.split(",")) {
+			String[] parts = coding.trim().split(";");
+			if (parts[0].trim().equalsIgnoreCase("gzip"))
+				return parts.length < 2 || !parts[1].trim().matches("q=0(\\.0*)?");
+		}
+		return false;
+	}
+
+	private static FullHttpResponse text(HttpResponseStatus status, String msg) {
+		FullHttpResponse rsp = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, status,
+				Unpooled.copiedBuffer(msg, Encodings.UTF_8));
+		rsp.headers().set(HttpHeaders.CONTENT_TYPE, "text/plain; charset=utf-8");
+		return rsp;
+	}
+}
@@ -0,0 +1,375 @@
+package mysh.crawler2.repo;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import mysh.crawler2.UrlContext;
+import mysh.crawler2.UrlCtxHolder;
+import mysh.util.FilesUtil;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * scalable bloom filter repo. a chain of bloom filters, a new one is appended when the last one is full,
+ * with doubled capacity and halved fpp, so the total fpp stays within the target however many urls are added.
+ * <p>
+ * bits are held on heap, and persisted in a memory-mapped file, {@link #save} only writes pages modified
+ * since last save, instead of rewriting the whole filter. the mapped file is only a persisted copy,
+ * the heap bits are not reduced by it. tasks are a snapshot saved in a separated file, which is rewritten
+ * in full on every save, so keep them few, or use {@link mysh.crawler2.Crawler#useCheckpoint}
+ * which journals pending tasks incrementally.
+ * <p>
+ * {@link #add} and {@link #contains} are lock-free on atomic heap words (java 8 has no atomic access
+ * to mapped memory), only appending a filter is guarded.
+ *
+ * @since 2026-10-18
+ */
+@ThreadSafe
+public class ScalableBloomFilterRepo<CTX extends UrlContext> implements Repo<CTX>, Closeable {
+	private static final int MAGIC = 0x53424652;
+	private static final int PAGE_SIZE = 4096;
+	private static final int WORDS_PER_PAGE = PAGE_SIZE / Long.BYTES;
+	private static final int MAX_FILTERS = 48;
+	/**
+	 * magic, filterCount, expectedInsertions, fpp, then filters.
+	 */
+	private static final int HEADER_FIXED = 4 + 4 + 8 + 8;
+	/**
+	 * pageOffset, words, hashes, capacity, count.
+	 */
+	private static final int HEADER_FILTER = 8 + 4 + 4 + 8 + 8;
+	private static final HashFunction HASH = Hashing.murmur3_128();
+
+	private final File dir;
+	private final long expectedInsertions;
+	private final double fpp;
+
+	private RandomAccessFile raf;
+	private MappedByteBuffer header;
+	private volatile Filter[] filters;
+
+	/**
+	 * @param dir                directory to save bit file and tasks.
+	 * @param expectedInsertions 初始预期插入数, 超出后自动扩展.
+	 * @param fpp                总误报率 (0~1).
+	 */
+	public ScalableBloomFilterRepo(File dir, long expectedInsertions, double fpp) {
+		this.dir = Objects.requireNonNull(dir, "save dir is null");
+		if (expectedInsertions < 1)
+			throw new IllegalArgumentException("expectedInsertions should be positive: " + expectedInsertions);
+		if (fpp <= 0 || fpp >= 1)
+			throw new IllegalArgumentException("fpp should be within (0, 1): " + fpp);
+		this.expectedInsertions = expectedInsertions;
+		this.fpp = fpp;
+	}
+
+	private File bitsFile() {
+		return new File(dir, "bloom.bits");
+	}
+
+	private File tasksFile() {
+		return new File(dir, "tasks.zip");
+	}
+
+	/**
+	 * one bloom filter of the chain.
+	 */
+	private static final class Filter {
+		final long pageOffset;
+		final int hashes;
+		final long capacity;
+		final AtomicLong count;
+		final AtomicLongArray bits;
+		/**
+		 * one bit for each page, marks pages modified since last flush.
+		 */
+		final AtomicLongArray dirtyPages;
+		final MappedByteBuffer mapped;
+
+		Filter(FileChannel ch, long pageOffset, int words, int hashes, long capacity, long count) throws IOException {
+			this.pageOffset = pageOffset;
+			this.hashes = hashes;
+			this.capacity = capacity;
+			this.count = new AtomicLong(count);
+			this.bits = new AtomicLongArray(words);
+			int pages = pages(words);
+			this.dirtyPages = new AtomicLongArray((pages + 63) >>> 6);
+			this.mapped = ch.map(FileChannel.MapMode.READ_WRITE, pageOffset * PAGE_SIZE, (long) pages * PAGE_SIZE);
+
+			LongBuffer lb = mapped.asLongBuffer();
+			for (int i = 0; i < words; i++)
+				bits.lazySet(i, lb.get(i));
+		}
+
+		long bitSize() {
+			return (long) bits.length() * Long.SIZE;
+		}
+
+		boolean mightContain(long h1, long h2) {
+			long bitSize = bitSize();
+			long combined = h1;
+			for (int i = 0; i < hashes; i++) {
+				long index = (combined & Long.MAX_VALUE) % bitSize;
+				if ((bits.get((int) (index >>> 6)) & (1L << index)) == 0)
+					return false;
+				combined += h2;
+			}
+			return true;
+		}
+
+		/**
+		 * @return whether any bit changed
+		 */
+		boolean put(long h1, long h2) {
+			long bitSize = bitSize();
+			long combined = h1;
+			boolean changed = false;
+			for (int i = 0; i < hashes; i++) {
+				long index = (combined & Long.MAX_VALUE) % bitSize;
+				int word = (int) (index >>> 6);
+				long mask = 1L << index;
+				long old;
+				while (((old = bits.get(word)) & mask) == 0) {
+					if (bits.compareAndSet(word, old, old | mask)) {
+						markDirty(word / WORDS_PER_PAGE);
+						changed = true;
+						break;
+					}
+				}
+				combined += h2;
+			}
+			return changed;
+		}
+
+		private void markDirty(int page) {
+			int idx = page >>> 6;
+			long mask = 1L << page;
+			long old;
+			while (((old = dirtyPages.get(idx)) & mask) == 0) {
+				if (dirtyPages.compareAndSet(idx, old, old | mask))
+					return;
+			}
+		}
+
+		/**
+		 * write dirty pages to mapped file.
+		 */
+		void flush() {
+			LongBuffer lb = mapped.asLongBuffer();
+			int words = bits.length();
+			for (int idx = 0; idx < dirtyPages.length(); idx++) {
+				// clear marks before copying, so pages modified meanwhile will be flushed next time
+				long dirty = dirtyPages.getAndSet(idx, 0);
+				while (dirty != 0) {
+					int page = (idx << 6) + Long.numberOfTrailingZeros(dirty);
+					dirty &= dirty - 1;
+					int end = Math.min(words, (page + 1) * WORDS_PER_PAGE);
+					for (int w = page * WORDS_PER_PAGE; w < end; w++)
+						lb.put(w, bits.get(w));
+				}
+			}
+			mapped.force();
+		}
+	}
+
+	private static int pages(int words) {
+		return (words + WORDS_PER_PAGE - 1) / WORDS_PER_PAGE;
+	}
+
+	@Override
+	public synchronized Collection<UrlCtxHolder<CTX>> load() {
+		if (raf != null)
+			throw new IllegalStateException("repo loaded already");
+		try {
+			dir.mkdirs();
+			File bitsFile = bitsFile();
+			boolean exists = bitsFile.exists() && bitsFile.length() >= PAGE_SIZE;
+			raf = new RandomAccessFile(bitsFile, "rw");
+			if (!exists)
+				raf.setLength(PAGE_SIZE);
+			header = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, PAGE_SIZE);
+
+			if (exists) {
+				if (header.getInt(0) != MAGIC)
+					throw new IOException("not a bloom filter file: " + bitsFile.getAbsolutePath());
+				int count = header.getInt(4);
+				Filter[] fs = new Filter[count];
+				for (int i = 0; i < count; i++) {
+					int p = HEADER_FIXED + i * HEADER_FILTER;
+					fs[i] = new Filter(raf.getChannel(), header.getLong(p), header.getInt(p + 8), header.getInt(p + 12),
+							header.getLong(p + 16), header.getLong(p + 24));
+				}
+				filters = fs;
+			} else {
+				header.putInt(0, MAGIC);
+				header.putLong(8, expectedInsertions);
+				header.putDouble(16, fpp);
+				filters = new Filter[0];
+				appendFilter();
+			}
+
+			File tasksFile = tasksFile();
+			if (exists && tasksFile.exists())
+				return FilesUtil.decompressFile(tasksFile);
+			return null;
+		} catch (IOException e) {
+			close();
+			throw new RuntimeException("load bloom filter error.", e);
+		}
+	}
+
+	/**
+	 * append a filter, with doubled capacity and halved fpp of the last one.
+	 * the i-th filter's fpp is fpp/2^(i+1), so the sum stays below fpp.
+	 */
+	@GuardedBy("this")
+	private void appendFilter() throws IOException {
+		Filter[] fs = filters;
+		int n = fs.length;
+		if (n >= MAX_FILTERS)
+			throw new IllegalStateException("too many bloom filters: " + n);
+
+		long capacity = n == 0 ? expectedInsertions : fs[n - 1].capacity * 2;
+		double p = fpp / (1L << (n + 1));
+		long bitSize = Math.max(Long.SIZE, (long) (-capacity * Math.log(p) / (Math.log(2) * Math.log(2))));
+		long words = (bitSize + Long.SIZE - 1) / Long.SIZE;
+		// a filter is mapped as one buffer
+		if (words > (Integer.MAX_VALUE - PAGE_SIZE) / Long.BYTES)
+			throw new IllegalStateException("bloom filter too large: capacity=" + capacity + ", fpp=" + p);
+		int hashes = Math.max(1, (int) Math.round((double) words * Long.SIZE / capacity * Math.log(2)));
+
+		long pageOffset = n == 0 ? 1 : fs[n - 1].pageOffset + pages(fs[n - 1].bits.length());
+		raf.setLength((pageOffset + pages((int) words)) * PAGE_SIZE);
+		Filter f = new Filter(raf.getChannel(), pageOffset, (int) words, hashes, capacity, 0);
+
+		int p0 = HEADER_FIXED + n * HEADER_FILTER;
+		header.putLong(p0, pageOffset);
+		header.putInt(p0 + 8, (int) words);
+		header.putInt(p0 + 12, hashes);
+		header.putLong(p0 + 16, capacity);
+		header.putLong(p0 + 24, 0);
+		header.putInt(4, n + 1);
+		header.force();
+
+		Filter[] nfs = Arrays.copyOf(fs, n + 1);
+		nfs[n] = f;
+		filters = nfs;
+	}
+
+	private synchronized void grow(Filter full) {
+		Filter[] fs = filters;
+		// closed, or appended by another thread
+		if (fs == null || fs[fs.length - 1] != full)
+			return;
+		try {
+			appendFilter();
+		} catch (IOException e) {
+			throw new RuntimeException("append bloom filter error.", e);
+		}
+	}
+
+	private Filter[] filters() {
+		Filter[] fs = filters;
+		if (fs == null)
+			throw new IllegalStateException("repo not loaded");
+		return fs;
+	}
+
+	@Override
+	public void add(String url) {
+		ByteBuffer h = ByteBuffer.wrap(HASH.hashString(url, StandardCharsets.UTF_8).asBytes());
+		long h1 = h.getLong(), h2 = h.getLong();
+		Filter[] fs = filters();
+		for (Filter f : fs) {
+			if (f.mightContain(h1, h2))
+				return;
+		}
+		Filter last = fs[fs.length - 1];
+		if (last.put(h1, h2) && last.count.incrementAndGet() >= last.capacity)
+			grow(last);
+	}
+
+	@Override
+	public boolean contains(String url) {
+		ByteBuffer h = ByteBuffer.wrap(HASH.hashString(url, StandardCharsets.UTF_8).asBytes());
+		long h1 = h.getLong(), h2 = h.getLong();
+		for (Filter f : filters()) {
+			if (f.mightContain(h1, h2))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * approximate count of urls added.
+	 */
+	public long size() {
+		long size = 0;
+		for (Filter f : filters())
+			size += f.count.get();
+		return size;
+	}
+
+	@Override
+	public void remove(String url) {
+		throw new UnsupportedOperationException("bloom filter can't remove element");
+	}
+
+	/**
+	 * flush modified pages of bit file, and rewrite the tasks file.
+	 */
+	@Override
+	public synchronized void save(Collection<UrlCtxHolder<CTX>> tasks) {
+		Filter[] fs = filters();
+		try {
+			for (Filter f : fs)
+				f.flush();
+			for (int i = 0; i < fs.length; i++)
+				header.putLong(HEADER_FIXED + i * HEADER_FILTER + 24, fs[i].count.get());
+			header.force();
+
+			if (tasks != null)
+				FilesUtil.compress2File(tasksFile(), new ArrayList<>(tasks));
+		} catch (IOException e) {
+			throw new RuntimeException("save tasks error.", e);
+		}
+	}
+
+	/**
+	 * close the bit file. modifications after last {@link #save} are not guaranteed to be persisted.
+	 */
+	@Override
+	public synchronized void close() {
+		Filter[] fs = filters;
+		filters = null;
+		// release mappings at once, or the bit file stays locked (windows) until gc
+		if (fs != null)
+			for (Filter f : fs)
+				FilesUtil.unmap(f.mapped);
+		FilesUtil.unmap(header);
+		header = null;
+		if (raf != null) {
+			try {
+				raf.close();
+			} catch (IOException e) {
+				// ignore
+			}
+			raf = null;
+		}
+	}
+}
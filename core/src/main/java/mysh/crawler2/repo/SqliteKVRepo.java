@@ -3,19 +3,80 @@ package mysh.crawler2.repo;
 import mysh.crawler2.UrlContext;
 import mysh.crawler2.UrlCtxHolder;
 import mysh.sql.sqlite.SqliteDB;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import java.util.Collection;
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * save all urls in sqlite kv store.
+ * <p>
+ * in write-behind mode, writes are buffered in memory, and flushed by a background thread in one transaction,
+ * or by the writer when the buffer is full. reads see buffered writes.
+ * buffered writes are flushed on {@link #save} and {@link #close}.
  *
  * @since 2019-08-20
  */
-public class SqliteKVRepo<CTX extends UrlContext> implements Repo<CTX> {
+public class SqliteKVRepo<CTX extends UrlContext> implements Repo<CTX>, Closeable {
+	private static final Logger log = LoggerFactory.getLogger(SqliteKVRepo.class);
+	
+	/**
+	 * buffered value of removed key.
+	 */
+	private static final Object REMOVED = new Object();
+	/**
+	 * buffered null value.
+	 */
+	private static final Object NULL = new Object();
+	
 	private SqliteDB.KvDAO<Object> dao;
 	
+	/**
+	 * key->value buffered in write-behind mode, null in write-through mode.
+	 */
+	@Nullable
+	private final Map<String, Object> buffer;
+	private final int bufferSize;
+	private final Object flushLock = new Object();
+	@Nullable
+	private final ScheduledExecutorService flusher;
+	
 	public SqliteKVRepo(SqliteDB.KvDAO dao) {
 		this.dao = dao;
+		this.buffer = null;
+		this.bufferSize = 0;
+		this.flusher = null;
+	}
+	
+	/**
+	 * write-behind mode.
+	 *
+	 * @param bufferSize         max buffered writes, writer flushes the buffer when it's full.
+	 * @param flushIntervalMilli background flushing interval.
+	 */
+	public SqliteKVRepo(SqliteDB.KvDAO<Object> dao, int bufferSize, long flushIntervalMilli) {
+		this.dao = dao;
+		this.buffer = new ConcurrentHashMap<>();
+		this.bufferSize = Math.max(1, bufferSize);
+		this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "SqliteKVRepo-flusher-" + dao.getTableName());
+			t.setDaemon(true);
+			return t;
+		});
+		this.flusher.scheduleWithFixedDelay(() -> {
+			try {
+				flush();
+			} catch (Throwable t) {
+				log.error("sqliteKVRepo-flush-fail, table={}", dao.getTableName(), t);
+			}
+		}, flushIntervalMilli, flushIntervalMilli, TimeUnit.MILLISECONDS);
 	}
 	
 	@Override
@@ -30,26 +91,90 @@ public class SqliteKVRepo<CTX extends UrlContext> implements Repo<CTX> {
 	
 	@Override
 	public void put(String url, Object content) {
-		dao.save(url, content);
+		if (buffer == null)
+			dao.save(url, content);
+		else
+			buffer(url, content == null ? NULL : content);
 	}
 	
 	@Override
+	@SuppressWarnings("unchecked") // values are put by the caller as T, same as stored ones
 	public <T> T get(String url) {
+		if (buffer != null) {
+			Object v = buffer.get(url);
+			if (v == REMOVED || v == NULL)
+				return null;
+			if (v != null)
+				return (T) v;
+		}
 		return (T) dao.byKey(url);
 	}
 	
 	@Override
 	public boolean contains(String url) {
+		if (buffer != null) {
+			Object v = buffer.get(url);
+			if (v != null)
+				return v != REMOVED;
+		}
 		return dao.containsKey(url);
 	}
 	
 	@Override
 	public void remove(String url) {
-		dao.remove(url);
+		if (buffer == null)
+			dao.remove(url);
+		else
+			buffer(url, REMOVED);
+	}
+	
+	private void buffer(String url, Object value) {
+		buffer.put(url, value);
+		if (buffer.size() >= bufferSize)
+			flush();
+	}
+	
+	/**
+	 * write buffered writes to db in one transaction. no-op in write-through mode.
+	 */
+	public void flush() {
+		if (buffer == null)
+			return;
+		synchronized (flushLock) {
+			if (buffer.isEmpty())
+				return;
+			
+			// keys stay in buffer until written, so reads won't miss them
+			Map<String, Object> snapshot = new HashMap<>(buffer);
+			Map<String, Object> saves = new HashMap<>();
+			List<String> removes = new ArrayList<>();
+			snapshot.forEach((k, v) -> {
+				if (v == REMOVED)
+					removes.add(k);
+				else
+					saves.put(k, v == NULL ? null : v);
+			});
+			
+			dao.saveAll(saves, LocalDateTime.now());
+			dao.removeAll(removes);
+			// keep those modified meanwhile
+			snapshot.forEach(buffer::remove);
+		}
 	}
 	
 	@Override
 	public void save(Collection<UrlCtxHolder<CTX>> tasks) {
+		flush();
 		dao.save("\u0000", tasks);
 	}
+	
+	/**
+	 * flush buffered writes and stop background flushing.
+	 */
+	@Override
+	public void close() {
+		if (flusher != null)
+			flusher.shutdown();
+		flush();
+	}
 }
@@ -0,0 +1,144 @@
+package mysh.net.httpclient;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.github.benmanes.caffeine.cache.Ticker;
+import okhttp3.Dns;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * dns resolver caching resolutions of the delegate, see {@link HttpClientConfig#dns}.
+ * <p>
+ * a resolution is fresh in <code>ttl</code>. when it's accessed in the last <code>prefetch</code> of ttl,
+ * it's resolved again asynchronously, so hot hosts won't expire. an expired resolution is still
+ * served in <code>maxStale</code> while being resolved again asynchronously, and it's kept if
+ * the resolving fails. so resolving rarely runs on the caller thread after the first access.
+ * <p>
+ * the system resolver doesn't tell record ttl, so ttl is configured.
+ * static overrides are never expired, like hosts file.
+ *
+ * @since 2026-10-18
+ */
+@ThreadSafe
+public class CachingDns implements Dns {
+	private static final Executor defaultExecutor;
+
+	static {
+		AtomicInteger seq = new AtomicInteger();
+		ThreadPoolExecutor exec = new ThreadPoolExecutor(4, 4, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+			Thread t = new Thread(r, "CachingDns-refresh-" + seq.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		});
+		exec.allowCoreThreadTimeOut(true);
+		defaultExecutor = exec;
+	}
+
+	private final Dns delegate;
+	private final Map<String, List<InetAddress>> overrides = new ConcurrentHashMap<>();
+	private final LoadingCache<String, List<InetAddress>> cache;
+	private final AtomicLong resolutions = new AtomicLong();
+
+	/**
+	 * system resolver, ttl 60s, prefetch in the last 10s, serve stale in 5min.
+	 */
+	public CachingDns() {
+		this(Dns.SYSTEM, 60_000, 10_000, 5 * 60_000);
+	}
+
+	/**
+	 * @param ttlMillis      time a resolution is fresh.
+	 * @param prefetchMillis an accessed resolution is resolved again in the last period of ttl.
+	 * @param maxStaleMillis time an expired resolution can be served.
+	 */
+	public CachingDns(Dns delegate, long ttlMillis, long prefetchMillis, long maxStaleMillis) {
+		this(delegate, ttlMillis, prefetchMillis, maxStaleMillis, defaultExecutor, Ticker.systemTicker());
+	}
+
+	CachingDns(Dns delegate, long ttlMillis, long prefetchMillis, long maxStaleMillis, Executor executor, Ticker ticker) {
+		if (ttlMillis < 1 || prefetchMillis < 0 || prefetchMillis >= ttlMillis || maxStaleMillis < 0)
+			throw new IllegalArgumentException(
+					"illegal ttl=" + ttlMillis + ", prefetch=" + prefetchMillis + ", maxStale=" + maxStaleMillis);
+		this.delegate = Objects.requireNonNull(delegate, "delegate dns can't be null");
+		cache = Caffeine.newBuilder()
+		                .maximumSize(10_000)
+		                .refreshAfterWrite(ttlMillis - prefetchMillis, TimeUnit.MILLISECONDS)
+		                .expireAfterWrite(ttlMillis + maxStaleMillis, TimeUnit.MILLISECONDS)
+		                .executor(executor)
+		                .ticker(ticker)
+		                .build(this::resolve);
+	}
+
+	private List<InetAddress> resolve(String host) throws UnknownHostException {
+		resolutions.incrementAndGet();
+		return Collections.unmodifiableList(delegate.lookup(host));
+	}
+
+	@Override
+	public List<InetAddress> lookup(String host) throws UnknownHostException {
+		List<InetAddress> addresses = overrides.get(host);
+		if (addresses != null)
+			return addresses;
+
+		try {
+			return cache.get(host);
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof UnknownHostException)
+				throw (UnknownHostException) e.getCause();
+			UnknownHostException ue = new UnknownHostException(host);
+			ue.initCause(e.getCause());
+			throw ue;
+		}
+	}
+
+	/**
+	 * resolve the hosts asynchronously ahead of accessing.
+	 */
+	public void prefetch(String... hosts) {
+		for (String host : hosts) {
+			if (!overrides.containsKey(host))
+				cache.refresh(host);
+		}
+	}
+
+	/**
+	 * resolve the host to the addresses statically, or remove the override if no address given.
+	 */
+	public CachingDns override(String host, InetAddress... addresses) {
+		if (addresses.length == 0)
+			overrides.remove(host);
+		else
+			overrides.put(host, Collections.unmodifiableList(Arrays.asList(addresses.clone())));
+		return this;
+	}
+
+	/**
+	 * remove cached resolution of the host, next lookup resolves again.
+	 */
+	public void invalidate(String host) {
+		cache.invalidate(host);
+	}
+
+	/**
+	 * resolutions of the delegate resolver, including asynchronous ones.
+	 */
+	public long getResolutions() {
+		return resolutions.get();
+	}
+}
@@ -2,18 +2,24 @@ package mysh.net.httpclient;
 
 import com.alibaba.fastjson.JSON;
 import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONException;
 import com.alibaba.fastjson.JSONObject;
 import com.google.common.net.HttpHeaders;
 import mysh.collect.Colls;
-import mysh.util.Encodings;
+import mysh.util.BytesPool;
+import mysh.util.CharsetSniffer;
 import mysh.util.FilesUtil;
 import mysh.util.Htmls;
 import mysh.util.Strings;
 import mysh.util.Times;
 import okhttp3.Cache;
+import okhttp3.CacheControl;
 import okhttp3.Call;
+import okhttp3.Callback;
 import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
 import okhttp3.FormBody;
+import okhttp3.Interceptor;
 import okhttp3.MediaType;
 import okhttp3.MultipartBody;
 import okhttp3.OkHttpClient;
@@ -28,32 +34,50 @@ import org.slf4j.LoggerFactory;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.NotThreadSafe;
 import javax.annotation.concurrent.ThreadSafe;
-import java.io.ByteArrayOutputStream;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.io.Reader;
+import java.lang.reflect.Type;
 import java.net.ProxySelector;
 import java.net.SocketException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
 import java.nio.file.Files;
 import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Deque;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Function;
-import java.util.zip.DeflaterInputStream;
 import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
 
 /**
  * HTTP 客户端组件.
@@ -67,6 +91,8 @@ public class HttpClientAssist implements Closeable {
 	private final HttpClientConfig hcc;
 	private final OkHttpClient client;
 	private final AtomicBoolean closeFlag = new AtomicBoolean(false);
+	private final AtomicLong cacheHits = new AtomicLong(), cacheRevalidations = new AtomicLong(),
+			cacheMisses = new AtomicLong();
 	
 	public HttpClientAssist() {
 		this(null, null);
@@ -82,12 +108,164 @@ public class HttpClientAssist implements Closeable {
 		final OkHttpClient.Builder builder = new OkHttpClient.Builder()
 				.connectTimeout(hcc.connectionTimeout, TimeUnit.MILLISECONDS)
 				.readTimeout(hcc.soTimeout, TimeUnit.MILLISECONDS)
-				.connectionPool(new ConnectionPool(hcc.maxIdolConnections, hcc.connPoolKeepAliveSec, TimeUnit.SECONDS))
+				.connectionPool(new ConnectionPool(maxIdleConnections(hcc), hcc.connPoolKeepAliveSec, TimeUnit.SECONDS))
 				.proxySelector(ObjectUtils.firstNonNull(proxySelector, ProxySelector.getDefault()))
 				.cookieJar(hcc.cookieJar);
 		if (hcc.eventListener != null)
 			builder.eventListener(hcc.eventListener);
+		if (hcc.dns != null)
+			builder.dns(hcc.dns);
+		if (Colls.isNotEmpty(hcc.protocols))
+			builder.protocols(hcc.protocols);
+		Dispatcher dispatcher = new Dispatcher();
+		dispatcher.setMaxRequests(hcc.maxAsyncRequests);
+		dispatcher.setMaxRequestsPerHost(hcc.maxAsyncRequestsPerHost);
+		builder.dispatcher(dispatcher);
+		if (hcc.cacheDir != null)
+			builder.cache(new Cache(hcc.cacheDir, hcc.cacheMaxBytes))
+			       .addInterceptor(this::cacheIntercept);
 		client = builder.build();
+		
+		if (Colls.isNotEmpty(hcc.warmUpConnections))
+			hcc.warmUpConnections.forEach((url, n) -> warmUp(n, url));
+	}
+	
+	private static int maxIdleConnections(HttpClientConfig hcc) {
+		int warmUp = hcc.warmUpConnections == null ? 0 :
+				hcc.warmUpConnections.values().stream().mapToInt(Integer::intValue).sum();
+		return Math.max(hcc.maxIdolConnections, warmUp);
+	}
+	
+	/**
+	 * open connections to the urls' hosts ahead of requests, so first requests won't wait for handshakes.
+	 * for each url, <code>connectionsPerHost</code> HEAD requests are sent at the same time,
+	 * then the connections go idle in pool, and are evicted after {@link HttpClientConfig#connPoolKeepAliveSec}.
+	 * an http/2 connection is shared by requests, so only one is opened for a http/2 host.
+	 *
+	 * @return future of connections opened.
+	 * @see HttpClientConfig#warmUpConnections
+	 */
+	public CompletableFuture<Integer> warmUp(int connectionsPerHost, String... urls) {
+		int total = connectionsPerHost * urls.length;
+		CompletableFuture<Integer> result = new CompletableFuture<>();
+		if (total < 1) {
+			result.complete(0);
+			return result;
+		}
+		
+		// requests of a host run at the same time, so each takes its own connection
+		Dispatcher dispatcher = new Dispatcher(client.dispatcher().executorService());
+		dispatcher.setMaxRequests(total);
+		dispatcher.setMaxRequestsPerHost(connectionsPerHost);
+		OkHttpClient warmUpClient = client.newBuilder().dispatcher(dispatcher).build();
+		
+		List<Response> opened = new ArrayList<>();
+		AtomicInteger arrived = new AtomicInteger();
+		Callback callback = new Callback() {
+			@Override
+			public void onFailure(Call call, IOException e) {
+				log.warn("warm-up-connection-fail, exp={}, url={}", e, call.request().url());
+				arrive(null);
+			}
+			
+			@Override
+			public void onResponse(Call call, Response rsp) {
+				arrive(rsp);
+			}
+			
+			/**
+			 * responses hold their connections until all arrived.
+			 */
+			private void arrive(@Nullable Response rsp) {
+				synchronized (opened) {
+					if (rsp != null)
+						opened.add(rsp);
+					if (arrived.incrementAndGet() < total)
+						return;
+					opened.forEach(Response::close);
+				}
+				result.complete(opened.size());
+			}
+		};
+		try {
+			for (String url : urls) {
+				for (int i = 0; i < connectionsPerHost; i++)
+					warmUpClient.newCall(prepareRequest(new Request.Builder().url(url).head(), null).build())
+					            .enqueue(callback);
+			}
+		} catch (Exception e) {
+			result.completeExceptionally(e);
+		}
+		return result;
+	}
+	
+	/**
+	 * connections in pool, including idle ones.
+	 */
+	public int getConnectionCount() {
+		return client.connectionPool().connectionCount();
+	}
+	
+	/**
+	 * idle connections in pool.
+	 */
+	public int getIdleConnectionCount() {
+		return client.connectionPool().idleConnectionCount();
+	}
+	
+	private static final CacheControl PREFER_CACHE =
+			new CacheControl.Builder().maxStale(Integer.MAX_VALUE, TimeUnit.SECONDS).build();
+	private static final CacheControl NO_STORE = new CacheControl.Builder().noStore().build();
+	
+	/**
+	 * adjust cache control of request, and count cache usage.
+	 */
+	private Response cacheIntercept(Interceptor.Chain chain) throws IOException {
+		Request req = chain.request();
+		if (!"GET".equals(req.method()))
+			return chain.proceed(req);
+		
+		if (req.header(HttpHeaders.RANGE) != null) {
+			// okhttp cache doesn't support partial content, and may respond full content to a range request
+			req = req.newBuilder().cacheControl(NO_STORE).build();
+		} else if (hcc.preferCache && req.header(HttpHeaders.CACHE_CONTROL) == null)
+			req = req.newBuilder().cacheControl(PREFER_CACHE).build();
+		
+		Response rsp = chain.proceed(req);
+		Response networkRsp = rsp.networkResponse();
+		if (networkRsp == null) {
+			if (rsp.cacheResponse() != null)
+				cacheHits.incrementAndGet();
+		} else if (networkRsp.code() == 304 && rsp.cacheResponse() != null)
+			cacheRevalidations.incrementAndGet();
+		else
+			cacheMisses.incrementAndGet();
+		return rsp;
+	}
+	
+	/**
+	 * get requests responded by disk cache without network access.
+	 * see {@link HttpClientConfig#cacheDir}
+	 */
+	public long getCacheHits() {
+		return cacheHits.get();
+	}
+	
+	/**
+	 * get requests responded by disk cache after conditional network access which returns 304,
+	 * response content is not transferred.
+	 * see {@link HttpClientConfig#cacheDir}
+	 */
+	public long getCacheRevalidations() {
+		return cacheRevalidations.get();
+	}
+	
+	/**
+	 * get requests responded by network with full content.
+	 * see {@link HttpClientConfig#cacheDir}
+	 */
+	public long getCacheMisses() {
+		return cacheMisses.get();
 	}
 	
 	/**
@@ -123,6 +301,11 @@ public class HttpClientAssist implements Closeable {
 	 * @throws IOException 连接异常.
 	 */
 	public UrlEntity access(String url, Map<String, ?> headers, Map<String, ?> params) throws IOException {
+		Request.Builder rb = new Request.Builder().url(appendParams(url, params));
+		return access(rb, headers);
+	}
+	
+	private static String appendParams(String url, @Nullable Map<String, ?> params) {
 		if (params != null && params.size() > 0) {
 			StringBuilder usb = new StringBuilder(url);
 			if (!url.contains("?")) {
@@ -138,9 +321,39 @@ public class HttpClientAssist implements Closeable {
 			}
 			url = usb.toString();
 		}
-		
-		Request.Builder rb = new Request.Builder().url(url);
-		return access(rb, headers);
+		return url;
+	}
+	
+	/**
+	 * get url entity by get method asynchronously, the request is executed by okhttp dispatcher,
+	 * caller thread won't be blocked. cancel the future will cancel the request.<br/>
+	 * WARNING: the entity must be closed in time,
+	 * because an unclosed entity will hold a connection from connection-pool.
+	 *
+	 * @see #access(String)
+	 */
+	public CompletableFuture<UrlEntity> accessAsync(String url) {
+		return accessAsync(url, null);
+	}
+	
+	/**
+	 * get url entity by get method asynchronously. see {@link #accessAsync(String)}
+	 *
+	 * @param headers request headers, can be null. use header name in {@link com.google.common.net.HttpHeaders}
+	 */
+	public CompletableFuture<UrlEntity> accessAsync(String url, @Nullable Map<String, ?> headers) {
+		return accessAsync(new Request.Builder().url(url), headers);
+	}
+	
+	/**
+	 * get url entity by get method asynchronously. see {@link #accessAsync(String)}
+	 *
+	 * @param headers request headers, can be null. use header name in {@link com.google.common.net.HttpHeaders}
+	 * @param params  request params, can be null.
+	 */
+	public CompletableFuture<UrlEntity> accessAsync(
+			String url, @Nullable Map<String, ?> headers, @Nullable Map<String, ?> params) {
+		return accessAsync(new Request.Builder().url(appendParams(url, params)), headers);
 	}
 	
 	/**
@@ -210,6 +423,30 @@ public class HttpClientAssist implements Closeable {
 	public UrlEntity accessPostUrlEncodedForm(
 			String url, @Nullable Map<String, ?> headers, @Nullable Map<String, ?> params,
 			@Nullable Charset enc) throws IOException {
+		return access(urlEncodedFormRequest(url, params, enc), headers);
+	}
+	
+	/**
+	 * post url encoded data asynchronously. see {@link #accessAsync(String)}
+	 *
+	 * @see #accessPostUrlEncodedForm(String, Map, Map, Charset)
+	 */
+	public CompletableFuture<UrlEntity> accessPostUrlEncodedFormAsync(
+			String url, @Nullable Map<String, ?> headers, @Nullable Map<String, ?> params) {
+		return accessPostUrlEncodedFormAsync(url, headers, params, null);
+	}
+	
+	/**
+	 * post url encoded data asynchronously. see {@link #accessAsync(String)}
+	 *
+	 * @see #accessPostUrlEncodedForm(String, Map, Map, Charset)
+	 */
+	public CompletableFuture<UrlEntity> accessPostUrlEncodedFormAsync(
+			String url, @Nullable Map<String, ?> headers, @Nullable Map<String, ?> params, @Nullable Charset enc) {
+		return accessAsync(urlEncodedFormRequest(url, params, enc), headers);
+	}
+	
+	private static Request.Builder urlEncodedFormRequest(String url, @Nullable Map<String, ?> params, @Nullable Charset enc) {
 		Request.Builder rb = new Request.Builder().url(url);
 		if (Colls.isNotEmpty(params)) {
 			FormBody.Builder fb = new FormBody.Builder(enc);
@@ -218,7 +455,7 @@ public class HttpClientAssist implements Closeable {
 			}
 			rb.post(fb.build());
 		}
-		return access(rb, headers);
+		return rb;
 	}
 	
 	/**
@@ -232,6 +469,20 @@ public class HttpClientAssist implements Closeable {
 	 */
 	public UrlEntity accessPostBytes(
 			String url, @Nullable Map<String, String> headers, @Nullable byte[] buf) throws IOException {
+		return access(postBytesRequest(url, headers, buf), headers);
+	}
+	
+	/**
+	 * post raw content asynchronously. see {@link #accessAsync(String)}
+	 *
+	 * @see #accessPostBytes(String, Map, byte[])
+	 */
+	public CompletableFuture<UrlEntity> accessPostBytesAsync(
+			String url, @Nullable Map<String, String> headers, @Nullable byte[] buf) {
+		return accessAsync(postBytesRequest(url, headers, buf), headers);
+	}
+	
+	private static Request.Builder postBytesRequest(String url, @Nullable Map<String, String> headers, @Nullable byte[] buf) {
 		Request.Builder rb = new Request.Builder().url(url);
 		if (buf != null) {
 			String contentTypeHeader = Htmls.MIME_STREAM;
@@ -242,7 +493,7 @@ public class HttpClientAssist implements Closeable {
 				                           .findAny().orElse(contentTypeHeader);
 			rb.post(RequestBody.Companion.create(buf, MediaType.get(contentTypeHeader)));
 		}
-		return access(rb, headers);
+		return rb;
 	}
 	
 	/**
@@ -259,6 +510,42 @@ public class HttpClientAssist implements Closeable {
 			throw new InterruptedIOException("access interrupted: " + rb.build());
 		}
 		
+		return new UrlEntity(prepareRequest(rb, headers));
+	}
+	
+	/**
+	 * get url entity asynchronously. the future completes when response headers are received,
+	 * and its cancellation cancels the call.
+	 */
+	private CompletableFuture<UrlEntity> accessAsync(Request.Builder rb, Map<String, ?> headers) {
+		Request req = prepareRequest(rb, headers).build();
+		Call call = client.newCall(req);
+		CompletableFuture<UrlEntity> future = new CompletableFuture<>();
+		future.whenComplete((ue, t) -> {
+			if (future.isCancelled())
+				call.cancel();
+		});
+		
+		call.enqueue(new Callback() {
+			@Override
+			public void onFailure(Call call, IOException e) {
+				future.completeExceptionally(e);
+			}
+			
+			@Override
+			public void onResponse(Call call, Response rsp) {
+				UrlEntity ue = new UrlEntity(req, call, rsp);
+				if (!future.complete(ue))
+					ue.close();
+			}
+		});
+		return future;
+	}
+	
+	/**
+	 * add config headers and given headers to request.
+	 */
+	private Request.Builder prepareRequest(Request.Builder rb, Map<String, ?> headers) {
 		if (Colls.isNotEmpty(hcc.headers) || Colls.isNotEmpty(headers)) {
 			if (Colls.isEmpty(hcc.headers))
 				for (Map.Entry<String, ?> e : headers.entrySet()) {
@@ -279,8 +566,7 @@ public class HttpClientAssist implements Closeable {
 		
 		rb.addHeader(HttpHeaders.CONNECTION, hcc.isKeepAlive ? "Keep-Alive" : "close");
 		rb.addHeader(HttpHeaders.USER_AGENT, hcc.userAgent);
-		
-		return new UrlEntity(rb);
+		return rb;
 	}
 	
 	public boolean isClosed() {
@@ -291,10 +577,13 @@ public class HttpClientAssist implements Closeable {
 	public void close() {
 		if (closeFlag.compareAndSet(false, true)) {
 			try {
+				// queued and later async calls fail, running ones go on
+				client.dispatcher().executorService().shutdown();
 				client.connectionPool().evictAll();
+				// disk cache is kept for later clients
 				Cache cache = client.cache();
 				if (cache != null)
-					cache.delete();
+					cache.close();
 			} catch (Exception e) {
 				log.error("hca close error", e);
 			}
@@ -314,9 +603,7 @@ public class HttpClientAssist implements Closeable {
 			String url, @Nullable Map<String, ?> headers, File file, boolean overwrite, @Nullable Function<Integer, Boolean> stopChk
 	) {
 		File writableFile = overwrite ? file : FilesUtil.getWritableFile(file);
-		File writeFile = new File(writableFile.getPath() + ".~write~");
-		if (!file.getParentFile().exists())
-			file.getParentFile().mkdirs();
+		File writeFile = writeFileOf(writableFile);
 		
 		Map<String, Object> accHeaders = headers == null ? new HashMap<>() : new HashMap<>(headers);
 		boolean supportResume = true, result = false;
@@ -329,9 +616,7 @@ public class HttpClientAssist implements Closeable {
 			accHeaders.put(HttpHeaders.RANGE, "bytes=" + writeFile.length() + "-");
 			
 			try (UrlEntity ue = this.access(url, accHeaders)) {
-				String rhAcceptRanges = ue.rsp.header(HttpHeaders.ACCEPT_RANGES);
-				String rhContentRange = ue.rsp.header(HttpHeaders.CONTENT_RANGE);
-				supportResume = Strings.isNotBlank(rhAcceptRanges) && !"none".equals(rhAcceptRanges) || Strings.isNotBlank(rhContentRange);
+				supportResume = supportResume(ue);
 				
 				if (ue.getStatusCode() >= 400) {
 					log.error("download-file-fail, status={}, url={}", ue.getStatusCode(), url);
@@ -353,9 +638,173 @@ public class HttpClientAssist implements Closeable {
 				}
 			}
 			
-			Times.sleepNoExp(5000);
+			Times.sleepNoExp(DOWNLOAD_RETRY_DELAY_MILLIS);
+		}
+		
+		return completeDownload(result, writableFile, writeFile, url);
+	}
+	
+	/**
+	 * download big resource and save to file, in parallel ranged segments if server supports,
+	 * or sequentially as {@link #saveDirectlyToFile(String, Map, File, boolean, Function)}.
+	 * interrupted download resumes from persisted progress of segments, see {@link SegmentedDownload}.
+	 *
+	 * @param headers     can be null
+	 * @param overwrite   overwrite exist file or rename new file
+	 * @param parallelism max segments downloading at the same time, segment is at least 1MB
+	 * @param stopChk     check stop download or not: check(retryTimes).
+	 * @return write successfully or not
+	 */
+	public boolean saveDirectlyToFile(
+			String url, @Nullable Map<String, ?> headers, File file, boolean overwrite, int parallelism,
+			@Nullable Function<Integer, Boolean> stopChk
+	) {
+		if (parallelism < 2)
+			return saveDirectlyToFile(url, headers, file, overwrite, stopChk);
+		
+		File writableFile = overwrite ? file : FilesUtil.getWritableFile(file);
+		// preallocated file of segments can't be resumed sequentially, so they don't share the write file
+		File writeFile = segmentedWriteFileOf(writableFile);
+		SegmentedDownload sd = new SegmentedDownload(this, url, headers, writeFile, parallelism, stopChk);
+		Boolean result = sd.run();
+		if (result == null) {
+			log.info("ranged-download-unsupported, download sequentially, url={}", url);
+			sd.discard();
+			return saveDirectlyToFile(url, headers, writableFile, true, stopChk);
+		}
+		return completeDownload(result, writableFile, writeFile, url);
+	}
+	
+	static final int DOWNLOAD_RETRY_DELAY_MILLIS = 5000;
+	private static final ScheduledExecutorService downloadRetryScheduler =
+			Executors.newSingleThreadScheduledExecutor(r -> {
+				Thread t = new Thread(r, "HttpClientAssist-download-retry");
+				t.setDaemon(true);
+				return t;
+			});
+	
+	/**
+	 * download big resource and save to file asynchronously, without blocking caller thread.
+	 * the download runs in okhttp dispatcher, retries are delayed without holding a thread.
+	 * cancel the future will cancel the download.
+	 *
+	 * @return future of write successfully or not
+	 * @see #saveDirectlyToFile(String, Map, File, boolean, Function)
+	 */
+	public CompletableFuture<Boolean> saveDirectlyToFileAsync(
+			String url, @Nullable Map<String, ?> headers, File file, boolean overwrite, @Nullable Function<Integer, Boolean> stopChk
+	) {
+		File writableFile = overwrite ? file : FilesUtil.getWritableFile(file);
+		File writeFile = writeFileOf(writableFile);
+		CompletableFuture<Boolean> result = new CompletableFuture<>();
+		new AsyncDownload(url, headers, writableFile, writeFile, stopChk, result).attempt();
+		return result;
+	}
+	
+	/**
+	 * state of an async download, attempts run one after another.
+	 */
+	private final class AsyncDownload {
+		private final String url;
+		private final Map<String, Object> accHeaders;
+		private final File writableFile, writeFile;
+		private final Function<Integer, Boolean> stopChk;
+		private final CompletableFuture<Boolean> result;
+		private volatile Call current;
+		private boolean supportResume = true;
+		private int retryTimes;
+		
+		AsyncDownload(String url, @Nullable Map<String, ?> headers, File writableFile, File writeFile,
+		              @Nullable Function<Integer, Boolean> stopChk, CompletableFuture<Boolean> result) {
+			this.url = url;
+			this.accHeaders = headers == null ? new HashMap<>() : new HashMap<>(headers);
+			this.writableFile = writableFile;
+			this.writeFile = writeFile;
+			this.stopChk = stopChk;
+			this.result = result;
+			result.whenComplete((r, t) -> {
+				Call c = current;
+				if (result.isCancelled() && c != null)
+					c.cancel();
+			});
+		}
+		
+		void attempt() {
+			if (result.isDone())
+				return;
+			if (closeFlag.get() || stopChk != null && Objects.equals(Boolean.TRUE, stopChk.apply(retryTimes))) {
+				complete(false);
+				return;
+			}
+			accHeaders.put(HttpHeaders.RANGE, "bytes=" + writeFile.length() + "-");
+			Request req = prepareRequest(new Request.Builder().url(url), accHeaders).build();
+			Call call = current = client.newCall(req);
+			if (result.isCancelled())
+				call.cancel();
+			// content is downloaded in the callback, so the dispatcher limits cover downloading
+			call.enqueue(new Callback() {
+				@Override
+				public void onFailure(Call call, IOException e) {
+					retry(e);
+				}
+				
+				@Override
+				public void onResponse(Call call, Response rsp) {
+					try (UrlEntity ue = new UrlEntity(req, call, rsp)) {
+						supportResume = supportResume(ue);
+						if (ue.getStatusCode() >= 400) {
+							log.error("download-file-fail, status={}, url={}", ue.getStatusCode(), url);
+							complete(false);
+						} else
+							complete(ue.downloadDirectlyToFile(writeFile, retryTimes, stopChk));
+					} catch (Exception e) {
+						retry(e);
+					}
+				}
+			});
 		}
 		
+		private void retry(Throwable t) {
+			if (result.isDone())
+				return;
+			retryTimes++;
+			if (writeFile.length() == 0) {
+				log.error("download-file-with-exp, exp={}, url={}", t, url);
+				complete(false);
+			} else if (supportResume) {
+				log.info("resume-breakpoint, exp={}, url={}", t, url);
+				downloadRetryScheduler.schedule(this::attempt, DOWNLOAD_RETRY_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+			} else {
+				log.error("download-file-exp,no-breakpoint-resume-support, exp={}, url={}", t, url);
+				complete(false);
+			}
+		}
+		
+		private void complete(boolean r) {
+			if (!result.isDone())
+				result.complete(completeDownload(r, writableFile, writeFile, url));
+		}
+	}
+	
+	private static File writeFileOf(File writableFile) {
+		if (!writableFile.getParentFile().exists())
+			writableFile.getParentFile().mkdirs();
+		return new File(writableFile.getPath() + ".~write~");
+	}
+	
+	private static File segmentedWriteFileOf(File writableFile) {
+		if (!writableFile.getParentFile().exists())
+			writableFile.getParentFile().mkdirs();
+		return new File(writableFile.getPath() + ".~segwrite~");
+	}
+	
+	private static boolean supportResume(UrlEntity ue) {
+		String rhAcceptRanges = ue.rsp.header(HttpHeaders.ACCEPT_RANGES);
+		String rhContentRange = ue.rsp.header(HttpHeaders.CONTENT_RANGE);
+		return Strings.isNotBlank(rhAcceptRanges) && !"none".equals(rhAcceptRanges) || Strings.isNotBlank(rhContentRange);
+	}
+	
+	private static boolean completeDownload(boolean result, File writableFile, File writeFile, String url) {
 		if (result) {
 			writableFile.delete();
 			writeFile.renameTo(writableFile);
@@ -497,15 +946,28 @@ public class HttpClientAssist implements Closeable {
 	}
 	
 	private static final byte[] EMPTY_BUF = new byte[0];
-	private static final int DOWNLOAD_BUF_LEN = 100_000;
-	private static final ThreadLocal<byte[]> threadDownloadBuf = new ThreadLocal<>();
+	/**
+	 * max buffer allocated ahead by content-length.
+	 */
+	private static final int MAX_ENTITY_PRE_ALLOC = 16 * 1024 * 1024;
+	private static final int DOWNLOAD_BUF_LEN = 64 * 1024;
+	private static final int ENTITY_BUF_INIT_LEN = 8 * 1024;
+	/**
+	 * max array length the vm supports.
+	 */
+	private static final int MAX_ENTITY_LEN = Integer.MAX_VALUE - 8;
+	/**
+	 * download chunks and growing entity buffers, shared by all clients.
+	 * entity content is copied out of it at last, because it's exposed by {@link UrlEntity#getEntityBuf()}.
+	 */
+	private static final BytesPool bufPool = new BytesPool(ENTITY_BUF_INIT_LEN, 1024 * 1024, 4 * 1024 * 1024);
 	
-	private static byte[] getDownloadBuf() {
-		byte[] buf = threadDownloadBuf.get();
-		if (buf == null) {
-			threadDownloadBuf.set(buf = new byte[DOWNLOAD_BUF_LEN]);
-		}
-		return buf;
+	/**
+	 * consumer of entity content chunks.
+	 */
+	@FunctionalInterface
+	public interface ChunkConsumer {
+		void accept(byte[] buf, int off, int len) throws IOException;
 	}
 	
 	@NotThreadSafe
@@ -519,27 +981,40 @@ public class HttpClientAssist implements Closeable {
 		private byte[] entityBuf;
 		private String entityStr;
 		private Charset entityEncoding;
+		private Object json;
 		private boolean closed;
+		/**
+		 * whether the content is consumed by stream.
+		 */
+		private boolean streamed;
 		
 		public UrlEntity(Request.Builder rb) throws IOException {
-			try {
-				Request req = rb.build();
-				// can't lazy init, because it changes after rb.execute() on any 302 relocation
-				reqUrl = req.url().toString();
-				
-				call = client.newCall(req);
-				rsp = call.execute();
-				
-				int statusCode = rsp.code();
-				if (statusCode >= 400) {
-					log.warn("access unsuccessful, status={}, msg={}, req={}, curr={}",
-							statusCode, rsp.message(), this.reqUrl, this.getCurrentURL());
-				}
-				contentType = rsp.body() != null ? rsp.body().contentType() : null;
-			} catch (IOException e) {
-				this.close();
-				throw e;
+			this(rb.build());
+		}
+		
+		private UrlEntity(Request req) throws IOException {
+			this(req, client.newCall(req));
+		}
+		
+		private UrlEntity(Request req, Call call) throws IOException {
+			this(req, call, call.execute());
+		}
+		
+		/**
+		 * wrap the response of an executed call.
+		 */
+		private UrlEntity(Request req, Call call, Response rsp) {
+			// can't lazy init, because it changes after rb.execute() on any 302 relocation
+			this.reqUrl = req.url().toString();
+			this.call = call;
+			this.rsp = rsp;
+			
+			int statusCode = rsp.code();
+			if (statusCode >= 400) {
+				log.warn("access unsuccessful, status={}, msg={}, req={}, curr={}",
+						statusCode, rsp.message(), this.reqUrl, this.getCurrentURL());
 			}
+			contentType = rsp.body() != null ? rsp.body().contentType() : null;
 		}
 		
 		/**
@@ -673,52 +1148,89 @@ public class HttpClientAssist implements Closeable {
 		 * buf then convert to string. the buf is saved and can be reused.
 		 */
 		public synchronized String getEntityStr() throws IOException {
-			if (entityStr != null) {
-				return entityStr;
+			if (entityStr == null) {
+				entityStr = decodeEntity();
 			}
 			
-			downloadEntityAndParseEncoding();
-			entityStr = new String(entityBuf, entityEncoding);
-			if (isJson())
-				entityStr = JSON.parse(entityStr).toString();
-			
 			return entityStr;
 		}
 		
-		public synchronized JSONObject getJsonObj() throws IOException {
-			if (entityStr == null) {
-				downloadEntityAndParseEncoding();
-				entityStr = new String(entityBuf, entityEncoding);
+		/**
+		 * parse json content to {@link JSONObject} or {@link JSONArray}, from the downloaded buf directly
+		 * if it's not decoded to string yet. the json is parsed only once.
+		 * NOTICE: the result is not copied, so it should be READ-ONLY.
+		 */
+		@Nullable
+		public synchronized Object getJson() throws IOException {
+			if (json == null) {
+				if (entityStr != null) {
+					json = JSON.parse(entityStr);
+				} else {
+					downloadEntityAndParseEncoding();
+					json = JSON.parse(entityBuf, 0, entityBuf.length, entityEncoding.newDecoder(), JSON.DEFAULT_PARSER_FEATURE);
+				}
 			}
-			
-			return JSON.parseObject(entityStr);
+			return json;
+		}
+		
+		/**
+		 * parse json content to given type, from the downloaded buf directly if it's not decoded to string yet.
+		 * the result is not cached.
+		 */
+		@Nullable
+		public synchronized <T> T getJson(Type type) throws IOException {
+			if (entityStr != null)
+				return JSON.parseObject(entityStr, type);
+			downloadEntityAndParseEncoding();
+			return JSON.parseObject(entityBuf, 0, entityBuf.length, entityEncoding, type);
+		}
+		
+		/**
+		 * see {@link #getJson()}
+		 *
+		 * @throws JSONException content is not json object.
+		 */
+		@Nullable
+		public synchronized JSONObject getJsonObj() throws IOException {
+			Object json = getJson();
+			if (json == null || json instanceof JSONObject)
+				return (JSONObject) json;
+			throw new JSONException("not json object: " + reqUrl);
 		}
 		
+		/**
+		 * see {@link #getJson()}
+		 *
+		 * @throws JSONException content is not json array.
+		 */
+		@Nullable
 		public synchronized JSONArray getJsonArray() throws IOException {
-			if (entityStr == null) {
-				downloadEntityAndParseEncoding();
-				entityStr = new String(entityBuf, entityEncoding);
+			Object json = getJson();
+			if (json == null || json instanceof JSONArray)
+				return (JSONArray) json;
+			throw new JSONException("not json array: " + reqUrl);
+		}
+		
+		/**
+		 * decode entity to string. if the entity is not downloaded yet, it's decoded while downloading.
+		 */
+		private String decodeEntity() throws IOException {
+			if (entityBuf == null) {
+				EntityDecoder decoder = new EntityDecoder(contentType != null ? contentType.charset() : null);
+				downloadEntity(decoder);
+				return decoder.finish();
 			}
-			
-			return JSON.parseArray(entityStr);
+			downloadEntityAndParseEncoding();
+			return new String(entityBuf, entityEncoding);
 		}
 		
 		private void downloadEntityAndParseEncoding() throws IOException {
 			downloadEntity2Buf();
 			
 			if (this.entityEncoding == null) {
-				
-				Charset enc = null;
-				if (contentType != null) {
-					enc = contentType.charset();
-				}
-				if (enc == null) {
-					enc = Encodings.findHtmlEncoding(entityBuf);
-				}
-				if (enc == null) {
-					enc = Encodings.isUTF8Bytes(entityBuf) ? Encodings.UTF_8 : Encodings.GBK;
-				}
-				this.entityEncoding = enc;
+				CharsetSniffer sniffer = new CharsetSniffer(contentType != null ? contentType.charset() : null);
+				sniffer.feed(entityBuf, 0, entityBuf.length);
+				this.entityEncoding = sniffer.finish();
 			}
 		}
 		
@@ -730,56 +1242,264 @@ public class HttpClientAssist implements Closeable {
 			return this.entityEncoding;
 		}
 		
-		private final ThreadLocal<byte[]> decompressBuf = ThreadLocal.withInitial(() -> new byte[100_000]);
-		
 		/**
 		 * download entire entity to memory. download will run only once.
 		 */
 		public synchronized void downloadEntity2Buf() throws IOException {
 			if (entityBuf == null) {
-				try {
-					String contentEncoding = rsp.header(HttpHeaders.CONTENT_ENCODING);
-					if (rsp.body() != null) {
-						if (contentEncoding == null || Strings.isBlank(contentEncoding) || contentEncoding.equals("identity")) {
-							entityBuf = rsp.body().bytes();
-						} else {
-							InputStream bodyStream = rsp.body().byteStream();
-							boolean decompress = true;
-							switch (contentEncoding) {
-								case "gzip":
-									bodyStream = new GZIPInputStream(bodyStream);
-									break;
-								case "deflate":
-									bodyStream = new DeflaterInputStream(bodyStream);
-									break;
-								case "br":
-									bodyStream = new BrotliCompressorInputStream(bodyStream);
-									break;
-								default:
-									log.warn("unknown-http-contentEncoding:{}, use response directly", contentEncoding);
-									decompress = false;
-									entityBuf = rsp.body().bytes();
-							}
-							
-							if (decompress) {
-								byte[] buf = decompressBuf.get();
-								int len;
-								ByteArrayOutputStream out = new ByteArrayOutputStream();
-								while ((len = bodyStream.read(buf)) > 0) {
-									out.write(buf, 0, len);
+				downloadEntity(null);
+			}
+		}
+		
+		/**
+		 * @return decompressed stream, or the stream itself if content encoding is unknown.
+		 */
+		private InputStream decompress(InputStream in, String contentEncoding) throws IOException {
+			switch (contentEncoding) {
+				case "gzip":
+					return new GZIPInputStream(in);
+				case "deflate":
+					return new InflaterInputStream(in);
+				case "br":
+					return new BrotliCompressorInputStream(in);
+				default:
+					log.warn("unknown-http-contentEncoding:{}, use response directly", contentEncoding);
+					return in;
+			}
+		}
+		
+		/**
+		 * @param decoder decode text while downloading, optional.
+		 */
+		private void downloadEntity(@Nullable EntityDecoder decoder) throws IOException {
+			if (streamed)
+				throw new IllegalStateException("entity is consumed by stream: " + reqUrl);
+			try {
+				String contentEncoding = rsp.header(HttpHeaders.CONTENT_ENCODING);
+				if (rsp.body() != null) {
+					boolean identity = contentEncoding == null || Strings.isBlank(contentEncoding) || contentEncoding.equals("identity");
+					if (identity && decoder == null) {
+						entityBuf = rsp.body().bytes();
+					} else {
+						InputStream rawStream = rsp.body().byteStream();
+						InputStream bodyStream = identity ? rawStream : decompress(rawStream, contentEncoding);
+						identity = bodyStream == rawStream;
+						
+						long contentLength = identity ? rsp.body().contentLength() : -1;
+						// exact buffer if length is known, otherwise grows in pooled buffers
+						boolean pooled = contentLength <= 0 || contentLength >= MAX_ENTITY_PRE_ALLOC;
+						byte[] buf = pooled ? bufPool.acquire(ENTITY_BUF_INIT_LEN) : new byte[(int) contentLength];
+						int len = 0, rl;
+						try {
+							while (true) {
+								if (len == buf.length) {
+									// probe eof before growing, so an exact buffer of known length is kept as is
+									int b = bodyStream.read();
+									if (b < 0)
+										break;
+									if (len == MAX_ENTITY_LEN)
+										throw new IOException("entity too large: " + reqUrl);
+									byte[] nb = bufPool.acquire(len > MAX_ENTITY_LEN / 2 ? MAX_ENTITY_LEN : len * 2);
+									System.arraycopy(buf, 0, nb, 0, len);
+									if (pooled)
+										bufPool.release(buf);
+									buf = nb;
+									pooled = true;
+									buf[len] = (byte) b;
+									if (decoder != null)
+										decoder.onChunk(buf, len, 1);
+									len++;
 								}
-								entityBuf = out.toByteArray();
+								if ((rl = bodyStream.read(buf, len, buf.length - len)) < 0)
+									break;
+								if (decoder != null)
+									decoder.onChunk(buf, len, rl);
+								len += rl;
 							}
+							entityBuf = !pooled && len == buf.length ? buf : Arrays.copyOf(buf, len);
+						} finally {
+							if (pooled)
+								bufPool.release(buf);
+							// release inflater
+							if (!identity)
+								bodyStream.close();
 						}
 					}
-					
-					entityBuf = entityBuf == null ? EMPTY_BUF : entityBuf;
-				} catch (IllegalStateException e) {
-					throw new SocketException(e.toString());
 				}
+				
+				entityBuf = entityBuf == null ? EMPTY_BUF : entityBuf;
+				if (decoder != null)
+					decoder.onEnd(entityBuf);
+			} catch (IllegalStateException e) {
+				throw new SocketException(e.toString());
 			}
 		}
 		
+		/**
+		 * detects charset from the first chunks, then decodes the rest chunks as they're downloaded,
+		 * into one char array sized by content length, which the string is built from at last.
+		 */
+		private final class EntityDecoder {
+			private final CharsetSniffer sniffer;
+			private CharsetDecoder decoder;
+			private char[] chars;
+			private CharBuffer out;
+			/**
+			 * bytes before this position are decoded.
+			 */
+			private int decodedPos;
+			private String str;
+			
+			EntityDecoder(@Nullable Charset declared) {
+				sniffer = new CharsetSniffer(declared);
+			}
+			
+			void onChunk(byte[] buf, int off, int len) {
+				Charset enc = sniffer.feed(buf, off, len);
+				if (enc == null)
+					return;
+				if (decoder == null) {
+					decoder = enc.newDecoder()
+					             .onMalformedInput(CodingErrorAction.REPLACE)
+					             .onUnmappableCharacter(CodingErrorAction.REPLACE);
+					long contentLength = getContentLength();
+					long cap = contentLength > 0 ? (long) Math.ceil(contentLength * decoder.maxCharsPerByte()) : ENTITY_BUF_INIT_LEN;
+					chars = new char[(int) Math.max(16, Math.min(MAX_ENTITY_PRE_ALLOC, cap))];
+					out = CharBuffer.wrap(chars);
+				}
+				decode(buf, off + len, false);
+			}
+			
+			private void decode(byte[] buf, int end, boolean endOfInput) {
+				// an incomplete char at the end is left to next chunk
+				ByteBuffer in = ByteBuffer.wrap(buf, decodedPos, end - decodedPos);
+				while (decoder.decode(in, out, endOfInput).isOverflow())
+					grow(in.remaining());
+				if (endOfInput)
+					while (decoder.flush(out).isOverflow())
+						grow(0);
+				decodedPos = in.position();
+			}
+			
+			/**
+			 * enlarge char array for the remaining bytes, at least by half.
+			 */
+			private void grow(int remainingBytes) {
+				int pos = out.position();
+				if (pos == MAX_ENTITY_LEN)
+					throw new IllegalStateException("entity too large: " + reqUrl);
+				long need = pos + 16 + (long) Math.ceil(remainingBytes * decoder.maxCharsPerByte());
+				chars = Arrays.copyOf(chars, (int) Math.min(MAX_ENTITY_LEN, Math.max(need, chars.length + (chars.length >> 1))));
+				out = CharBuffer.wrap(chars);
+				out.position(pos);
+			}
+			
+			void onEnd(byte[] entity) {
+				Charset enc = sniffer.finish();
+				entityEncoding = enc;
+				if (decoder == null || !decoder.charset().equals(enc)) {
+					// content too short to decide charset while downloading, or the guess is revised
+					str = new String(entity, enc);
+				} else {
+					decode(entity, entity.length, true);
+					str = new String(chars, 0, out.position());
+					chars = null;
+				}
+			}
+			
+			String finish() {
+				return str;
+			}
+		}
+		
+		/**
+		 * entity content stream, decompressed as content-encoding indicates, to process large content in
+		 * constant memory. the content is read from network directly, so it can be consumed only once,
+		 * and whole content accessors like {@link #getEntityBuf()} can't be used after that.
+		 * if the content is already downloaded, the stream reads the downloaded buf.
+		 */
+		public synchronized InputStream getEntityStream() throws IOException {
+			if (entityBuf != null)
+				return new ByteArrayInputStream(entityBuf);
+			if (streamed)
+				throw new IllegalStateException("entity is consumed by stream: " + reqUrl);
+			streamed = true;
+			if (rsp.body() == null)
+				return new ByteArrayInputStream(EMPTY_BUF);
+			try {
+				String contentEncoding = rsp.header(HttpHeaders.CONTENT_ENCODING);
+				InputStream in = rsp.body().byteStream();
+				return Strings.isBlank(contentEncoding) || contentEncoding.equals("identity") ? in : decompress(in, contentEncoding);
+			} catch (IllegalStateException e) {
+				throw new SocketException(e.toString());
+			}
+		}
+		
+		/**
+		 * channel of {@link #getEntityStream()}.
+		 */
+		public ReadableByteChannel getEntityChannel() throws IOException {
+			return Channels.newChannel(getEntityStream());
+		}
+		
+		/**
+		 * feed entity content to the consumer chunk by chunk, see {@link #getEntityStream()}.
+		 * the chunk buffer is reused, so it shouldn't be kept by the consumer.
+		 */
+		public void consumeEntity(ChunkConsumer consumer) throws IOException {
+			byte[] buf = bufPool.acquire(DOWNLOAD_BUF_LEN);
+			try (InputStream in = getEntityStream()) {
+				Thread thread = Thread.currentThread();
+				int rl;
+				while ((rl = in.read(buf)) > -1) {
+					if (thread.isInterrupted())
+						throw new InterruptedIOException("consume entity interrupted: " + reqUrl);
+					consumer.accept(buf, 0, rl);
+				}
+			} finally {
+				bufPool.release(buf);
+			}
+		}
+		
+		/**
+		 * reader of entity content decoded incrementally, see {@link #getEntityStream()}.
+		 * charset is decided by content-type, BOM, html meta or utf-8 validity in the first bytes
+		 * ({@link CharsetSniffer}), but unlike {@link #getEntityStr()}, a guess of utf-8 can't be revised
+		 * by the rest content, malformed bytes are replaced.
+		 */
+		public synchronized Reader getEntityReader() throws IOException {
+			if (entityBuf != null) {
+				downloadEntityAndParseEncoding();
+				return new InputStreamReader(new ByteArrayInputStream(entityBuf), entityEncoding);
+			}
+			
+			InputStream in = getEntityStream();
+			CharsetSniffer sniffer = new CharsetSniffer(contentType != null ? contentType.charset() : null);
+			Charset enc = sniffer.getCharset();
+			if (enc == null) {
+				BufferedInputStream bin = new BufferedInputStream(in, ENTITY_BUF_INIT_LEN);
+				bin.mark(CharsetSniffer.DEFAULT_PREFIX_LIMIT);
+				byte[] buf = bufPool.acquire(ENTITY_BUF_INIT_LEN);
+				try {
+					int total = 0, rl;
+					while (enc == null && total < CharsetSniffer.DEFAULT_PREFIX_LIMIT
+							&& (rl = bin.read(buf, 0, Math.min(buf.length, CharsetSniffer.DEFAULT_PREFIX_LIMIT - total))) > -1) {
+						enc = sniffer.feed(buf, 0, rl);
+						total += rl;
+					}
+				} finally {
+					bufPool.release(buf);
+				}
+				if (enc == null)
+					enc = sniffer.finish();
+				bin.reset();
+				in = bin;
+			}
+			return new InputStreamReader(in, enc.newDecoder()
+			                                    .onMalformedInput(CodingErrorAction.REPLACE)
+			                                    .onUnmappableCharacter(CodingErrorAction.REPLACE));
+		}
+		
 		/**
 		 * buf entire entity then write. the buf is saved and can be reused.
 		 */
@@ -843,14 +1563,18 @@ public class HttpClientAssist implements Closeable {
 			     InputStream is = rsp.body().byteStream()) {
 				Thread thread = Thread.currentThread();
 				
-				byte[] buf = getDownloadBuf();
-				int rl;
-				while (!thread.isInterrupted() && (rl = is.read(buf)) > -1) {
-					out.write(buf, 0, rl);
-					if (stopChk != null && Objects.equals(Boolean.TRUE, stopChk.apply(retryTimes))) {
-						call.cancel();
-						return false;
+				byte[] buf = bufPool.acquire(DOWNLOAD_BUF_LEN);
+				try {
+					int rl;
+					while (!thread.isInterrupted() && (rl = is.read(buf)) > -1) {
+						out.write(buf, 0, rl);
+						if (stopChk != null && Objects.equals(Boolean.TRUE, stopChk.apply(retryTimes))) {
+							call.cancel();
+							return false;
+						}
 					}
+				} finally {
+					bufPool.release(buf);
 				}
 				if (thread.isInterrupted()) {
 					throw new InterruptedIOException("download interrupted: " + reqUrl);
@@ -7,9 +7,13 @@ import lombok.NoArgsConstructor;
 import lombok.experimental.Accessors;
 import mysh.collect.Colls;
 import okhttp3.CookieJar;
+import okhttp3.Dns;
 import okhttp3.EventListener;
+import okhttp3.Protocol;
 
+import java.io.File;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -64,6 +68,54 @@ public final class HttpClientConfig implements Cloneable {
 	 */
 	int connPoolKeepAliveSec = 5 * 60;
 	
+	/**
+	 * connections opened ahead to urls' hosts when client created, url -> connections.
+	 * the connection pool keeps at least these connections idle. see {@link HttpClientAssist#warmUp}
+	 */
+	Map<String, Integer> warmUpConnections;
+	
+	/**
+	 * protocols to use, see {@link okhttp3.OkHttpClient.Builder#protocols(List)}.
+	 * http/2 is preferred by default if server supports it by ALPN (https only),
+	 * use [{@link Protocol#HTTP_1_1}] to disable it, or [{@link Protocol#H2_PRIOR_KNOWLEDGE}]
+	 * for internal services supporting cleartext http/2 (h2c) only.
+	 */
+	List<Protocol> protocols;
+	
+	/**
+	 * max concurrent async requests, see {@link okhttp3.Dispatcher#setMaxRequests(int)}
+	 */
+	int maxAsyncRequests = 64;
+	
+	/**
+	 * max concurrent async requests of one host, see {@link okhttp3.Dispatcher#setMaxRequestsPerHost(int)}
+	 */
+	int maxAsyncRequestsPerHost = 5;
+	
+	/**
+	 * dir of disk response cache, null to disable cache. see {@link okhttp3.Cache}.
+	 * responses are cached and revalidated as Cache-Control/Expires/ETag/Last-Modified indicate.
+	 * a dir should be used by only one client at the same time.
+	 */
+	File cacheDir;
+	
+	/**
+	 * max size of disk response cache, least recently used responses are evicted beyond it.
+	 */
+	long cacheMaxBytes = 100L * 1024 * 1024;
+	
+	/**
+	 * use cached response of get requests even if it's stale, access network only if not cached.
+	 * for offline replay of crawled pages. only works with {@link #cacheDir}.
+	 */
+	boolean preferCache;
+	
+	/**
+	 * dns resolver, {@link Dns#SYSTEM} if null. {@link CachingDns} caches resolutions and resolves ahead,
+	 * it can be shared by clients.
+	 */
+	Dns dns;
+	
 	/**
 	 * this will overwrite user defined <code>Cookie</code> header
 	 */
@@ -86,6 +138,8 @@ public final class HttpClientConfig implements Cloneable {
 			c = (HttpClientConfig) super.clone();
 			if (c.headers != null)
 				c.headers = (Map<String, Object>) ((HashMap) c.headers).clone();
+			if (c.warmUpConnections != null)
+				c.warmUpConnections = new HashMap<>(c.warmUpConnections);
 		} catch (CloneNotSupportedException shouldNotHappen) {
 			throw new InternalError(shouldNotHappen);
 		}
@@ -0,0 +1,391 @@
+package mysh.net.httpclient;
+
+import com.google.common.net.HttpHeaders;
+import mysh.util.Strings;
+import mysh.util.Times;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Function;
+
+/**
+ * download a big resource in parallel ranged segments, see
+ * {@link HttpClientAssist#saveDirectlyToFile(String, Map, File, boolean, int, Function)}.
+ * <p>
+ * the file is preallocated, and each segment writes its slice by positional writes.
+ * progress of segments is persisted in <code>writeFile.~segs~</code> from time to time
+ * (after written data being forced to disk), so an interrupted download resumes from it later,
+ * if the resource isn't changed, which is checked by its validator (ETag or Last-Modified).
+ * segments are requested with If-Range, so a resource changed while downloading fails the download,
+ * and the next download starts over.
+ * at last the file length is checked, and the content digest is checked if server gives it
+ * (Digest or Repr-Digest header, sha-256 or md5).
+ *
+ * @since 2026-10-18
+ */
+@ThreadSafe
+final class SegmentedDownload {
+	private static final Logger log = LoggerFactory.getLogger(SegmentedDownload.class);
+	private static final long MIN_SEGMENT_SIZE = 1024 * 1024;
+	private static final long PERSIST_INTERVAL_BYTES = 4 * 1024 * 1024;
+	private static final int MAX_SEGMENT_RETRIES = 5;
+	private static final int BUF_LEN = 64 * 1024;
+
+	private final HttpClientAssist hca;
+	private final String url;
+	private final Map<String, Object> headers;
+	private final File writeFile, progressFile;
+	private final int parallelism;
+	private final Function<Integer, Boolean> stopChk;
+
+	private long total;
+	@Nullable
+	private String validator, digest;
+	private long[] starts, ends;
+	/**
+	 * downloaded bytes of segments, which are written to file.
+	 */
+	private AtomicLongArray done;
+	private volatile boolean failed, changed;
+
+	SegmentedDownload(HttpClientAssist hca, String url, @Nullable Map<String, ?> headers, File writeFile,
+	                  int parallelism, @Nullable Function<Integer, Boolean> stopChk) {
+		this.hca = hca;
+		this.url = url;
+		this.headers = headers == null ? new HashMap<>() : new HashMap<>(headers);
+		// ranges of encoded content are meaningless
+		this.headers.put(HttpHeaders.ACCEPT_ENCODING, "identity");
+		this.writeFile = writeFile;
+		this.progressFile = new File(writeFile.getPath() + ".~segs~");
+		this.parallelism = parallelism;
+		this.stopChk = stopChk;
+	}
+
+	/**
+	 * @return null if server doesn't support ranged download, otherwise write successfully or not.
+	 */
+	@Nullable
+	Boolean run() {
+		try {
+			if (!probe())
+				return null;
+			prepare();
+		} catch (IOException e) {
+			log.error("segmented-download-prepare-fail, exp={}, url={}", e, url);
+			return false;
+		}
+
+		List<Integer> pending = new ArrayList<>();
+		for (int i = 0; i < starts.length; i++) {
+			if (done.get(i) < segmentLength(i))
+				pending.add(i);
+		}
+		AtomicInteger seq = new AtomicInteger();
+		ExecutorService exec = Executors.newFixedThreadPool(Math.max(1, Math.min(parallelism, pending.size())), r -> {
+			Thread t = new Thread(r, "HttpClientAssist-segment-" + seq.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		});
+		boolean result = true, interrupted = false;
+		try (FileChannel ch = FileChannel.open(writeFile.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			CompletionService<Boolean> cs = new ExecutorCompletionService<>(exec);
+			for (int i : pending)
+				cs.submit(() -> downloadSegment(i, ch));
+			try {
+				for (int i = 0; i < pending.size() && result; i++) {
+					try {
+						result = cs.take().get();
+					} catch (ExecutionException e) {
+						log.error("download-segment-exp, url={}", url, e.getCause());
+						result = false;
+					}
+				}
+			} catch (InterruptedException e) {
+				// restored at last, channel operations fail in interrupted thread
+				interrupted = true;
+				result = false;
+			}
+			// stop other segments
+			failed = !result;
+			if (result)
+				result = verify(ch);
+			else if (!changed)
+				persist(ch);
+		} catch (IOException e) {
+			log.error("segmented-download-fail, exp={}, url={}", e, url);
+			result = false;
+		} finally {
+			exec.shutdownNow();
+		}
+
+		if (result || changed) {
+			progressFile.delete();
+			if (changed)
+				writeFile.delete();
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+		return result;
+	}
+
+	/**
+	 * request the first byte to get total length and validator.
+	 */
+	private boolean probe() throws IOException {
+		Map<String, Object> h = new HashMap<>(headers);
+		h.put(HttpHeaders.RANGE, "bytes=0-0");
+		try (HttpClientAssist.UrlEntity ue = hca.access(url, h)) {
+			String contentRange = ue.getRspHeader(HttpHeaders.CONTENT_RANGE);
+			if (ue.getStatusCode() != 206 || contentRange == null)
+				return false;
+			int si = contentRange.lastIndexOf('/');
+			if (si < 0 || contentRange.endsWith("*"))
+				return false;
+			total = Long.parseLong(contentRange.substring(si + 1).trim());
+
+			String etag = ue.getRspHeader(HttpHeaders.ETAG);
+			// weak etag can't be used in If-Range
+			validator = etag != null && !etag.startsWith("W/") ? etag : ue.getRspHeader(HttpHeaders.LAST_MODIFIED);
+			digest = ue.getRspHeader("Repr-Digest");
+			if (digest == null)
+				digest = ue.getRspHeader("Digest");
+			return true;
+		} catch (NumberFormatException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * restore progress of the same resource, or split it into segments and preallocate the file.
+	 */
+	private void prepare() throws IOException {
+		if (validator != null && progressFile.exists() && writeFile.length() == total) {
+			Properties p = new Properties();
+			try (InputStream in = Files.newInputStream(progressFile.toPath())) {
+				p.load(in);
+			}
+			if (url.equals(p.getProperty("url")) && String.valueOf(total).equals(p.getProperty("total"))
+					&& validator.equals(p.getProperty("validator")) && restore(p.getProperty("segments", ""))) {
+				log.info("resume-segmented-download, done={}/{}, url={}", downloaded(), total, url);
+				return;
+			}
+		}
+
+		int n = (int) Math.max(1, Math.min(parallelism, total / MIN_SEGMENT_SIZE));
+		starts = new long[n];
+		ends = new long[n];
+		done = new AtomicLongArray(n);
+		long size = total / n;
+		for (int i = 0; i < n; i++) {
+			starts[i] = i * size;
+			ends[i] = i == n - 1 ? total - 1 : (i + 1) * size - 1;
+		}
+		discard();
+		try (RandomAccessFile raf = new RandomAccessFile(writeFile, "rw")) {
+			raf.setLength(total);
+		}
+	}
+
+	/**
+	 * @return false if the segments are malformed, which are treated as no progress.
+	 */
+	private boolean restore(String segments) {
+		String[] segs = segments.split(",");
+		long[] ss = new long[segs.length], es = new long[segs.length];
+		AtomicLongArray ds = new AtomicLongArray(segs.length);
+		try {
+			for (int i = 0; i < segs.length; i++) {
+				String[] s = segs[i].split("[-:]");
+				ss[i] = Long.parseLong(s[0]);
+				es[i] = Long.parseLong(s[1]);
+				ds.set(i, Long.parseLong(s[2]));
+				if (ss[i] != (i == 0 ? 0 : es[i - 1] + 1) || es[i] < ss[i] || ds.get(i) < 0 || ds.get(i) > es[i] - ss[i] + 1)
+					throw new NumberFormatException("illegal segment: " + segs[i]);
+			}
+			if (es[segs.length - 1] != total - 1)
+				throw new NumberFormatException("segments don't cover total: " + total);
+		} catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+			log.warn("segmented-download-progress-malformed, start over, exp={}, file={}", e, progressFile);
+			return false;
+		}
+		starts = ss;
+		ends = es;
+		done = ds;
+		return true;
+	}
+
+	/**
+	 * delete the write file and progress, e.g. before downloading sequentially.
+	 */
+	void discard() {
+		progressFile.delete();
+		writeFile.delete();
+	}
+
+	private long segmentLength(int i) {
+		return ends[i] - starts[i] + 1;
+	}
+
+	private long downloaded() {
+		long d = 0;
+		for (int i = 0; i < done.length(); i++)
+			d += done.get(i);
+		return d;
+	}
+
+	private boolean stopped(int retryTimes) {
+		return failed || Thread.currentThread().isInterrupted()
+				|| stopChk != null && Objects.equals(Boolean.TRUE, stopChk.apply(retryTimes));
+	}
+
+	private boolean downloadSegment(int i, FileChannel ch) throws IOException {
+		Map<String, Object> h = new HashMap<>(headers);
+		if (validator != null)
+			h.put(HttpHeaders.IF_RANGE, validator);
+		byte[] buf = new byte[BUF_LEN];
+		int retryTimes = 0;
+		while (done.get(i) < segmentLength(i)) {
+			if (stopped(retryTimes))
+				return false;
+			long pos = starts[i] + done.get(i);
+			h.put(HttpHeaders.RANGE, "bytes=" + pos + "-" + ends[i]);
+			try (HttpClientAssist.UrlEntity ue = hca.access(url, h);
+			     InputStream in = ue.getEntityStream()) {
+				if (ue.getStatusCode() != 206) {
+					// full content responded to If-Range
+					changed = ue.getStatusCode() == 200;
+					log.error("download-segment-fail, status={}, range={}, url={}", ue.getStatusCode(), h.get(HttpHeaders.RANGE), url);
+					return false;
+				}
+				long unpersisted = 0;
+				int rl;
+				while (done.get(i) < segmentLength(i)
+						&& (rl = in.read(buf, 0, (int) Math.min(buf.length, segmentLength(i) - done.get(i)))) > -1) {
+					ByteBuffer bb = ByteBuffer.wrap(buf, 0, rl);
+					while (bb.hasRemaining())
+						pos += ch.write(bb, pos);
+					done.addAndGet(i, rl);
+					if ((unpersisted += rl) >= PERSIST_INTERVAL_BYTES) {
+						persist(ch);
+						unpersisted = 0;
+					}
+					if (stopped(retryTimes))
+						return false;
+				}
+				if (done.get(i) < segmentLength(i))
+					throw new EOFException("segment truncated at " + pos);
+			} catch (InterruptedIOException e) {
+				return false;
+			} catch (IOException e) {
+				if (++retryTimes > MAX_SEGMENT_RETRIES) {
+					log.error("download-segment-exp, retry={}, exp={}, url={}", retryTimes, e, url);
+					return false;
+				}
+				log.info("resume-segment, segment={}, exp={}, url={}", i, e, url);
+				Times.sleepNoExp(HttpClientAssist.DOWNLOAD_RETRY_DELAY_MILLIS);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * save progress, after written data being forced to disk.
+	 */
+	private synchronized void persist(FileChannel ch) throws IOException {
+		if (validator == null)
+			return;
+		StringBuilder segs = new StringBuilder();
+		for (int i = 0; i < starts.length; i++) {
+			if (i > 0)
+				segs.append(',');
+			segs.append(starts[i]).append('-').append(ends[i]).append(':').append(done.get(i));
+		}
+		ch.force(false);
+
+		Properties p = new Properties();
+		p.setProperty("url", url);
+		p.setProperty("total", String.valueOf(total));
+		p.setProperty("validator", validator);
+		p.setProperty("segments", segs.toString());
+		File tmp = new File(progressFile.getPath() + ".tmp");
+		try (OutputStream out = Files.newOutputStream(tmp.toPath())) {
+			p.store(out, null);
+		}
+		Files.move(tmp.toPath(), progressFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	private boolean verify(FileChannel ch) throws IOException {
+		if (ch.size() != total || downloaded() != total) {
+			log.error("segmented-download-incomplete, size={}, downloaded={}, total={}, url={}",
+					ch.size(), downloaded(), total, url);
+			return false;
+		}
+		if (Strings.isBlank(digest))
+			return true;
+
+		String alg = null, expected = null;
+		for (String d : digest.split(",")) {
+			int ei = d.indexOf('=');
+			if (ei < 0)
+				continue;
+			String a = d.substring(0, ei).trim().toLowerCase();
+			if (a.equals("sha-256") || a.equals("md5") && alg == null) {
+				alg = a;
+				expected = d.substring(ei + 1).trim().replace(":", "");
+			}
+		}
+		if (alg == null)
+			return true;
+		try {
+			MessageDigest md = MessageDigest.getInstance(alg.equals("md5") ? "MD5" : "SHA-256");
+			ByteBuffer buf = ByteBuffer.allocate(BUF_LEN);
+			long pos = 0;
+			int rl;
+			while ((rl = ch.read(buf, pos)) > -1) {
+				buf.flip();
+				md.update(buf);
+				buf.clear();
+				pos += rl;
+			}
+			String actual = Base64.getEncoder().encodeToString(md.digest());
+			if (!actual.equals(expected)) {
+				log.error("segmented-download-digest-mismatch, {}={}, expected={}, url={}", alg, actual, expected, url);
+				changed = true;
+				return false;
+			}
+			return true;
+		} catch (NoSuchAlgorithmException e) {
+			throw new InternalError(e);
+		}
+	}
+}
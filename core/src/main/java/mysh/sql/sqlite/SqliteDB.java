@@ -12,7 +12,11 @@ import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.sqlite.SQLiteConfig;
 import org.sqlite.SQLiteDataSource;
 
@@ -39,6 +43,7 @@ public class SqliteDB implements Closeable {
 	private final Path dbFile;
 	@Getter
 	private final NamedParameterJdbcTemplate jdbcTemplate;
+	private final TransactionTemplate txTemplate;
 	private final Set<String> existTables = Collections.newSetFromMap(new ConcurrentHashMap<>());
 	
 	@Getter
@@ -97,6 +102,23 @@ public class SqliteDB implements Closeable {
 		
 		int save(String key, V value, @Nullable LocalDateTime writeTime);
 		
+		/**
+		 * update write time of the key only, the value is not rewritten.
+		 *
+		 * @return updated rows, 0 if the key doesn't exist.
+		 */
+		int updateWriteTime(String key, @Nullable LocalDateTime writeTime);
+		
+		/**
+		 * save all key-values in one transaction, which is much faster than saving them one by one.
+		 */
+		void saveAll(Map<String, ? extends V> kvs, @Nullable LocalDateTime writeTime);
+		
+		/**
+		 * remove all keys in one transaction.
+		 */
+		void removeAll(Collection<String> keys);
+		
 		boolean exists(String key);
 	}
 	
@@ -164,6 +186,7 @@ public class SqliteDB implements Closeable {
 		ds = new PooledDataSource(poolConfig, sqliteDs);
 		
 		jdbcTemplate = new NamedParameterJdbcTemplate(ds);
+		txTemplate = new TransactionTemplate(new DataSourceTransactionManager(ds));
 	}
 	
 	/**
@@ -436,6 +459,16 @@ public class SqliteDB implements Closeable {
 					Colls.ofHashMap("key", key));
 		}
 		
+		@Override
+		public void removeAll(Collection<String> keys) {
+			if (keys.isEmpty())
+				return;
+			SqlParameterSource[] params = keys.stream()
+			                                  .map(k -> new MapSqlParameterSource("key", k))
+			                                  .toArray(SqlParameterSource[]::new);
+			txTemplate.execute(status -> jdbcTemplate.batchUpdate("delete from " + table + " where k=:key", params));
+		}
+		
 		@Override
 		public int save(String key, V value) {
 			return save(key, value, LocalDateTime.now());
@@ -443,6 +476,45 @@ public class SqliteDB implements Closeable {
 		
 		@Override
 		public int save(String key, V value, @Nullable LocalDateTime writeTime) {
+			return jdbcTemplate.update(saveSql(), Colls.ofHashMap(
+					"key", key,
+					"value", toSaveValue(value),
+					"wt", Times.format(Times.Formats.DayTime, ObjectUtils.firstNonNull(writeTime, LocalDateTime.now())))
+			);
+		}
+		
+		@Override
+		public int updateWriteTime(String key, @Nullable LocalDateTime writeTime) {
+			return jdbcTemplate.update(
+					"update " + table + " set wt=:wt where k=:key",
+					Colls.ofHashMap(
+							"key", key,
+							"wt", Times.format(Times.Formats.DayTime, ObjectUtils.firstNonNull(writeTime, LocalDateTime.now())))
+			);
+		}
+		
+		@Override
+		public void saveAll(Map<String, ? extends V> kvs, @Nullable LocalDateTime writeTime) {
+			if (kvs.isEmpty())
+				return;
+			String wt = Times.format(Times.Formats.DayTime, ObjectUtils.firstNonNull(writeTime, LocalDateTime.now()));
+			SqlParameterSource[] params = kvs.entrySet().stream()
+			                                 .map(e -> new MapSqlParameterSource()
+					                                 .addValue("key", e.getKey())
+					                                 .addValue("value", toSaveValue(e.getValue()))
+					                                 .addValue("wt", wt))
+			                                 .toArray(SqlParameterSource[]::new);
+			String sql = saveSql();
+			txTemplate.execute(status -> jdbcTemplate.batchUpdate(sql, params));
+		}
+		
+		private String saveSql() {
+			return "insert into " + table + "(k,v,wt,rt) values(:key,:value,:wt,:wt) " +
+					"on conflict(k) do update set v=:value,wt=:wt"
+					+ (updateReadTime ? ",rt=(datetime(CURRENT_TIMESTAMP,'localtime'))" : "");
+		}
+		
+		private Object toSaveValue(V value) {
 			byte[] buf = SERIALIZER.serialize(value);
 			Object saveValue = value instanceof String ? value : buf;
 			if (suggestCompressValue && buf.length > 256) {
@@ -450,15 +522,7 @@ public class SqliteDB implements Closeable {
 				if (cb.length < buf.length)
 					saveValue = cb;
 			}
-			return jdbcTemplate.update(
-					"insert into " + table + "(k,v,wt,rt) values(:key,:value,:wt,:wt) " +
-							"on conflict(k) do update set v=:value,wt=:wt"
-							+ (updateReadTime ? ",rt=(datetime(CURRENT_TIMESTAMP,'localtime'))" : "")
-					, Colls.ofHashMap(
-							"key", key,
-							"value", saveValue,
-							"wt", Times.format(Times.Formats.DayTime, ObjectUtils.firstNonNull(writeTime, LocalDateTime.now())))
-			);
+			return saveValue;
 		}
 		
 		@Override
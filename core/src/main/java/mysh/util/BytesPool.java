@@ -0,0 +1,115 @@
+package mysh.util;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.Deque;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * pool of byte arrays in power-of-two size classes, to reuse short-lived buffers
+ * (download chunks, growing buffers) instead of allocating them per request.
+ * <p>
+ * a buffer is acquired with at least the requested size, and should be released after use,
+ * and must not be used after released. buffers larger than the max size class are allocated
+ * directly and dropped on release. each size class retains at most <code>maxRetainedBytes</code>,
+ * buffers beyond that are left to gc.
+ *
+ * @since 2026-10-18
+ */
+@ThreadSafe
+public final class BytesPool {
+	private final int minShift, maxShift;
+	private final Deque<byte[]>[] classes;
+	private final AtomicInteger[] retained;
+	private final int[] maxRetained;
+	private final AtomicLong allocated = new AtomicLong(), reused = new AtomicLong();
+
+	/**
+	 * @param minSize          min size class, rounded up to power of two.
+	 * @param maxSize          max size class, rounded up to power of two.
+	 * @param maxRetainedBytes max bytes retained by each size class, at least one buffer is retained.
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public BytesPool(int minSize, int maxSize, long maxRetainedBytes) {
+		if (minSize < 1 || maxSize < minSize || maxSize > 1 << 30)
+			throw new IllegalArgumentException("illegal size class: " + minSize + " ~ " + maxSize);
+		minShift = shiftOf(minSize);
+		maxShift = shiftOf(maxSize);
+		int n = maxShift - minShift + 1;
+		classes = new Deque[n];
+		retained = new AtomicInteger[n];
+		maxRetained = new int[n];
+		for (int i = 0; i < n; i++) {
+			classes[i] = new ConcurrentLinkedDeque<>();
+			retained[i] = new AtomicInteger();
+			maxRetained[i] = (int) Math.max(1, Math.min(Integer.MAX_VALUE, maxRetainedBytes >> (minShift + i)));
+		}
+	}
+
+	private static int shiftOf(int size) {
+		return size <= 1 ? 0 : 32 - Integer.numberOfLeadingZeros(size - 1);
+	}
+
+	/**
+	 * @return buffer of at least the size, its content is undefined.
+	 */
+	public byte[] acquire(int size) {
+		int shift = Math.max(minShift, shiftOf(size));
+		if (shift > maxShift) {
+			allocated.incrementAndGet();
+			return new byte[size];
+		}
+		int c = shift - minShift;
+		// last released first, which is more likely in cpu cache
+		byte[] buf = classes[c].pollFirst();
+		if (buf != null) {
+			retained[c].decrementAndGet();
+			reused.incrementAndGet();
+			return buf;
+		}
+		allocated.incrementAndGet();
+		return new byte[1 << shift];
+	}
+
+	/**
+	 * return the buffer to the pool. buffers not acquired from a pool are ignored, unless its size
+	 * equals a size class.
+	 */
+	public void release(byte[] buf) {
+		if (buf == null || Integer.bitCount(buf.length) != 1)
+			return;
+		int c = shiftOf(buf.length) - minShift;
+		if (c < 0 || c >= classes.length)
+			return;
+		if (retained[c].incrementAndGet() > maxRetained[c]) {
+			retained[c].decrementAndGet();
+			return;
+		}
+		classes[c].offerFirst(buf);
+	}
+
+	/**
+	 * buffers allocated because the pool has none available.
+	 */
+	public long getAllocated() {
+		return allocated.get();
+	}
+
+	/**
+	 * buffers acquired from the pool.
+	 */
+	public long getReused() {
+		return reused.get();
+	}
+
+	/**
+	 * bytes retained by the pool.
+	 */
+	public long getRetainedBytes() {
+		long bytes = 0;
+		for (int i = 0; i < classes.length; i++)
+			bytes += (long) retained[i].get() << (minShift + i);
+		return bytes;
+	}
+}
@@ -0,0 +1,231 @@
+package mysh.util;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * incremental charset detection of text content, fed chunk by chunk while downloading.
+ * <p>
+ * the charset is decided in order by: declared charset (e.g. content-type header), BOM,
+ * html meta tag in the prefix, or utf-8 validity of the prefix (utf-8 if valid, otherwise GBK),
+ * the same rules as {@link Encodings#findHtmlEncoding} and {@link Encodings#isUTF8Bytes},
+ * but content is scanned only once, and the charset is usually known after the first chunks,
+ * so the content can be decoded while downloading.
+ * <p>
+ * a guess from the prefix is verified against the rest of the content, see {@link #finish()}.
+ *
+ * @since 2026-10-18
+ */
+@NotThreadSafe
+public final class CharsetSniffer {
+	/**
+	 * max prefix length searched for html meta charset.
+	 */
+	public static final int DEFAULT_PREFIX_LIMIT = 32 * 1024;
+
+	private static final Pattern htmlCharsetExp = Pattern.compile("charset=[\"']?([\\w\\-]+)");
+	private static final byte[] metaBuf = "<meta ".getBytes(StandardCharsets.ISO_8859_1);
+
+	private final int prefixLimit;
+	private byte[] prefix;
+	private int prefixLen;
+	/**
+	 * position in prefix from which the next meta tag is searched.
+	 */
+	private int scanPos;
+
+	@Nullable
+	private Charset charset;
+	/**
+	 * whether charset is guessed by utf-8 validity, which may be revised by the rest content.
+	 */
+	private boolean guessed;
+	/**
+	 * whether utf-8 validity is being checked.
+	 */
+	private boolean validating = true;
+	private boolean utf8Valid = true;
+	/**
+	 * continuation bytes expected by the last utf-8 lead byte.
+	 */
+	private int utf8Pending;
+
+	/**
+	 * @param declared charset declared by the transport, e.g. content-type header, which is trusted.
+	 */
+	public CharsetSniffer(@Nullable Charset declared) {
+		this(declared, DEFAULT_PREFIX_LIMIT);
+	}
+
+	public CharsetSniffer(@Nullable Charset declared, int prefixLimit) {
+		this.prefixLimit = Math.max(4, prefixLimit);
+		this.charset = declared;
+		if (declared != null)
+			validating = false;
+		else
+			prefix = new byte[Math.min(this.prefixLimit, 4096)];
+	}
+
+	/**
+	 * @return charset decided so far, or <code>null</code> if more content is needed.
+	 */
+	@Nullable
+	public Charset getCharset() {
+		return charset;
+	}
+
+	/**
+	 * feed next chunk of content.
+	 *
+	 * @return charset decided so far, or <code>null</code> if more content is needed.
+	 */
+	@Nullable
+	public Charset feed(byte[] b, int off, int len) {
+		if (validating)
+			validateUtf8(b, off, len);
+		if (charset != null)
+			return charset;
+
+		int n = Math.min(len, prefixLimit - prefixLen);
+		if (prefixLen + n > prefix.length)
+			prefix = Arrays.copyOf(prefix, Math.min(prefixLimit, Math.max(prefixLen + n, prefix.length * 2)));
+		System.arraycopy(b, off, prefix, prefixLen, n);
+		prefixLen += n;
+
+		if ((charset = bom()) != null || (charset = scanMeta()) != null) {
+			validating = false;
+			prefix = null;
+		} else if (prefixLen >= prefixLimit)
+			guess();
+		return charset;
+	}
+
+	/**
+	 * end of content.
+	 *
+	 * @return decided charset. if it's different from the one returned by {@link #feed} before,
+	 * the content decoded by that should be decoded again.
+	 */
+	public Charset finish() {
+		if (charset == null)
+			guess();
+		if (guessed && utf8Pending > 0)
+			utf8Valid = false;
+		if (guessed && !utf8Valid)
+			charset = Encodings.GBK;
+		validating = false;
+		return charset;
+	}
+
+	private void guess() {
+		charset = utf8Valid ? Encodings.UTF_8 : Encodings.GBK;
+		guessed = true;
+		// GBK is never revised
+		validating = utf8Valid;
+		prefix = null;
+	}
+
+	@Nullable
+	private Charset bom() {
+		if (prefixLen >= 3 && (prefix[0] & 0xff) == 0xEF && (prefix[1] & 0xff) == 0xBB && (prefix[2] & 0xff) == 0xBF)
+			return StandardCharsets.UTF_8;
+		if (prefixLen >= 2 && (prefix[0] & 0xff) == 0xFE && (prefix[1] & 0xff) == 0xFF)
+			return StandardCharsets.UTF_16BE;
+		if (prefixLen >= 2 && (prefix[0] & 0xff) == 0xFF && (prefix[1] & 0xff) == 0xFE)
+			return StandardCharsets.UTF_16LE;
+		return null;
+	}
+
+	/**
+	 * search meta tags from last position, an unclosed tag is searched again on next feeding.
+	 */
+	@Nullable
+	private Charset scanMeta() {
+		while (true) {
+			int bi = indexOf(prefix, prefixLen, scanPos, metaBuf);
+			if (bi < 0) {
+				scanPos = Math.max(scanPos, prefixLen - metaBuf.length + 1);
+				return null;
+			}
+			int ei = indexOf(prefix, prefixLen, bi + metaBuf.length, (byte) '>');
+			if (ei < 0) {
+				scanPos = bi;
+				return null;
+			}
+			scanPos = ei + 1;
+			Matcher m = htmlCharsetExp.matcher(new String(prefix, bi, ei - bi, StandardCharsets.ISO_8859_1));
+			if (m.find()) {
+				try {
+					return Charset.forName(m.group(1));
+				} catch (IllegalArgumentException e) {
+					// unknown charset, ignore
+				}
+			}
+		}
+	}
+
+	private static int indexOf(byte[] buf, int len, int from, byte[] key) {
+		int limit = len - key.length;
+		outer:
+		for (int i = Math.max(0, from); i <= limit; i++) {
+			for (int j = 0; j < key.length; j++) {
+				if (buf[i + j] != key[j])
+					continue outer;
+			}
+			return i;
+		}
+		return -1;
+	}
+
+	private static int indexOf(byte[] buf, int len, int from, byte b) {
+		for (int i = from; i < len; i++) {
+			if (buf[i] == b)
+				return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * the same rule as {@link Encodings#isUTF8Bytes}, across chunks.
+	 */
+	private void validateUtf8(byte[] b, int off, int len) {
+		int end = off + len;
+		int i = off;
+		int pending = utf8Pending;
+		while (i < end) {
+			byte bi = b[i++];
+			if (pending > 0) {
+				if ((bi & 0xc0) != 0x80) {
+					invalidUtf8();
+					return;
+				}
+				pending--;
+			} else if ((bi & 0x80) == 0) {
+				// skip ascii run
+				while (i < end && b[i] >= 0)
+					i++;
+			} else if ((bi & 0xe0) == 0xc0)
+				pending = 1;
+			else if ((bi & 0xf0) == 0xe0)
+				pending = 2;
+			else if ((bi & 0xf8) == 0xf0)
+				pending = 3;
+			else {
+				invalidUtf8();
+				return;
+			}
+		}
+		utf8Pending = pending;
+	}
+
+	private void invalidUtf8() {
+		utf8Valid = false;
+		validating = false;
+		utf8Pending = 0;
+	}
+}
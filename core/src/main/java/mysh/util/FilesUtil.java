@@ -5,6 +5,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.file.*;
@@ -82,6 +85,35 @@ public class FilesUtil {
 		}
 	}
 	
+	/**
+	 * 立即释放 file map, 不等待 gc, 释放后文件才能被删除 (windows), 也不再占用地址空间.<br/>
+	 * 释放后不能再访问 buffer. 不支持时忽略.
+	 */
+	public static void unmap(MappedByteBuffer buf) {
+		if (buf == null)
+			return;
+		try {
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			Method invokeCleaner;
+			try {
+				invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+			} catch (NoSuchMethodException e) {
+				// java 8
+				Method cleanerMethod = buf.getClass().getMethod("cleaner");
+				cleanerMethod.setAccessible(true);
+				Object cleaner = cleanerMethod.invoke(buf);
+				if (cleaner != null)
+					cleaner.getClass().getMethod("clean").invoke(cleaner);
+				return;
+			}
+			Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+			theUnsafe.setAccessible(true);
+			invokeCleaner.invoke(theUnsafe.get(null), buf);
+		} catch (Throwable t) {
+			log.debug("unmap-fail, left to gc", t);
+		}
+	}
+	
 	/**
 	 * 将数据写入到文件.
 	 *
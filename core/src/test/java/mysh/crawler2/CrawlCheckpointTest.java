@@ -0,0 +1,91 @@
+package mysh.crawler2;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * @since 2026-10-18
+ */
+public class CrawlCheckpointTest {
+
+	static class Ctx implements UrlContext {
+		private static final long serialVersionUID = 4323658405263937580L;
+		final int depth;
+
+		Ctx(int depth) {
+			this.depth = depth;
+		}
+	}
+
+	private static List<String> urls(List<UrlCtxHolder<Ctx>> tasks) {
+		return tasks.stream().map(t -> t.url).collect(Collectors.toList());
+	}
+
+	private static long fp(String url) {
+		return UrlFingerprintIndex.fingerprint(url);
+	}
+
+	@Test
+	public void closeAndRecover(@TempDir File dir) throws IOException {
+		CrawlCheckpoint<Ctx> cp = new CrawlCheckpoint<>(dir, "test", 10, 1 << 20);
+		Assertions.assertTrue(cp.recover().isEmpty());
+		cp.start();
+		cp.enqueued(UrlCtxHolder.of("http://a.com/1", new Ctx(1)));
+		cp.enqueued(UrlCtxHolder.of("http://a.com/2", new Ctx(2)));
+		cp.enqueued(UrlCtxHolder.of("http://a.com/3"));
+		cp.completed(fp("http://a.com/2"));
+		// completed then enqueued again
+		cp.completed(fp("http://a.com/3"));
+		cp.enqueued(UrlCtxHolder.of("http://a.com/3"));
+		cp.close();
+
+		CrawlCheckpoint<Ctx> cp2 = new CrawlCheckpoint<>(dir, "test", 10, 1 << 20);
+		List<UrlCtxHolder<Ctx>> tasks = cp2.recover();
+		Assertions.assertEquals(Arrays.asList("http://a.com/1", "http://a.com/3"), urls(tasks));
+		Assertions.assertEquals(1, tasks.get(0).ctx.depth);
+		Assertions.assertNull(tasks.get(1).ctx);
+
+		// numbering continues after compacted journals
+		cp2.start();
+		cp2.completed(fp("http://a.com/1"));
+		cp2.close();
+		Assertions.assertEquals(Arrays.asList("http://a.com/3"), urls(new CrawlCheckpoint<Ctx>(dir, "test", 10, 1 << 20).recover()));
+	}
+
+	@Test
+	public void crash(@TempDir File dir) throws Exception {
+		// small compact threshold, so journals are compacted while running
+		CrawlCheckpoint<Ctx> cp = new CrawlCheckpoint<>(dir, "test", 5, 200);
+		cp.recover();
+		cp.start();
+		for (int i = 0; i < 100; i++) {
+			cp.enqueued(UrlCtxHolder.of("http://a.com/" + i));
+			if (i % 2 == 0)
+				cp.completed(fp("http://a.com/" + i));
+			if (i % 10 == 0)
+				Thread.sleep(10);
+		}
+		Thread.sleep(100);
+
+		// not closed, and the last journal has a torn record
+		File[] journals = dir.listFiles((d, name) -> name.startsWith("journal-"));
+		Assertions.assertNotNull(journals);
+		Arrays.sort(journals);
+		try (FileOutputStream out = new FileOutputStream(journals[journals.length - 1], true)) {
+			out.write(new byte[]{1, 0, 0, 0, 100, 1, 2});
+		}
+
+		List<String> urls = urls(new CrawlCheckpoint<Ctx>(dir, "test", 5, 200).recover());
+		Assertions.assertEquals(50, urls.size());
+		for (int i = 0; i < 50; i++)
+			Assertions.assertEquals("http://a.com/" + (i * 2 + 1), urls.get(i));
+	}
+}
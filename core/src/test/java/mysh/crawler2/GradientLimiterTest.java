@@ -0,0 +1,49 @@
+package mysh.crawler2;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * @since 2026-10-18
+ */
+public class GradientLimiterTest {
+
+	/**
+	 * a target serving `capacity` requests in parallel, exceeding requests queue up.
+	 */
+	private static long rtt(int inFlight, int capacity) {
+		long base = 20_000_000;
+		return inFlight <= capacity ? base : base * inFlight / capacity;
+	}
+
+	@Test
+	public void converge() {
+		int capacity = 40;
+		GradientLimiter limiter = new GradientLimiter(2, 1, 1000);
+		for (int i = 0; i < 100_000; i++)
+			limiter.onSample(rtt(limiter.getLimit(), capacity), true);
+		int limit = limiter.getLimit();
+		Assertions.assertTrue(limit >= capacity && limit <= capacity * 2, "limit=" + limit);
+
+		// capacity drops
+		capacity = 10;
+		for (int i = 0; i < 100_000; i++)
+			limiter.onSample(rtt(limiter.getLimit(), capacity), true);
+		limit = limiter.getLimit();
+		Assertions.assertTrue(limit >= capacity && limit <= capacity * 2, "limit=" + limit);
+	}
+
+	@Test
+	public void idleAndDrop() {
+		GradientLimiter limiter = new GradientLimiter(10, 1, 1000);
+		for (int i = 0; i < 10_000; i++)
+			limiter.onSample(1_000_000, false);
+		Assertions.assertEquals(10, limiter.getLimit());
+
+		Assertions.assertEquals(7, limiter.onDrop());
+		for (int i = 0; i < 20; i++)
+			limiter.onDrop();
+		Assertions.assertEquals(1, limiter.getLimit());
+		Assertions.assertEquals(-1, limiter.onDrop());
+	}
+}
@@ -0,0 +1,75 @@
+package mysh.crawler2;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @since 2026-10-18
+ */
+public class HostSchedulerTest {
+
+	@Test
+	public void hostOf() {
+		Assertions.assertEquals("a.com", HostScheduler.hostOf("http://a.com"));
+		Assertions.assertEquals("a.com", HostScheduler.hostOf("https://A.com:8443/x?y#z"));
+		Assertions.assertEquals("a.com", HostScheduler.hostOf("http://u:p@a.com/x"));
+		Assertions.assertEquals("[::1]", HostScheduler.hostOf("http://[::1]:80/x"));
+	}
+
+	@Test
+	public void concurrencyAndDelay() throws InterruptedException {
+		ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+		BlockingQueue<String> ready = new LinkedBlockingQueue<>();
+		HostScheduler<String> hs = new HostScheduler<>(1, 100, 2, scheduler, ready::add);
+		try {
+			Assertions.assertEquals(HostScheduler.Acquire.TAKEN, hs.acquireOrPark("a.com", "a1"));
+			Assertions.assertEquals(HostScheduler.Acquire.PARKED, hs.acquireOrPark("a.com", "a2"));
+			Assertions.assertEquals(HostScheduler.Acquire.PARKED, hs.acquireOrPark("a.com", "a3"));
+			Assertions.assertEquals(HostScheduler.Acquire.FULL, hs.acquireOrPark("a.com", "a4"));
+			// other hosts are not affected
+			Assertions.assertEquals(HostScheduler.Acquire.TAKEN, hs.acquireOrPark("b.com", "b1"));
+			Assertions.assertEquals(2, hs.parkedCount());
+
+			long start = System.nanoTime();
+			hs.release("a.com");
+			Assertions.assertEquals("a2", ready.poll(1, TimeUnit.SECONDS));
+			Assertions.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+			Assertions.assertNull(ready.poll(150, TimeUnit.MILLISECONDS), "host is busy");
+
+			Assertions.assertEquals(1, hs.parkedCount());
+			List<String> parked = hs.drain();
+			Assertions.assertEquals(1, parked.size());
+			Assertions.assertEquals("a3", parked.get(0));
+			Assertions.assertEquals(0, hs.parkedCount());
+		} finally {
+			scheduler.shutdownNow();
+		}
+	}
+
+	@Test
+	public void evictIdleHosts() {
+		ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+		HostScheduler<String> hs = new HostScheduler<>(1, 0, 2, scheduler, t -> {
+		});
+		try {
+			Assertions.assertEquals(HostScheduler.Acquire.TAKEN, hs.acquireOrPark("busy.com", "b"));
+			for (int i = 0; i < 3000; i++) {
+				String host = "h" + i + ".com";
+				Assertions.assertEquals(HostScheduler.Acquire.TAKEN, hs.acquireOrPark(host, host));
+				hs.release(host);
+			}
+			Assertions.assertTrue(hs.hostCount() < 1100, "hosts: " + hs.hostCount());
+			// busy host is kept
+			Assertions.assertEquals(HostScheduler.Acquire.PARKED, hs.acquireOrPark("busy.com", "b2"));
+		} finally {
+			scheduler.shutdownNow();
+		}
+	}
+}
@@ -0,0 +1,53 @@
+package mysh.crawler2;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.stream.IntStream;
+
+/**
+ * @since 2026-10-18
+ */
+public class LatencyHistogramTest {
+
+	@Test
+	public void buckets() {
+		for (long v = 0; v < 1 << 20; v++) {
+			int i = LatencyHistogram.index(v);
+			long high = LatencyHistogram.highestOf(i);
+			Assertions.assertTrue(v <= high && high - v <= Math.max(0, v / 32), "v=" + v);
+			Assertions.assertTrue(i == 0 || LatencyHistogram.highestOf(i - 1) < v, "v=" + v);
+		}
+	}
+
+	@Test
+	public void percentiles() {
+		LatencyHistogram h = new LatencyHistogram();
+		Assertions.assertEquals(0, h.snapshot().getP99Micros());
+
+		for (int i = 1; i <= 10000; i++)
+			h.recordMicros(i);
+		LatencyHistogram.Snapshot s = h.snapshot();
+		Assertions.assertEquals(10000, s.getCount());
+		Assertions.assertEquals(1, s.getMinMicros());
+		Assertions.assertEquals(10000, s.getMaxMicros());
+		Assertions.assertEquals(5000.5, s.getMeanMicros(), 0.001);
+		assertNear(5000, s.getP50Micros());
+		assertNear(9900, s.getP99Micros());
+		assertNear(9990, s.getP999Micros());
+		Assertions.assertEquals(10000, s.percentileMicros(100));
+	}
+
+	@Test
+	public void concurrent() {
+		LatencyHistogram h = new LatencyHistogram();
+		IntStream.range(0, 100_000).parallel().forEach(i -> h.recordNanos(1000_000L));
+		LatencyHistogram.Snapshot s = h.snapshot();
+		Assertions.assertEquals(100_000, s.getCount());
+		Assertions.assertEquals(1000, s.getP50Micros());
+	}
+
+	private static void assertNear(long expected, long actual) {
+		Assertions.assertTrue(actual >= expected && actual <= expected * 33 / 32, "expected~" + expected + ", actual=" + actual);
+	}
+}
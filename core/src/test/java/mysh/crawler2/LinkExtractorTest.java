@@ -0,0 +1,75 @@
+package mysh.crawler2;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * @since 2026-10-18
+ */
+public class LinkExtractorTest {
+
+	private static Set<String> extract(String page, Charset enc) {
+		Set<String> urls = new LinkedHashSet<>();
+		new LinkExtractor("https://a.com/dir/page.html?q=1#top", enc).extract(page.getBytes(enc), urls::add);
+		return urls;
+	}
+
+	@Test
+	public void links() {
+		String page = "<a HREF = \"/abs?a=1&amp;b=2\">x</a> <img src='img/1.png'> "
+				+ "<a href=\"//cdn.com/x.js\"></a> <a href=\"../up.html#frag\"></a> "
+				+ "<a href=\"#only\"></a> <a href=\"mailto:a@a.com\"></a> <a href=\"javascript:void(0)\"></a> "
+				+ "<a href=x.html></a> text HTTP://b.com/p%20q?x=1#f <a data-src=\"lazy.png\">";
+		Assertions.assertEquals(new LinkedHashSet<>(Arrays.asList(
+				"https://a.com/abs?a=1&b=2",
+				"https://a.com/dir/img/1.png",
+				"https://cdn.com/x.js",
+				"https://a.com/up.html",
+				"HTTP://b.com/p q?x=1",
+				"https://a.com/dir/lazy.png"
+		)), extract(page, StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void httpInsideAttr() {
+		Assertions.assertEquals(new LinkedHashSet<>(Arrays.asList(
+				"http://b.com/x?u=http://c.com",
+				"https://a.com/dir/go?u=http://c.com",
+				"http://c.com")),
+				extract("<a href=\"http://b.com/x?u=http://c.com\"></a><a href='go?u=http://c.com'>", StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void multiBytes() {
+		Charset gbk = Charset.forName("GBK");
+		// "癶" is 0xB0 0x68 in gbk, the trail byte 'h' should not start a match
+		Assertions.assertEquals(new LinkedHashSet<>(Arrays.asList("https://a.com/dir/中文.html")),
+				extract("癶ttp://no.com <a href=\"中文.html\">", gbk));
+		Assertions.assertEquals(new LinkedHashSet<>(Arrays.asList("https://a.com/dir/中文.html")),
+				extract("<a href=\"%E4%B8%AD%E6%96%87.html\">", StandardCharsets.UTF_8));
+		Assertions.assertEquals(new LinkedHashSet<>(Arrays.asList("https://a.com/dir/x.html")),
+				extract("<a href=\"x.html\">", StandardCharsets.UTF_16));
+	}
+
+	@Test
+	public void decode() {
+		Assertions.assertEquals("a&b<>\"'/", LinkExtractor.decodeEntities("a&amp;b&lt;&gt;&quot;&#39;&#x2F;"));
+		Assertions.assertEquals("a&b &unknown;", LinkExtractor.decodeEntities("a&b &unknown;"));
+		Assertions.assertEquals("a b%zz%", LinkExtractor.urlDecode("a+b%zz%", StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void resolve() {
+		LinkExtractor extractor = new LinkExtractor("http://a.com/x/y", StandardCharsets.UTF_8);
+		Assertions.assertEquals("http://a.com/x/z", extractor.resolve("z"));
+		Assertions.assertEquals("http://a.com/z", extractor.resolve("/z"));
+		Assertions.assertNull(extractor.resolve("#z"));
+		Assertions.assertNull(extractor.resolve(""));
+	}
+}
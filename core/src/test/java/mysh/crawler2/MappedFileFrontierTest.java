@@ -0,0 +1,92 @@
+package mysh.crawler2;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * @since 2026-10-18
+ */
+public class MappedFileFrontierTest {
+
+	static class PriorityCtx implements UrlContext {
+		private static final long serialVersionUID = -3017335566209826416L;
+		final int priority;
+
+		PriorityCtx(int priority) {
+			this.priority = priority;
+		}
+
+		@Override
+		public int compareTo(Object o) {
+			return Integer.compare(priority, ((PriorityCtx) o).priority);
+		}
+	}
+
+	private final Comparator<UrlCtxHolder<PriorityCtx>> order = (a, b) -> a.ctx.compareTo(b.ctx);
+
+	@Test
+	public void keepOrder(@TempDir File dir) {
+		MappedFileFrontier<PriorityCtx> frontier = new MappedFileFrontier<>(dir, "test", order, 16);
+		Random rand = new Random(1);
+		int total = 5000;
+		for (int i = 0; i < total; i++) {
+			frontier.add(UrlCtxHolder.of("http://a.com/" + i, new PriorityCtx(rand.nextInt(1000))));
+		}
+		Assertions.assertEquals(total, frontier.size());
+		// ~600 spilled segments are merged in tiers of 8
+		int segFiles = dir.listFiles()[0].list().length;
+		Assertions.assertTrue(segFiles < 4 * 8, "segment files: " + segFiles);
+
+		int last = -1;
+		for (int i = 0; i < total / 2; i++) {
+			UrlCtxHolder<PriorityCtx> task = frontier.poll();
+			Assertions.assertNotNull(task);
+			Assertions.assertTrue(task.url.startsWith("http://a.com/"));
+			Assertions.assertTrue(task.ctx.priority >= last);
+			last = task.ctx.priority;
+		}
+
+		// tasks added later still come out in order
+		frontier.add(UrlCtxHolder.of("http://a.com/first", new PriorityCtx(-1)));
+		Assertions.assertEquals("http://a.com/first", frontier.poll().url);
+
+		List<UrlCtxHolder<PriorityCtx>> rest = frontier.drain();
+		Assertions.assertEquals(total - total / 2, rest.size());
+		for (UrlCtxHolder<PriorityCtx> task : rest) {
+			Assertions.assertTrue(task.ctx.priority >= last);
+			last = task.ctx.priority;
+		}
+		Assertions.assertNull(frontier.poll());
+
+		frontier.close();
+		Assertions.assertEquals(0, dir.listFiles().length);
+	}
+
+	@Test
+	public void nullCtx(@TempDir File dir) {
+		Frontier<PriorityCtx> frontier = MappedFileFrontier.factory(dir, 2)
+		                                                   .create("nullCtx", (a, b) -> 0);
+		List<String> urls = new ArrayList<>();
+		for (int i = 0; i < 10; i++) {
+			urls.add("http://a.com/" + i);
+			frontier.add(UrlCtxHolder.of("http://a.com/" + i));
+		}
+		List<String> polled = new ArrayList<>();
+		UrlCtxHolder<PriorityCtx> task;
+		while ((task = frontier.poll()) != null) {
+			Assertions.assertNull(task.ctx);
+			polled.add(task.url);
+		}
+		polled.sort(null);
+		urls.sort(null);
+		Assertions.assertEquals(urls, polled);
+		frontier.close();
+	}
+}
@@ -0,0 +1,114 @@
+package mysh.crawler2;
+
+import com.sun.net.httpserver.HttpServer;
+import mysh.net.httpclient.HttpClientAssist;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * @since 2026-10-18
+ */
+public class PartitionedSeedTest {
+	private static final String[] HOSTS = {"127.0.0.1", "127.0.0.2", "127.0.0.3", "127.0.0.4", "localhost"};
+	private static final int PAGES_PER_HOST = 20;
+
+	@Test
+	public void partitionOf() {
+		Assertions.assertEquals(PartitionedSeed.partitionOf("http://a.com/1", 7),
+				PartitionedSeed.partitionOf("https://a.com:8443/2?q=1", 7));
+		Set<Integer> partitions = new HashSet<>();
+		for (int i = 0; i < 100; i++)
+			partitions.add(PartitionedSeed.partitionOf("http://h" + i + ".com/", 3));
+		Assertions.assertEquals(new HashSet<>(Arrays.asList(0, 1, 2)), partitions);
+	}
+
+	@Test
+	public void crawl() throws Exception {
+		HttpServer server = HttpServer.create(new InetSocketAddress("0.0.0.0", 0), 0);
+		int port = server.getAddress().getPort();
+		// page i of a host links to the next page of the same host, and the same page of the next host
+		server.createContext("/", exchange -> {
+			String host = exchange.getRequestHeaders().getFirst("Host").replaceFirst(":\\d+$", "");
+			int i = Integer.parseInt(exchange.getRequestURI().getPath().substring(1));
+			String nextHost = HOSTS[(Arrays.asList(HOSTS).indexOf(host) + 1) % HOSTS.length];
+			byte[] body = ("<a href='/" + (i + 1) % PAGES_PER_HOST + "'>n</a>"
+					+ "<a href='http://" + nextHost + ":" + port + "/" + i + "'>h</a>")
+					.getBytes(StandardCharsets.UTF_8);
+			exchange.getResponseHeaders().set("Content-Type", "text/html; charset=utf-8");
+			exchange.sendResponseHeaders(200, body.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(body);
+			}
+		});
+		server.start();
+
+		int nodes = 2;
+		Map<String, Integer> crawledBy = new ConcurrentHashMap<>();
+		AtomicInteger repeated = new AtomicInteger();
+		List<PartitionedSeed<UrlContext>> seeds = new ArrayList<>();
+		List<Crawler<UrlContext>> crawlers = new ArrayList<>();
+		try {
+			for (int n = 0; n < nodes; n++) {
+				int node = n;
+				CrawlerSeed<UrlContext> seed = new CrawlerSeed<UrlContext>() {
+					private static final long serialVersionUID = -2180357396424826563L;
+					final Set<String> visited = ConcurrentHashMap.newKeySet();
+
+					@Override
+					public Stream<UrlCtxHolder<UrlContext>> getSeeds() {
+						return Stream.of(UrlCtxHolder.of("http://" + HOSTS[0] + ":" + port + "/0"));
+					}
+
+					@Override
+					public boolean accept(String url, UrlContext ctx) {
+						return !visited.contains(url);
+					}
+
+					@Override
+					public boolean onGet(HttpClientAssist.UrlEntity ue, UrlContext ctx) {
+						if (visited.add(ue.getReqUrl()) && crawledBy.putIfAbsent(ue.getReqUrl(), node) != null)
+							repeated.incrementAndGet();
+						return true;
+					}
+				};
+				seeds.add(new PartitionedSeed<>(seed, n, nodes, (p, batch) -> seeds.get(p).receive(batch), 10, 50));
+			}
+			for (PartitionedSeed<UrlContext> seed : seeds) {
+				Crawler<UrlContext> crawler = new Crawler<>(seed, null, 6_000_000, 4);
+				seed.attach(crawler);
+				crawlers.add(crawler);
+			}
+			crawlers.forEach(Crawler::start);
+
+			long start = System.currentTimeMillis();
+			int stableChecks = 0;
+			long lastForwarded = -1;
+			while (stableChecks < 2 && System.currentTimeMillis() - start < 20_000) {
+				Thread.sleep(100);
+				long forwarded = seeds.stream().mapToLong(PartitionedSeed::getForwarded).sum();
+				long received = seeds.stream().mapToLong(PartitionedSeed::getReceived).sum();
+				if (seeds.stream().allMatch(PartitionedSeed::isIdle) && forwarded == received && forwarded == lastForwarded)
+					stableChecks++;
+				else
+					stableChecks = 0;
+				lastForwarded = forwarded;
+			}
+			crawlers.forEach(Crawler::stop);
+		} finally {
+			server.stop(0);
+		}
+
+		Assertions.assertEquals(0, repeated.get());
+		Assertions.assertEquals(HOSTS.length * PAGES_PER_HOST, crawledBy.size());
+		crawledBy.forEach((url, node) -> Assertions.assertEquals(PartitionedSeed.partitionOf(url, nodes), (int) node, url));
+		Assertions.assertTrue(seeds.stream().mapToLong(PartitionedSeed::getForwarded).sum() > 0);
+	}
+}
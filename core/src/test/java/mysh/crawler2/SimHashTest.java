@@ -0,0 +1,79 @@
+package mysh.crawler2;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * @since 2026-10-18
+ */
+public class SimHashTest {
+
+	private static String words(Random r, int n) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < n; i++)
+			sb.append("w").append(r.nextInt(5000)).append(' ');
+		return sb.toString();
+	}
+
+	@Test
+	public void nearDuplicate() {
+		String body = words(new Random(1), 500);
+		String page = "<html><head><style>p{color:red}</style><script>var sid=1;</script></head><body>" + body + "</body></html>";
+		String samePage = "<html><head><style>p{color:blue}</style><script>var sid=2;</script></head><body class='x'>"
+				+ body + "<!-- sid=2 --></body></html>";
+		String edited = page.replace("</body>", "session 12345</body>");
+
+		long a = SimHash.ofPage(page.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8, 16);
+		Assertions.assertEquals(0, SimHash.distance(a, SimHash.ofText(samePage, true, 16)));
+		Assertions.assertTrue(SimHash.distance(a, SimHash.ofText(edited, true, 16)) <= 3);
+		Assertions.assertTrue(SimHash.distance(a, SimHash.ofText(words(new Random(2), 500), true, 16)) > 10);
+		// case insensitive
+		Assertions.assertEquals(SimHash.ofText("Hello World foo", false, 1), SimHash.ofText("hello WORLD foo", false, 1));
+
+		Assertions.assertNull(SimHash.ofText("<p>too short</p>", true, 16));
+	}
+
+	@Test
+	public void cjk() {
+		String text = "近似重复的页面不存储也不提取链接这样可以节省大量的处理时间和存储空间";
+		long a = SimHash.ofText(text, false, 16);
+		Assertions.assertTrue(SimHash.distance(a, SimHash.ofText(text + "。", false, 16)) == 0);
+		Assertions.assertTrue(SimHash.distance(a, SimHash.ofText("完全不同的一段文字内容用来测试指纹的差异程度是否足够大以及其他", false, 16)) > 10);
+	}
+
+	@Test
+	public void index() {
+		Random r = new Random(3);
+		SimHashIndex index = new SimHashIndex(3);
+		long[] fps = new long[10000];
+		for (int i = 0; i < fps.length; i++) {
+			fps[i] = r.nextLong();
+			Assertions.assertTrue(index.addIfAbsent(fps[i]));
+		}
+		Assertions.assertEquals(fps.length, index.size());
+
+		for (long fp : fps) {
+			// flip 3 random bits
+			long near = fp ^ (1L << r.nextInt(64)) ^ (1L << r.nextInt(64)) ^ (1L << r.nextInt(64));
+			Assertions.assertTrue(index.containsNear(near));
+			Assertions.assertFalse(index.addIfAbsent(near));
+		}
+		long far = fps[0] ^ 0xFFL;
+		Assertions.assertFalse(index.containsNear(far));
+
+		// removed one no longer blocks its near-duplicates
+		Assertions.assertTrue(index.remove(fps[1]));
+		Assertions.assertFalse(index.remove(fps[1]));
+		Assertions.assertEquals(fps.length - 1, index.size());
+		Assertions.assertTrue(index.addIfAbsent(fps[1] ^ 1));
+
+		SimHashIndex exact = new SimHashIndex(0);
+		Assertions.assertTrue(exact.addIfAbsent(42));
+		Assertions.assertFalse(exact.addIfAbsent(42));
+		Assertions.assertTrue(exact.addIfAbsent(43));
+		Assertions.assertThrows(IllegalArgumentException.class, () -> new SimHashIndex(8));
+	}
+}
@@ -0,0 +1,63 @@
+package mysh.crawler2;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @since 2026-10-18
+ */
+public class TokenBucketTest {
+
+	@Test
+	public void burst() {
+		TokenBucket bucket = new TokenBucket(600, 3);
+		Assertions.assertEquals(600, bucket.getRatePerMinute());
+		for (int i = 0; i < 3; i++)
+			Assertions.assertEquals(0, bucket.tryAcquire());
+
+		long wait = bucket.tryAcquire();
+		Assertions.assertTrue(wait > 0 && wait <= TimeUnit.MILLISECONDS.toNanos(100), "wait=" + wait);
+
+		bucket.refund();
+		Assertions.assertEquals(0, bucket.tryAcquire());
+	}
+
+	@Test
+	public void unlimited() {
+		TokenBucket bucket = new TokenBucket(Integer.MAX_VALUE, 1);
+		Assertions.assertEquals(Integer.MAX_VALUE, bucket.getRatePerMinute());
+		for (int i = 0; i < 10_000; i++)
+			Assertions.assertEquals(0, bucket.tryAcquire());
+	}
+
+	@Test
+	public void subMilliRate() {
+		AtomicLong nanos = new AtomicLong();
+		// one permit per 10 micro-seconds
+		TokenBucket bucket = new TokenBucket(6_000_000, 1, nanos::get);
+		Assertions.assertEquals(0, bucket.tryAcquire());
+		Assertions.assertEquals(10_000, bucket.tryAcquire());
+
+		nanos.addAndGet(4_000);
+		Assertions.assertEquals(6_000, bucket.tryAcquire());
+		nanos.addAndGet(6_000);
+		Assertions.assertEquals(0, bucket.tryAcquire());
+
+		// a permit every 10us over 200ms, checked every 1us
+		int count = 0;
+		for (int i = 0; i < 200_000; i++) {
+			nanos.addAndGet(1_000);
+			if (bucket.tryAcquire() == 0)
+				count++;
+		}
+		Assertions.assertEquals(20_000, count);
+
+		// idle time doesn't accumulate permits beyond burst
+		nanos.addAndGet(TimeUnit.SECONDS.toNanos(1));
+		Assertions.assertEquals(0, bucket.tryAcquire());
+		Assertions.assertEquals(10_000, bucket.tryAcquire());
+	}
+}
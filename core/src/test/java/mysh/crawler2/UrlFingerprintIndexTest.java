@@ -0,0 +1,50 @@
+package mysh.crawler2;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * @since 2026-10-18
+ */
+public class UrlFingerprintIndexTest {
+
+	@Test
+	public void sameAsHashMap() {
+		UrlFingerprintIndex index = new UrlFingerprintIndex();
+		Map<Long, Integer> expected = new HashMap<>();
+		Random rand = new Random(1);
+		for (int i = 0; i < 200_000; i++) {
+			// small key space, so adds, removes and counters hit existing keys frequently
+			long fp = UrlFingerprintIndex.fingerprint("http://a.com/" + rand.nextInt(20_000));
+			switch (rand.nextInt(4)) {
+				case 0:
+				case 1:
+					Assertions.assertEquals(expected.putIfAbsent(fp, 0) == null, index.add(fp));
+					break;
+				case 2:
+					Assertions.assertEquals(expected.remove(fp) != null, index.remove(fp));
+					break;
+				default:
+					Integer count = expected.computeIfPresent(fp, (k, v) -> v + 1);
+					Assertions.assertEquals(count == null ? -1 : count - 1, index.getAndIncrement(fp));
+			}
+		}
+		Assertions.assertEquals(expected.size(), index.size());
+		expected.forEach((fp, count) -> Assertions.assertEquals((int) count, index.get(fp)));
+
+		expected.keySet().forEach(index::remove);
+		Assertions.assertEquals(0, index.size());
+	}
+
+	@Test
+	public void fingerprint() {
+		Assertions.assertEquals(UrlFingerprintIndex.fingerprint("http://a.com/x"),
+				UrlFingerprintIndex.fingerprint(UrlCtxHolder.of("http://a.com/x").url));
+		Assertions.assertNotEquals(UrlFingerprintIndex.fingerprint("http://a.com/x"),
+				UrlFingerprintIndex.fingerprint("http://a.com/y"));
+	}
+}
@@ -0,0 +1,116 @@
+package mysh.crawler2.app;
+
+import mysh.sql.sqlite.SqliteDB;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * @since 2026-10-18
+ */
+public class PageBlobStoreTest {
+
+	@Test
+	public void dedupeAndCompress(@TempDir File dir) throws Exception {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 1000; i++)
+			sb.append("<p>line ").append(i).append("</p>\n");
+		byte[] text = sb.toString().getBytes(StandardCharsets.UTF_8);
+		byte[] random = new byte[10_000];
+		new Random(1).nextBytes(random);
+
+		File blobDir = new File(dir, "blobs");
+		try (SqliteDB db = new SqliteDB(new File(dir, "test.db").toPath())) {
+			SqliteDB.KvDAO<String> index = db.genKvDAO("blobs", false, false);
+			String textHash, randomHash;
+			try (PageBlobStore store = new PageBlobStore(blobDir, index, 1 << 20)) {
+				textHash = store.put(text, true);
+				long size = segmentsSize(blobDir);
+				Assertions.assertTrue(size < text.length / 3, "text compressed: " + size);
+
+				// identical content is stored once
+				Assertions.assertEquals(textHash, store.put(text.clone(), true));
+				Assertions.assertEquals(size, segmentsSize(blobDir));
+
+				// incompressible content is stored raw
+				randomHash = store.put(random, true);
+				Assertions.assertEquals(size + random.length, segmentsSize(blobDir));
+
+				Assertions.assertArrayEquals(text, store.get(textHash));
+				Assertions.assertArrayEquals(random, store.get(randomHash));
+				Assertions.assertNull(store.get("none"));
+
+				// stored gzip data is served as is
+				PageBlobStore.Blob blob = store.getBlob(textHash);
+				Assertions.assertTrue(blob.gzipped);
+				byte[] gunzipped = new byte[text.length];
+				try (DataInputStream in = new DataInputStream(new GZIPInputStream(new ByteArrayInputStream(blob.data)))) {
+					in.readFully(gunzipped);
+				}
+				Assertions.assertArrayEquals(text, gunzipped);
+				Assertions.assertFalse(store.getBlob(randomHash).gzipped);
+			}
+
+			// reopen, and roll segments
+			try (PageBlobStore store = new PageBlobStore(blobDir, index, 1)) {
+				Assertions.assertArrayEquals(text, store.get(textHash));
+				byte[] small = "small".getBytes(StandardCharsets.UTF_8);
+				String smallHash = store.put(small, true);
+				Assertions.assertArrayEquals(small, store.get(smallHash));
+				Assertions.assertArrayEquals(random, store.get(randomHash));
+			}
+			Assertions.assertEquals(2, blobDir.list().length);
+		}
+	}
+
+	@Test
+	public void concurrentPut(@TempDir File dir) throws Exception {
+		int threads = 8, perThread = 50;
+		File blobDir = new File(dir, "blobs");
+		try (SqliteDB db = new SqliteDB(new File(dir, "test.db").toPath())) {
+			SqliteDB.KvDAO<String> index = db.genKvDAO("blobs", false, false);
+			ExecutorService exec = Executors.newFixedThreadPool(threads);
+			try (PageBlobStore store = new PageBlobStore(blobDir, index, 4096)) {
+				List<Future<?>> fs = new ArrayList<>();
+				for (int t = 0; t < threads; t++)
+					fs.add(exec.submit(() -> {
+						// every thread puts the same contents, each stored once
+						for (int i = 0; i < perThread; i++) {
+							byte[] content = ("page " + i).getBytes(StandardCharsets.UTF_8);
+							String hash = store.put(content, true);
+							Assertions.assertArrayEquals(content, store.get(hash));
+						}
+						return null;
+					}));
+				for (Future<?> f : fs)
+					f.get();
+			} finally {
+				exec.shutdown();
+			}
+			Assertions.assertEquals(perThread, index.items().size());
+			long expected = 0;
+			for (int i = 0; i < perThread; i++)
+				expected += ("page " + i).getBytes(StandardCharsets.UTF_8).length;
+			Assertions.assertEquals(expected, segmentsSize(blobDir));
+		}
+	}
+
+	private static long segmentsSize(File dir) {
+		long size = 0;
+		for (File f : dir.listFiles())
+			size += f.length();
+		return size;
+	}
+}
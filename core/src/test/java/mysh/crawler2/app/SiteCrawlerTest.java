@@ -0,0 +1,194 @@
+package mysh.crawler2.app;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.net.HttpHeaders;
+import com.sun.net.httpserver.HttpServer;
+import mysh.crawler2.Crawler;
+import mysh.crawler2.UrlContext;
+import mysh.sql.sqlite.SqliteDB;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * @since 2026-10-18
+ */
+public class SiteCrawlerTest {
+
+	@Test
+	public void validators() {
+		Assertions.assertEquals(3600, SiteCrawler.Validators.parseMaxAge("public, max-age=3600"));
+		Assertions.assertEquals(0, SiteCrawler.Validators.parseMaxAge("max-age=3600, no-cache"));
+		Assertions.assertEquals(-1, SiteCrawler.Validators.parseMaxAge("private"));
+
+		SiteCrawler.Validators v = new SiteCrawler.Validators().setETag("\"v1\"").setMaxAge(10);
+		SiteCrawler.Validators d = SiteCrawler.Validators.decode(v.encode());
+		Assertions.assertEquals(v, d);
+		Assertions.assertEquals(1, d.conditionalHeaders().size());
+		Assertions.assertEquals("\"v1\"", d.conditionalHeaders().get(HttpHeaders.IF_NONE_MATCH));
+	}
+
+	@Test
+	public void revalidate(@TempDir File dir) throws Exception {
+		AtomicInteger full = new AtomicInteger(), notModified = new AtomicInteger();
+		HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", exchange -> {
+			String path = exchange.getRequestURI().getPath();
+			String eTag = "\"" + path + "-v1\"";
+			exchange.getResponseHeaders().set(HttpHeaders.ETAG, eTag);
+			if (eTag.equals(exchange.getRequestHeaders().getFirst(HttpHeaders.IF_NONE_MATCH))) {
+				notModified.incrementAndGet();
+				exchange.sendResponseHeaders(304, -1);
+				exchange.close();
+				return;
+			}
+			full.incrementAndGet();
+			byte[] body = ("/".equals(path) ? "<a href='/a'>a</a><a href='/b'>b</a>" : "page " + path)
+					.getBytes(StandardCharsets.UTF_8);
+			exchange.getResponseHeaders().set(HttpHeaders.CONTENT_TYPE, "text/html; charset=utf-8");
+			exchange.sendResponseHeaders(200, body.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(body);
+			}
+		});
+		server.start();
+		String root = "http://127.0.0.1:" + server.getAddress().getPort();
+
+		try {
+			crawl(dir, root, 3);
+			Assertions.assertEquals(3, full.get());
+
+			// recrawl: pages are revalidated and links come from stored pages
+			crawl(dir, root, 3);
+			Assertions.assertEquals(3, full.get());
+			Assertions.assertEquals(3, notModified.get());
+		} finally {
+			server.stop(0);
+		}
+	}
+
+	@Test
+	public void mirror(@TempDir File dir) throws Exception {
+		AtomicInteger upstream = new AtomicInteger();
+		HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		String root = "http://127.0.0.1:" + server.getAddress().getPort();
+		StringBuilder big = new StringBuilder();
+		for (int i = 0; i < 200; i++)
+			big.append("<a href='").append(root).append("/p").append(i).append("'>page ").append(i).append("</a>\n");
+		server.createContext("/", exchange -> {
+			upstream.incrementAndGet();
+			String path = exchange.getRequestURI().getPath();
+			byte[] body = ("/".equals(path) ? "<a href='/big'>big</a>" : "/big".equals(path) ? big.toString() : "page " + path)
+					.getBytes(StandardCharsets.UTF_8);
+			exchange.getResponseHeaders().set(HttpHeaders.CONTENT_TYPE, "text/html; charset=utf-8");
+			exchange.sendResponseHeaders(200, body.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(body);
+			}
+		});
+		server.start();
+
+		Set<String> visited = ConcurrentHashMap.newKeySet();
+		AtomicInteger got = new AtomicInteger();
+		try (SiteCrawler<UrlContext> sc = newSiteCrawler(dir, root, visited, got, u -> u.endsWith("/") || u.endsWith("/big"))) {
+			Crawler<UrlContext> crawler = sc.startCrawler(null);
+			long start = System.currentTimeMillis();
+			while (got.get() < 2 && System.currentTimeMillis() - start < 10_000)
+				Thread.sleep(20);
+			Thread.sleep(200);
+			crawler.stop();
+			Assertions.assertEquals(2, got.get());
+			int crawled = upstream.get();
+
+			try (SiteMirrorServer<UrlContext> mirror = sc.startWebServer(0)) {
+				String local = "http://127.0.0.1:" + mirror.getPort();
+				String expected = big.toString().replace(root, "");
+				String eTag = null;
+				for (int i = 0; i < 3; i++) {
+					HttpURLConnection conn = (HttpURLConnection) new URL(local + "/big").openConnection();
+					conn.setRequestProperty(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate");
+					Assertions.assertEquals(200, conn.getResponseCode());
+					Assertions.assertEquals("gzip", conn.getHeaderField(HttpHeaders.CONTENT_ENCODING));
+					try (InputStream in = new GZIPInputStream(conn.getInputStream())) {
+						Assertions.assertEquals(expected, new String(ByteStreams.toByteArray(in), StandardCharsets.UTF_8));
+					}
+					eTag = conn.getHeaderField(HttpHeaders.ETAG);
+				}
+				Assertions.assertEquals(1, mirror.getCacheMisses());
+				Assertions.assertEquals(2, mirror.getCacheHits());
+
+				HttpURLConnection conn = (HttpURLConnection) new URL(local + "/big").openConnection();
+				conn.setRequestProperty(HttpHeaders.IF_NONE_MATCH, eTag);
+				Assertions.assertEquals(304, conn.getResponseCode());
+				conn.getInputStream().close();
+
+				// not stored, loaded from upstream
+				conn = (HttpURLConnection) new URL(local + "/c").openConnection();
+				Assertions.assertEquals(200, conn.getResponseCode());
+				try (InputStream in = conn.getInputStream()) {
+					Assertions.assertEquals("page /c", new String(ByteStreams.toByteArray(in), StandardCharsets.UTF_8));
+				}
+				Assertions.assertEquals(crawled + 1, upstream.get());
+			}
+		} finally {
+			server.stop(0);
+		}
+	}
+
+	private static SiteCrawler<UrlContext> newSiteCrawler(
+			File dir, String root, Set<String> visited, AtomicInteger got, Predicate<String> filter) {
+		return new SiteCrawler<UrlContext>() {
+			@Override
+			protected SiteConfig getConfig() {
+				return new SiteConfig().setName("test").setSiteRoot(root)
+				                       .setDbFile(new File(dir, "site.db").getPath())
+				                       .setCrawlRatePerMin(6_000_000);
+			}
+
+			@Override
+			public boolean accept(String url, UrlContext ctx) {
+				return url.startsWith(root) && !visited.contains(url) && filter.test(url);
+			}
+
+			@Override
+			public boolean onGet(mysh.net.httpclient.HttpClientAssist.UrlEntity ue, UrlContext ctx) {
+				boolean r = super.onGet(ue, ctx);
+				if (visited.add(ue.getReqUrl()))
+					got.incrementAndGet();
+				return r;
+			}
+		};
+	}
+
+	private static void crawl(File dir, String root, int pages) throws Exception {
+		Set<String> visited = ConcurrentHashMap.newKeySet();
+		AtomicInteger got = new AtomicInteger();
+		try (SiteCrawler<UrlContext> sc = newSiteCrawler(dir, root, visited, got, u -> true)) {
+			Crawler<UrlContext> crawler = sc.startCrawler(null);
+			long start = System.currentTimeMillis();
+			while (got.get() < pages && System.currentTimeMillis() - start < 10_000)
+				Thread.sleep(20);
+			// let the last page be handled
+			Thread.sleep(200);
+			crawler.stop();
+
+			Assertions.assertEquals(pages, got.get());
+			SqliteDB.Item<SiteCrawler.PageInfo> a = sc.getPage("/a");
+			Assertions.assertEquals("page /a", new String(a.getValue().getContent(), StandardCharsets.UTF_8));
+			Assertions.assertEquals("\"/a-v1\"", SiteCrawler.Validators.decode(sc.validatorDAO.byKey("/a")).getETag());
+		}
+	}
+}
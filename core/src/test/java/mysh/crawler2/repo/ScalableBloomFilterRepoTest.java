@@ -0,0 +1,76 @@
+package mysh.crawler2.repo;
+
+import mysh.crawler2.UrlContext;
+import mysh.crawler2.UrlCtxHolder;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @since 2026-10-18
+ */
+public class ScalableBloomFilterRepoTest {
+
+	@Test
+	public void growAndReload(@TempDir File dir) {
+		int total = 50_000;
+		double fpp = 0.01;
+		ScalableBloomFilterRepo<UrlContext> repo = new ScalableBloomFilterRepo<>(dir, 1000, fpp);
+		Assertions.assertNull(repo.load());
+		for (int i = 0; i < total; i++)
+			repo.add("http://a.com/" + i);
+		for (int i = 0; i < total; i++)
+			Assertions.assertTrue(repo.contains("http://a.com/" + i));
+		Assertions.assertEquals(total, repo.size(), total * fpp);
+
+		int falsePositives = 0;
+		for (int i = 0; i < total; i++) {
+			if (repo.contains("http://b.com/" + i))
+				falsePositives++;
+		}
+		Assertions.assertTrue(falsePositives < total * fpp, "falsePositives=" + falsePositives);
+
+		repo.save(Collections.singletonList(UrlCtxHolder.of("http://a.com/task")));
+		long size = repo.size();
+		// not saved
+		repo.add("http://c.com/unsaved");
+		repo.close();
+
+		ScalableBloomFilterRepo<UrlContext> reloaded = new ScalableBloomFilterRepo<>(dir, 1000, fpp);
+		Collection<UrlCtxHolder<UrlContext>> tasks = reloaded.load();
+		Assertions.assertEquals(1, tasks.size());
+		Assertions.assertEquals("http://a.com/task", tasks.iterator().next().getUrl());
+		for (int i = 0; i < total; i++)
+			Assertions.assertTrue(reloaded.contains("http://a.com/" + i));
+		Assertions.assertEquals(size, reloaded.size());
+		reloaded.close();
+	}
+
+	@Test
+	public void concurrentAdd(@TempDir File dir) throws InterruptedException {
+		ScalableBloomFilterRepo<UrlContext> repo = new ScalableBloomFilterRepo<>(dir, 1000, 0.01);
+		repo.load();
+		int threads = 8, perThread = 10_000;
+		ExecutorService exec = Executors.newFixedThreadPool(threads);
+		for (int t = 0; t < threads; t++) {
+			int base = t * perThread;
+			exec.execute(() -> {
+				for (int i = 0; i < perThread; i++)
+					repo.add("http://a.com/" + (base + i));
+			});
+		}
+		exec.shutdown();
+		Assertions.assertTrue(exec.awaitTermination(1, TimeUnit.MINUTES));
+		// no bit is lost by concurrent setting
+		for (int i = 0; i < threads * perThread; i++)
+			Assertions.assertTrue(repo.contains("http://a.com/" + i));
+		repo.close();
+	}
+}
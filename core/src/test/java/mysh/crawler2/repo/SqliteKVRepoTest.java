@@ -0,0 +1,44 @@
+package mysh.crawler2.repo;
+
+import mysh.crawler2.UrlContext;
+import mysh.crawler2.UrlCtxHolder;
+import mysh.sql.sqlite.SqliteDB;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.util.Collections;
+
+/**
+ * @since 2026-10-18
+ */
+public class SqliteKVRepoTest {
+
+	@Test
+	public void writeBehind(@TempDir File dir) {
+		int total = 20_000;
+		try (SqliteDB db = new SqliteDB(new File(dir, "repo.db").toPath())) {
+			SqliteDB.KvDAO<Object> dao = db.genKvDAO("urls", false, false);
+			SqliteKVRepo<UrlContext> repo = new SqliteKVRepo<>(dao, 1000, 100);
+
+			for (int i = 0; i < total; i++) {
+				repo.add("http://a.com/" + i);
+				// read own writes
+				Assertions.assertTrue(repo.contains("http://a.com/" + i));
+			}
+			repo.put("http://a.com/content", "c");
+			repo.remove("http://a.com/0");
+			Assertions.assertEquals("c", repo.get("http://a.com/content"));
+			Assertions.assertFalse(repo.contains("http://a.com/0"));
+			repo.save(Collections.singletonList(UrlCtxHolder.of("http://a.com/task")));
+
+			// all flushed
+			Assertions.assertTrue(dao.containsKey("http://a.com/" + (total - 1)));
+			Assertions.assertFalse(dao.containsKey("http://a.com/0"));
+			Assertions.assertEquals("c", dao.byKey("http://a.com/content"));
+			Assertions.assertEquals(1, repo.load().size());
+			repo.close();
+		}
+	}
+}
@@ -0,0 +1,110 @@
+package mysh.net.httpclient;
+
+import com.sun.net.httpserver.HttpServer;
+import okhttp3.Dns;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @since 2026-10-18
+ */
+public class CachingDnsTest {
+
+	/**
+	 * in-process resolver.
+	 */
+	static class FakeDns implements Dns {
+		final Map<String, InetAddress> records = new ConcurrentHashMap<>();
+
+		@Override
+		public List<InetAddress> lookup(String host) throws UnknownHostException {
+			InetAddress address = records.get(host);
+			if (address == null)
+				throw new UnknownHostException(host);
+			return Collections.singletonList(address);
+		}
+	}
+
+	private static InetAddress ip(String ip) throws UnknownHostException {
+		return InetAddress.getByName(ip);
+	}
+
+	@Test
+	public void cache() throws UnknownHostException {
+		FakeDns fake = new FakeDns();
+		AtomicLong nanos = new AtomicLong();
+		// ttl 100ms, prefetch in the last 20ms, serve stale in 1s
+		CachingDns dns = new CachingDns(fake, 100, 20, 1000, Runnable::run, nanos::get);
+		fake.records.put("a.com", ip("10.0.0.1"));
+
+		Assertions.assertEquals(Collections.singletonList(ip("10.0.0.1")), dns.lookup("a.com"));
+		Assertions.assertEquals(Collections.singletonList(ip("10.0.0.1")), dns.lookup("a.com"));
+		Assertions.assertEquals(1, dns.getResolutions());
+
+		// prefetch before expiring
+		nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(90));
+		fake.records.put("a.com", ip("10.0.0.2"));
+		Assertions.assertEquals(Collections.singletonList(ip("10.0.0.1")), dns.lookup("a.com"));
+		Assertions.assertEquals(2, dns.getResolutions());
+		Assertions.assertEquals(Collections.singletonList(ip("10.0.0.2")), dns.lookup("a.com"));
+
+		// stale one is served while resolving
+		nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(500));
+		fake.records.put("a.com", ip("10.0.0.3"));
+		Assertions.assertEquals(Collections.singletonList(ip("10.0.0.2")), dns.lookup("a.com"));
+		Assertions.assertEquals(Collections.singletonList(ip("10.0.0.3")), dns.lookup("a.com"));
+		Assertions.assertEquals(3, dns.getResolutions());
+
+		// stale one is kept if resolving fails
+		nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(500));
+		fake.records.remove("a.com");
+		Assertions.assertEquals(Collections.singletonList(ip("10.0.0.3")), dns.lookup("a.com"));
+		Assertions.assertEquals(Collections.singletonList(ip("10.0.0.3")), dns.lookup("a.com"));
+
+		// too stale
+		nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(2000));
+		Assertions.assertThrows(UnknownHostException.class, () -> dns.lookup("a.com"));
+		Assertions.assertThrows(UnknownHostException.class, () -> dns.lookup("b.com"));
+
+		// prefetch ahead of accessing
+		fake.records.put("c.com", ip("10.0.0.4"));
+		long resolutions = dns.getResolutions();
+		dns.prefetch("c.com");
+		Assertions.assertEquals(resolutions + 1, dns.getResolutions());
+		Assertions.assertEquals(Collections.singletonList(ip("10.0.0.4")), dns.lookup("c.com"));
+		Assertions.assertEquals(resolutions + 1, dns.getResolutions());
+
+		dns.override("b.com", ip("10.0.0.5"));
+		Assertions.assertEquals(Collections.singletonList(ip("10.0.0.5")), dns.lookup("b.com"));
+		dns.override("b.com");
+		Assertions.assertThrows(UnknownHostException.class, () -> dns.lookup("b.com"));
+	}
+
+	@Test
+	public void client() throws IOException {
+		HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", exchange -> {
+			exchange.sendResponseHeaders(204, -1);
+			exchange.close();
+		});
+		server.start();
+		CachingDns dns = new CachingDns().override("mlib.test", ip("127.0.0.1"));
+		try (HttpClientAssist hca = new HttpClientAssist(new HttpClientConfig().setDns(dns));
+		     HttpClientAssist.UrlEntity ue = hca.access("http://mlib.test:" + server.getAddress().getPort() + "/")) {
+			Assertions.assertEquals(204, ue.getStatusCode());
+		} finally {
+			server.stop(0);
+		}
+	}
+}
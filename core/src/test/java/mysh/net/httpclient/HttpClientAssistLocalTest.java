@@ -0,0 +1,495 @@
+package mysh.net.httpclient;
+
+import com.alibaba.fastjson.JSONException;
+import com.alibaba.fastjson.JSONObject;
+import com.alibaba.fastjson.TypeReference;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CharStreams;
+import com.google.common.net.HttpHeaders;
+import com.sun.net.httpserver.HttpServer;
+import mysh.collect.Colls;
+import mysh.util.Encodings;
+import okhttp3.Protocol;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * tests against a local http server.
+ *
+ * @since 2026-10-18
+ */
+public class HttpClientAssistLocalTest {
+	private static HttpServer server;
+	private static String root;
+	private static final Map<String, Page> pages = new ConcurrentHashMap<>();
+	private static final String RANGED_ETAG = "\"r1\"";
+	private static final byte[] rangedContent = new byte[3 * 1024 * 1024 + 123];
+	private static final AtomicLong rangedServed = new AtomicLong();
+	private static final Set<Integer> warmPorts = ConcurrentHashMap.newKeySet();
+	private static final AtomicInteger concurrent = new AtomicInteger(), maxConcurrent = new AtomicInteger();
+
+	static class Page {
+		final String contentType;
+		final byte[] body;
+		final boolean gzip;
+		final Map<String, String> headers = new HashMap<>();
+		final AtomicInteger accessed = new AtomicInteger();
+
+		Page(String contentType, byte[] body, boolean gzip) {
+			this.contentType = contentType;
+			this.body = body;
+			this.gzip = gzip;
+		}
+
+		Page header(String name, String value) {
+			headers.put(name, value);
+			return this;
+		}
+	}
+
+	@BeforeAll
+	public static void startServer() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", exchange -> {
+			Page page = pages.get(exchange.getRequestURI().getPath());
+			if (page == null) {
+				exchange.sendResponseHeaders(404, -1);
+				exchange.close();
+				return;
+			}
+			page.accessed.incrementAndGet();
+			page.headers.forEach(exchange.getResponseHeaders()::set);
+			String etag = page.headers.get(HttpHeaders.ETAG);
+			if (etag != null && etag.equals(exchange.getRequestHeaders().getFirst(HttpHeaders.IF_NONE_MATCH))) {
+				exchange.sendResponseHeaders(304, -1);
+				exchange.close();
+				return;
+			}
+			byte[] body = page.body;
+			if (page.gzip) {
+				ByteArrayOutputStream bo = new ByteArrayOutputStream();
+				try (GZIPOutputStream out = new GZIPOutputStream(bo)) {
+					out.write(body);
+				}
+				body = bo.toByteArray();
+				exchange.getResponseHeaders().set(HttpHeaders.CONTENT_ENCODING, "gzip");
+			}
+			if (page.contentType != null)
+				exchange.getResponseHeaders().set(HttpHeaders.CONTENT_TYPE, page.contentType);
+			exchange.sendResponseHeaders(200, body.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(body);
+			}
+		});
+		server.createContext("/echo", exchange -> {
+			byte[] body = ByteStreams.toByteArray(exchange.getRequestBody());
+			exchange.sendResponseHeaders(200, body.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(body);
+			}
+		});
+		// /slow?ms=xx
+		server.createContext("/slow", exchange -> {
+			int c = concurrent.incrementAndGet();
+			maxConcurrent.accumulateAndGet(c, Math::max);
+			try {
+				Thread.sleep(Long.parseLong(exchange.getRequestURI().getQuery().replaceAll("\\D", "")));
+			} catch (InterruptedException e) {
+				exchange.close();
+				return;
+			} finally {
+				// before responding, the client may send next request once response headers received
+				concurrent.decrementAndGet();
+			}
+			byte[] body = "slow".getBytes(StandardCharsets.UTF_8);
+			exchange.sendResponseHeaders(200, body.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(body);
+			}
+		});
+		// /ranged, /ranged?norange, /ranged?baddigest
+		server.createContext("/ranged", exchange -> {
+			String query = exchange.getRequestURI().getQuery();
+			byte[] content = rangedContent;
+			long start = 0, end = content.length - 1;
+			String range = exchange.getRequestHeaders().getFirst(HttpHeaders.RANGE);
+			String ifRange = exchange.getRequestHeaders().getFirst(HttpHeaders.IF_RANGE);
+			boolean partial = !"norange".equals(query) && range != null && (ifRange == null || ifRange.equals(RANGED_ETAG));
+			if (partial) {
+				String[] r = range.substring("bytes=".length()).split("-");
+				start = Long.parseLong(r[0]);
+				if (r.length > 1)
+					end = Math.min(end, Long.parseLong(r[1]));
+				exchange.getResponseHeaders().set(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + content.length);
+				exchange.getResponseHeaders().set(HttpHeaders.ETAG, RANGED_ETAG);
+				exchange.getResponseHeaders().set("Digest", "SHA-256=" + Base64.getEncoder().encodeToString(
+						"baddigest".equals(query) ? new byte[32] : Hashing.sha256().hashBytes(content).asBytes()));
+			}
+			int len = (int) (end - start + 1);
+			exchange.sendResponseHeaders(partial ? 206 : 200, len);
+			try (OutputStream out = exchange.getResponseBody()) {
+				for (int i = 0; i < len; i += 8192) {
+					int n = Math.min(8192, len - i);
+					out.write(content, (int) start + i, n);
+					rangedServed.addAndGet(n);
+				}
+			} catch (IOException e) {
+				// client stopped
+			}
+		});
+		server.createContext("/warm", exchange -> {
+			warmPorts.add(exchange.getRemoteAddress().getPort());
+			exchange.sendResponseHeaders(200, -1);
+			exchange.close();
+		});
+		server.setExecutor(Executors.newCachedThreadPool());
+		server.start();
+		root = "http://127.0.0.1:" + server.getAddress().getPort();
+	}
+
+	@AfterAll
+	public static void stopServer() {
+		server.stop(0);
+	}
+
+	private static String text(int repeat) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < repeat; i++)
+			sb.append("<p>第").append(i).append("段 paragraph</p>\n");
+		return sb.toString();
+	}
+
+	@Test
+	public void entityDecoding() throws IOException {
+		String big = text(20_000);
+		String gbkHtml = "<html><head><meta charset=\"gbk\"></head><body>" + big + "</body></html>";
+		pages.put("/declared", new Page("text/html; charset=gbk", big.getBytes(Encodings.GBK), false));
+		pages.put("/meta", new Page("text/html", gbkHtml.getBytes(Encodings.GBK), true));
+		pages.put("/utf8", new Page("text/html", big.getBytes(StandardCharsets.UTF_8), true));
+		pages.put("/gbk", new Page(null, big.getBytes(Encodings.GBK), false));
+		pages.put("/short", new Page("text/plain", "中".getBytes(StandardCharsets.UTF_8), false));
+
+		HttpClientAssist hca = new HttpClientAssist();
+		try {
+			assertEntity(hca, "/declared", big, Encodings.GBK);
+			assertEntity(hca, "/meta", gbkHtml, Encodings.GBK);
+			assertEntity(hca, "/utf8", big, StandardCharsets.UTF_8);
+			assertEntity(hca, "/gbk", big, Encodings.GBK);
+			assertEntity(hca, "/short", "中", StandardCharsets.UTF_8);
+
+			// decoded from downloaded buffer
+			try (HttpClientAssist.UrlEntity ue = hca.access(root + "/meta")) {
+				Assertions.assertArrayEquals(gbkHtml.getBytes(Encodings.GBK), ue.getEntityBuf());
+				Assertions.assertEquals(gbkHtml, ue.getEntityStr());
+			}
+		} finally {
+			hca.close();
+		}
+	}
+
+	@Test
+	public void bigEntityDecoding() throws IOException {
+		// multi-MB bodies of known length, decoded while downloading
+		String big = text(300_000);
+		pages.put("/big-utf8", new Page("text/html; charset=utf-8", big.getBytes(StandardCharsets.UTF_8), false));
+		pages.put("/big-gbk", new Page("text/html; charset=gbk", big.getBytes(Encodings.GBK), false));
+		pages.put("/big-gzip", new Page("text/plain", big.getBytes(StandardCharsets.UTF_8), true));
+
+		HttpClientAssist hca = new HttpClientAssist();
+		try {
+			Assertions.assertTrue(big.getBytes(StandardCharsets.UTF_8).length > 5_000_000);
+			assertEntity(hca, "/big-utf8", big, StandardCharsets.UTF_8);
+			assertEntity(hca, "/big-gbk", big, Encodings.GBK);
+			assertEntity(hca, "/big-gzip", big, StandardCharsets.UTF_8);
+		} finally {
+			hca.close();
+		}
+	}
+
+	@Test
+	public void warmUp() throws Exception {
+		HttpClientAssist hca = new HttpClientAssist(new HttpClientConfig()
+				.setMaxIdolConnections(2)
+				.setProtocols(Collections.singletonList(Protocol.HTTP_1_1))
+				.setWarmUpConnections(Colls.ofHashMap(root + "/warm", 4)));
+		try {
+			long start = System.currentTimeMillis();
+			while (hca.getIdleConnectionCount() < 4 && System.currentTimeMillis() - start < 5000)
+				Thread.sleep(10);
+			// requests run at the same time on their own connections
+			Assertions.assertEquals(4, warmPorts.size());
+			// idle pool is enlarged for warm-up connections.
+			// (jdk http server closes connection after HEAD request, so reusing can't be checked)
+			Assertions.assertEquals(4, hca.getIdleConnectionCount());
+
+			warmPorts.clear();
+			Assertions.assertEquals(3, (int) hca.warmUp(3, root + "/warm").get(10, TimeUnit.SECONDS));
+			Assertions.assertEquals(3, warmPorts.size());
+			Assertions.assertEquals(0, (int) hca.warmUp(2, "http://127.0.0.1:1/").get(10, TimeUnit.SECONDS));
+		} finally {
+			hca.close();
+		}
+	}
+
+	@Test
+	public void segmentedDownload(@TempDir File dir) throws IOException {
+		new Random(1).nextBytes(rangedContent);
+		HttpClientAssist hca = new HttpClientAssist();
+		try {
+			File file = new File(dir, "r.bin");
+			Assertions.assertTrue(hca.saveDirectlyToFile(root + "/ranged", null, file, true, 4, null));
+			Assertions.assertArrayEquals(rangedContent, Files.readAllBytes(file.toPath()));
+			Assertions.assertEquals(Colls.ofHashSet("r.bin"), Colls.ofHashSet(dir.list()));
+
+			// stopped, then resumed
+			file.delete();
+			AtomicInteger checks = new AtomicInteger();
+			Assertions.assertFalse(hca.saveDirectlyToFile(root + "/ranged", null, file, true, 3,
+					retry -> checks.incrementAndGet() > 30));
+			Assertions.assertTrue(new File(dir, "r.bin.~segwrite~.~segs~").exists());
+			rangedServed.set(0);
+			Assertions.assertTrue(hca.saveDirectlyToFile(root + "/ranged", null, file, true, 3, null));
+			Assertions.assertArrayEquals(rangedContent, Files.readAllBytes(file.toPath()));
+			Assertions.assertTrue(rangedServed.get() < rangedContent.length, "served " + rangedServed.get());
+			Assertions.assertEquals(Colls.ofHashSet("r.bin"), Colls.ofHashSet(dir.list()));
+
+			// malformed progress, start over
+			file.delete();
+			checks.set(0);
+			Assertions.assertFalse(hca.saveDirectlyToFile(root + "/ranged", null, file, true, 3,
+					retry -> checks.incrementAndGet() > 30));
+			File segs = new File(dir, "r.bin.~segwrite~.~segs~");
+			String progress = new String(Files.readAllBytes(segs.toPath()), StandardCharsets.ISO_8859_1);
+			Files.write(segs.toPath(), progress.replaceAll("segments=.*", "segments=0-x,1").getBytes(StandardCharsets.ISO_8859_1));
+			Assertions.assertTrue(hca.saveDirectlyToFile(root + "/ranged", null, file, true, 3, null));
+			Assertions.assertArrayEquals(rangedContent, Files.readAllBytes(file.toPath()));
+			Assertions.assertEquals(Colls.ofHashSet("r.bin"), Colls.ofHashSet(dir.list()));
+
+			// server not supporting range, stale segmented files are discarded
+			File nr = new File(dir, "nr.bin");
+			Files.write(new File(dir, "nr.bin.~segwrite~").toPath(), new byte[rangedContent.length]);
+			Files.write(new File(dir, "nr.bin.~segwrite~.~segs~").toPath(), "segments=0-1:1".getBytes(StandardCharsets.ISO_8859_1));
+			Assertions.assertTrue(hca.saveDirectlyToFile(root + "/ranged?norange", null, nr, true, 4, null));
+			Assertions.assertArrayEquals(rangedContent, Files.readAllBytes(nr.toPath()));
+			Assertions.assertEquals(Colls.ofHashSet("r.bin", "nr.bin"), Colls.ofHashSet(dir.list()));
+
+			File bad = new File(dir, "bad.bin");
+			Assertions.assertFalse(hca.saveDirectlyToFile(root + "/ranged?baddigest", null, bad, true, 4, null));
+			Assertions.assertFalse(bad.exists());
+			Assertions.assertFalse(new File(dir, "bad.bin.~segwrite~").exists());
+		} finally {
+			hca.close();
+		}
+	}
+
+	public static class Item {
+		public int id;
+		public String name;
+	}
+
+	@Test
+	public void json() throws IOException {
+		String obj = "{ \"id\": 1, \"name\": \"中文\" }";
+		pages.put("/obj.json", new Page("application/json", obj.getBytes(StandardCharsets.UTF_8), true));
+		pages.put("/arr.json", new Page("application/json", "[1, 2]".getBytes(StandardCharsets.UTF_8), false));
+
+		HttpClientAssist hca = new HttpClientAssist();
+		try {
+			try (HttpClientAssist.UrlEntity ue = hca.access(root + "/obj.json")) {
+				JSONObject jo = ue.getJsonObj();
+				Assertions.assertEquals("中文", jo.getString("name"));
+				Assertions.assertSame(jo, ue.getJson());
+				Assertions.assertEquals("中文", ue.<Item>getJson(Item.class).name);
+				// raw text
+				Assertions.assertEquals(obj, ue.getEntityStr());
+				Assertions.assertThrows(JSONException.class, ue::getJsonArray);
+			}
+			try (HttpClientAssist.UrlEntity ue = hca.access(root + "/arr.json")) {
+				Assertions.assertEquals("[1, 2]", ue.getEntityStr());
+				Assertions.assertEquals(Arrays.asList(1, 2), ue.getJsonArray());
+				Assertions.assertEquals(Arrays.asList(1, 2), ue.getJson(new TypeReference<List<Integer>>() {}.getType()));
+			}
+		} finally {
+			hca.close();
+		}
+	}
+
+	@Test
+	public void streaming() throws IOException {
+		String big = text(20_000);
+		String gbkHtml = "<html><head><meta charset=\"gbk\"></head><body>" + big + "</body></html>";
+		pages.put("/stream-gzip", new Page("text/plain", big.getBytes(StandardCharsets.UTF_8), true));
+		pages.put("/stream-meta", new Page("text/html", gbkHtml.getBytes(Encodings.GBK), false));
+		pages.put("/stream-gbk", new Page(null, big.getBytes(Encodings.GBK), true));
+
+		HttpClientAssist hca = new HttpClientAssist();
+		try {
+			try (HttpClientAssist.UrlEntity ue = hca.access(root + "/stream-gzip")) {
+				Assertions.assertArrayEquals(big.getBytes(StandardCharsets.UTF_8), ByteStreams.toByteArray(ue.getEntityStream()));
+				Assertions.assertThrows(IllegalStateException.class, ue::getEntityBuf);
+				Assertions.assertThrows(IllegalStateException.class, ue::getEntityStream);
+			}
+			try (HttpClientAssist.UrlEntity ue = hca.access(root + "/stream-gzip")) {
+				ByteArrayOutputStream out = new ByteArrayOutputStream();
+				AtomicInteger chunks = new AtomicInteger();
+				ue.consumeEntity((buf, off, len) -> {
+					out.write(buf, off, len);
+					chunks.incrementAndGet();
+				});
+				Assertions.assertArrayEquals(big.getBytes(StandardCharsets.UTF_8), out.toByteArray());
+				Assertions.assertTrue(chunks.get() > 1);
+			}
+			try (HttpClientAssist.UrlEntity ue = hca.access(root + "/stream-gzip")) {
+				ReadableByteChannel ch = ue.getEntityChannel();
+				ByteBuffer buf = ByteBuffer.allocate(100);
+				Assertions.assertEquals(100, ch.read(buf));
+				Assertions.assertArrayEquals(Arrays.copyOf(big.getBytes(StandardCharsets.UTF_8), 100), buf.array());
+			}
+
+			Assertions.assertEquals(gbkHtml, readAll(hca, "/stream-meta"));
+			Assertions.assertEquals(big, readAll(hca, "/stream-gbk"));
+
+			// reader of downloaded content
+			try (HttpClientAssist.UrlEntity ue = hca.access(root + "/stream-meta")) {
+				Assertions.assertEquals(gbkHtml, ue.getEntityStr());
+				Assertions.assertEquals(gbkHtml, CharStreams.toString(ue.getEntityReader()));
+			}
+		} finally {
+			hca.close();
+		}
+	}
+
+	private static String readAll(HttpClientAssist hca, String path) throws IOException {
+		try (HttpClientAssist.UrlEntity ue = hca.access(root + path);
+		     Reader reader = ue.getEntityReader()) {
+			return CharStreams.toString(reader);
+		}
+	}
+
+	@Test
+	public void async(@TempDir File dir) throws Exception {
+		String big = text(10_000);
+		pages.put("/big", new Page("text/plain; charset=utf-8", big.getBytes(StandardCharsets.UTF_8), false));
+		HttpClientAssist hca = new HttpClientAssist(new HttpClientConfig().setMaxAsyncRequestsPerHost(2));
+		try {
+			// fan out
+			List<CompletableFuture<HttpClientAssist.UrlEntity>> futures = new ArrayList<>();
+			for (int i = 0; i < 20; i++)
+				futures.add(hca.accessAsync(root + "/slow", null, Colls.ofHashMap("ms", 50)));
+			for (CompletableFuture<HttpClientAssist.UrlEntity> f : futures)
+				try (HttpClientAssist.UrlEntity ue = f.get(10, TimeUnit.SECONDS)) {
+					Assertions.assertEquals("slow", ue.getEntityStr());
+				}
+			Assertions.assertEquals(2, maxConcurrent.get());
+
+			try (HttpClientAssist.UrlEntity ue = hca.accessPostBytesAsync(root + "/echo", null, "post".getBytes()).get()) {
+				Assertions.assertEquals("post", ue.getEntityStr());
+			}
+			try (HttpClientAssist.UrlEntity ue = hca.accessPostUrlEncodedFormAsync(
+					root + "/echo", null, Colls.ofHashMap("k", "v 1")).get()) {
+				Assertions.assertEquals("k=v%201", ue.getEntityStr());
+			}
+
+			// cancellation frees the dispatcher slots
+			CompletableFuture<HttpClientAssist.UrlEntity> s1 = hca.accessAsync(root + "/slow?ms=5000");
+			CompletableFuture<HttpClientAssist.UrlEntity> s2 = hca.accessAsync(root + "/slow?ms=5000");
+			Thread.sleep(100);
+			s1.cancel(true);
+			s2.cancel(true);
+			long start = System.currentTimeMillis();
+			try (HttpClientAssist.UrlEntity ue = hca.accessAsync(root + "/slow?ms=0").get(3, TimeUnit.SECONDS)) {
+				Assertions.assertEquals(200, ue.getStatusCode());
+			}
+			Assertions.assertTrue(System.currentTimeMillis() - start < 1000);
+
+			File file = new File(dir, "big.txt");
+			Assertions.assertTrue(hca.saveDirectlyToFileAsync(root + "/big", null, file, true, null).get(10, TimeUnit.SECONDS));
+			Assertions.assertEquals(big, new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+			Assertions.assertFalse(hca.saveDirectlyToFileAsync(root + "/none", null, new File(dir, "none"), true, null).get());
+		} finally {
+			hca.close();
+		}
+	}
+
+	@Test
+	public void diskCache(@TempDir File dir) throws IOException {
+		Page fresh = new Page("text/plain", "fresh".getBytes(), true).header(HttpHeaders.CACHE_CONTROL, "max-age=3600");
+		Page etag = new Page("text/plain", "etag".getBytes(), false)
+				.header(HttpHeaders.CACHE_CONTROL, "no-cache").header(HttpHeaders.ETAG, "\"v1\"");
+		Page stale = new Page("text/plain", "stale".getBytes(), false).header(HttpHeaders.CACHE_CONTROL, "max-age=0");
+		pages.put("/fresh", fresh);
+		pages.put("/etag", etag);
+		pages.put("/stale", stale);
+
+		HttpClientConfig hcc = new HttpClientConfig().setCacheDir(dir);
+		HttpClientAssist hca = new HttpClientAssist(hcc);
+		try {
+			for (int i = 0; i < 3; i++) {
+				assertEntity(hca, "/fresh", "fresh", StandardCharsets.UTF_8);
+				assertEntity(hca, "/etag", "etag", StandardCharsets.UTF_8);
+				assertEntity(hca, "/stale", "stale", StandardCharsets.UTF_8);
+			}
+			Assertions.assertEquals(1, fresh.accessed.get());
+			Assertions.assertEquals(3, etag.accessed.get());
+			Assertions.assertEquals(3, stale.accessed.get());
+			Assertions.assertEquals(2, hca.getCacheHits());
+			Assertions.assertEquals(2, hca.getCacheRevalidations());
+			Assertions.assertEquals(5, hca.getCacheMisses());
+		} finally {
+			hca.close();
+		}
+
+		// cache survives the client, and stale responses are used in prefer-cache mode
+		hca = new HttpClientAssist(hcc.setPreferCache(true));
+		try {
+			assertEntity(hca, "/fresh", "fresh", StandardCharsets.UTF_8);
+			assertEntity(hca, "/stale", "stale", StandardCharsets.UTF_8);
+			Assertions.assertEquals(1, fresh.accessed.get());
+			Assertions.assertEquals(3, stale.accessed.get());
+			Assertions.assertEquals(2, hca.getCacheHits());
+			Assertions.assertEquals(0, hca.getCacheMisses());
+		} finally {
+			hca.close();
+		}
+	}
+
+	private static void assertEntity(HttpClientAssist hca, String path, String expected, Charset enc) throws IOException {
+		try (HttpClientAssist.UrlEntity ue = hca.access(root + path)) {
+			Assertions.assertEquals(expected, ue.getEntityStr(), path);
+			Assertions.assertEquals(enc, ue.getEntityEncoding(), path);
+			Assertions.assertArrayEquals(expected.getBytes(enc), ue.getEntityBuf(), path);
+		}
+	}
+}
@@ -0,0 +1,48 @@
+package mysh.util;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * @since 2026-10-18
+ */
+public class BytesPoolTest {
+
+	@Test
+	public void sizeClasses() {
+		BytesPool pool = new BytesPool(1000, 5000, 1 << 20);
+		Assertions.assertEquals(1024, pool.acquire(1).length);
+		Assertions.assertEquals(1024, pool.acquire(1024).length);
+		Assertions.assertEquals(2048, pool.acquire(1025).length);
+		Assertions.assertEquals(8192, pool.acquire(5000).length);
+		// beyond max class
+		Assertions.assertEquals(8193, pool.acquire(8193).length);
+		Assertions.assertEquals(5, pool.getAllocated());
+		Assertions.assertEquals(0, pool.getReused());
+	}
+
+	@Test
+	public void reuse() {
+		BytesPool pool = new BytesPool(1024, 4096, 2048);
+		byte[] a = pool.acquire(1024), b = pool.acquire(1024), c = pool.acquire(1024);
+		pool.release(a);
+		pool.release(b);
+		// beyond max retained bytes
+		pool.release(c);
+		Assertions.assertEquals(2048, pool.getRetainedBytes());
+		Assertions.assertSame(b, pool.acquire(100));
+		Assertions.assertSame(a, pool.acquire(100));
+		Assertions.assertNotSame(c, pool.acquire(100));
+		Assertions.assertEquals(2, pool.getReused());
+
+		// at least one buffer retained for each class
+		byte[] d = pool.acquire(4096);
+		pool.release(d);
+		Assertions.assertSame(d, pool.acquire(3000));
+
+		// not pooled sizes are ignored
+		pool.release(new byte[1000]);
+		pool.release(new byte[8192]);
+		Assertions.assertEquals(0, pool.getRetainedBytes());
+	}
+}
@@ -0,0 +1,79 @@
+package mysh.util;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * @since 2026-10-18
+ */
+public class CharsetSnifferTest {
+
+	private static Charset sniff(byte[] content, int chunk, int prefixLimit) {
+		CharsetSniffer sniffer = new CharsetSniffer(null, prefixLimit);
+		for (int i = 0; i < content.length; i += chunk)
+			sniffer.feed(content, i, Math.min(chunk, content.length - i));
+		return sniffer.finish();
+	}
+
+	@Test
+	public void declared() {
+		CharsetSniffer sniffer = new CharsetSniffer(Encodings.GBK);
+		Assertions.assertEquals(Encodings.GBK, sniffer.feed(new byte[]{(byte) 0xE4, (byte) 0xBC, (byte) 0x9F}, 0, 3));
+		Assertions.assertEquals(Encodings.GBK, sniffer.finish());
+	}
+
+	@Test
+	public void meta() {
+		byte[] html = "<html><head><meta name='x'><meta http-equiv='content-type' content='text/html; charset=gb2312'></head>"
+				.getBytes(StandardCharsets.ISO_8859_1);
+		// meta tag split across chunks
+		for (int chunk = 1; chunk <= html.length; chunk++) {
+			CharsetSniffer sniffer = new CharsetSniffer(null);
+			Charset cs = null;
+			for (int i = 0; i < html.length && cs == null; i += chunk)
+				cs = sniffer.feed(html, i, Math.min(chunk, html.length - i));
+			Assertions.assertEquals(Charset.forName("gb2312"), cs, "chunk=" + chunk);
+		}
+		Assertions.assertEquals(Encodings.findHtmlEncoding(html), sniff(html, 7, 1024));
+
+		byte[] unknown = "<meta charset='no-such-charset'><meta charset=\"utf-8\">".getBytes(StandardCharsets.ISO_8859_1);
+		Assertions.assertEquals(StandardCharsets.UTF_8, sniff(unknown, 5, 1024));
+	}
+
+	@Test
+	public void bom() {
+		Assertions.assertEquals(StandardCharsets.UTF_16LE,
+				new CharsetSniffer(null).feed(new byte[]{(byte) 0xFF, (byte) 0xFE, 'a', 0}, 0, 4));
+		Assertions.assertEquals(StandardCharsets.UTF_8, sniff(new byte[]{(byte) 0xEF, (byte) 0xBB, (byte) 0xBF, 'a'}, 1, 1024));
+	}
+
+	@Test
+	public void utf8Validity() {
+		byte[] utf8 = "<p>中文内容, some text</p>".getBytes(StandardCharsets.UTF_8);
+		byte[] gbk = "<p>中文内容, some text</p>".getBytes(Encodings.GBK);
+		for (int chunk = 1; chunk < 8; chunk++) {
+			// multi-byte chars split across chunks
+			Assertions.assertEquals(StandardCharsets.UTF_8, sniff(utf8, chunk, 1024));
+			Assertions.assertEquals(Encodings.GBK, sniff(gbk, chunk, 1024));
+		}
+		// incomplete char at the end
+		Assertions.assertEquals(Encodings.GBK, sniff(Arrays.copyOf(utf8, 5), 2, 1024));
+	}
+
+	@Test
+	public void guessRevised() {
+		byte[] head = new byte[100];
+		Arrays.fill(head, (byte) 'a');
+		byte[] content = Arrays.copyOf(head, 104);
+		System.arraycopy("中文".getBytes(Encodings.GBK), 0, content, 100, 4);
+
+		CharsetSniffer sniffer = new CharsetSniffer(null, 64);
+		Assertions.assertEquals(StandardCharsets.UTF_8, sniffer.feed(content, 0, 100));
+		sniffer.feed(content, 100, 4);
+		Assertions.assertEquals(Encodings.GBK, sniffer.finish());
+	}
+}